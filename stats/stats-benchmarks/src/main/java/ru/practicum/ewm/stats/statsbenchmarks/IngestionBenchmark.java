@@ -0,0 +1,91 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsserver.mapper.EndpointHitParser;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.validation.ValidatorFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор тела POST /hit до Stat: привязка к EndpointHit с Bean Validation и прежним переводом в Stat
+ * (URLDecoder и новый DateTimeFormatter на каждое посещение, как раньше в контроллере и StatMapper) против
+ * потокового EndpointHitParser. Выделение памяти на посещение смотреть с -prof gc (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IngestionBenchmark {
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private ObjectReader endpointHitReader;
+    private EndpointHitParser endpointHitParser;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule())
+                .build();
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        endpointHitReader = objectMapper.readerFor(EndpointHit.class);
+        endpointHitParser = new EndpointHitParser(objectMapper);
+        body = ("{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\","
+                + "\"timestamp\":\"2023-10-10 15:15:15\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Stat beanBinding() throws IOException {
+        EndpointHit endpointHit = endpointHitReader.readValue(new ByteArrayInputStream(body));
+        Set<ConstraintViolation<EndpointHit>> violations = validator.validate(endpointHit);
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        return Stat.builder()
+                .app(endpointHit.getApp())
+                .uri(endpointHit.getUri())
+                .ip(endpointHit.getIp())
+                .timestamp(LocalDateTime.parse(URLDecoder.decode(endpointHit.getTimestamp(), StandardCharsets.UTF_8),
+                        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+                .build();
+    }
+
+    @Benchmark
+    public Stat streamingParser() throws IOException {
+        return endpointHitParser.parse(new ByteArrayInputStream(body));
+    }
+}
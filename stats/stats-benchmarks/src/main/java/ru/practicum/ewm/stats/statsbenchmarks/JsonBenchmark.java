@@ -0,0 +1,91 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация тел POST /hit и ответа GET /stats тем же ObjectMapper, что собирает Spring Boot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonBenchmark {
+    @Param({"10", "1000"})
+    private int viewStatsCount;
+
+    private ObjectWriter endpointHitWriter;
+    private ObjectReader endpointHitReader;
+    private ObjectWriter viewStatsWriter;
+    private ObjectReader viewStatsReader;
+    private EndpointHit endpointHit;
+    private String endpointHitJson;
+    private List<ViewStats> viewStats;
+    private String viewStatsJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        // Spring Boot регистрирует ParameterNamesModule сам, без него EndpointHit без конструктора по умолчанию
+        // не читается
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule())
+                .build();
+        TypeReference<List<ViewStats>> viewStatsType = new TypeReference<>() {
+        };
+        endpointHitWriter = objectMapper.writerFor(EndpointHit.class);
+        endpointHitReader = objectMapper.readerFor(EndpointHit.class);
+        viewStatsWriter = objectMapper.writerFor(viewStatsType);
+        viewStatsReader = objectMapper.readerFor(viewStatsType);
+
+        endpointHit = new EndpointHit("ewm-main-service", "/events/1", "192.168.0.1", "2023-10-10 15:15:15");
+        endpointHitJson = endpointHitWriter.writeValueAsString(endpointHit);
+        viewStats = new ArrayList<>(viewStatsCount);
+        for (int i = 0; i < viewStatsCount; i++) {
+            viewStats.add(new ViewStats("ewm-main-service", "/events/" + i, viewStatsCount - i));
+        }
+        viewStatsJson = viewStatsWriter.writeValueAsString(viewStats);
+    }
+
+    @Benchmark
+    public String writeEndpointHit() throws JsonProcessingException {
+        return endpointHitWriter.writeValueAsString(endpointHit);
+    }
+
+    @Benchmark
+    public EndpointHit readEndpointHit() throws JsonProcessingException {
+        return endpointHitReader.readValue(endpointHitJson);
+    }
+
+    @Benchmark
+    public String writeViewStats() throws JsonProcessingException {
+        return viewStatsWriter.writeValueAsString(viewStats);
+    }
+
+    @Benchmark
+    public List<ViewStats> readViewStats() throws JsonProcessingException {
+        return viewStatsReader.readValue(viewStatsJson);
+    }
+}
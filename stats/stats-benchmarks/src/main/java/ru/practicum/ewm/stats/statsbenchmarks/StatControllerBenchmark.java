@@ -0,0 +1,101 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность сервера статистики по HTTP: POST /hit и GET /stats через настоящий Tomcat,
+ * с настройками по умолчанию (кэш ответов включён) и 100000 посещений в базе.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+public class StatControllerBenchmark {
+    private static final int PRELOADED_HITS = 100_000;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Param({"jdbc", "columnar", "log"})
+    private String storage;
+
+    private StatsServerContext server;
+    private HttpClient httpClient;
+    private HttpRequest postHit;
+    private HttpRequest getStats;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StatsServerContext(WebApplicationType.SERVLET, storage);
+        SyntheticHits.load(server.getBean(StatService.class), PRELOADED_HITS, 100, 10_000);
+
+        String baseUrl = "http://localhost:" + server.getProperty("local.server.port");
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        postHit = HttpRequest.newBuilder(URI.create(baseUrl + "/hit"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"app\":\"" + SyntheticHits.APP + "\"," +
+                        "\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\"," +
+                        "\"timestamp\":\"" + LocalDateTime.now().minusDays(1).format(FORMATTER) + "\"}"))
+                .build();
+        getStats = HttpRequest.newBuilder(URI.create(baseUrl + "/stats" +
+                        "?start=" + encode(SyntheticHits.FROM.format(FORMATTER)) +
+                        "&end=" + encode(SyntheticHits.TO.format(FORMATTER)) +
+                        "&uris=/events/1,/events/2&unique=true"))
+                .GET()
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public int postHit() throws IOException, InterruptedException {
+        return send(postHit);
+    }
+
+    @Benchmark
+    public int getStats() throws IOException, InterruptedException {
+        return send(getStats);
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException("ответ " + response.statusCode() + ": " + response.body());
+        }
+        return response.body().length();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
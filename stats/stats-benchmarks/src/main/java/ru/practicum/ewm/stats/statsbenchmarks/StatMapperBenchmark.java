@@ -0,0 +1,52 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор посещения: декодирование URL и разбор времени. sharedFormatter - нижняя граница для
+ * разбора времени с форматтером, созданным один раз.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StatMapperBenchmark {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final EndpointHit plainHit = new EndpointHit("ewm-main-service", "/events/1", "192.168.0.1",
+            "2023-10-10 15:15:15");
+    private final EndpointHit encodedHit = new EndpointHit("ewm-main-service", "/events/1", "192.168.0.1",
+            "2023-10-10%2015:15:15");
+
+    @Benchmark
+    public Stat plainTimestamp() {
+        return StatMapper.endpointHitToStatMapper(plainHit);
+    }
+
+    @Benchmark
+    public Stat encodedTimestamp() {
+        return StatMapper.endpointHitToStatMapper(encodedHit);
+    }
+
+    @Benchmark
+    public LocalDateTime sharedFormatter() {
+        return LocalDateTime.parse(plainHit.getTimestamp(), FORMATTER);
+    }
+}
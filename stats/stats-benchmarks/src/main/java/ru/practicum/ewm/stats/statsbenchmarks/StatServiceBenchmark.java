@@ -0,0 +1,104 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StatServiceImpl.getStats на H2 с синтетическим набором посещений, кэш ответов отключён. Период
+ * запроса не выровнен по суткам, чтобы задействовать и агрегаты, и сырые записи по краям.
+ * Наборы 10^7 требуют -Xmx порядка 8 ГБ, их удобнее запускать отдельно: -p hits=10000000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+public class StatServiceBenchmark {
+    @Param({"100000", "1000000", "10000000"})
+    private int hits;
+
+    @Param({"100", "10000"})
+    private int uris;
+
+    @Param({"1000", "100000"})
+    private int ips;
+
+    @Param({"jdbc", "columnar", "log"})
+    private String storage;
+
+    private StatsServerContext server;
+    private StatService statService;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private List<String> someUris;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StatsServerContext(WebApplicationType.NONE, storage, "stats-server.cache.max-entries=0");
+        statService = server.getBean(StatService.class);
+        SyntheticHits.load(statService, hits, uris, ips);
+
+        start = SyntheticHits.FROM.plusDays(1).plusMinutes(30).plusSeconds(15);
+        end = SyntheticHits.TO.minusDays(1).plusHours(12).plusSeconds(30);
+        someUris = new ArrayList<>();
+        for (int i = 0; i < Math.min(10, uris); i++) {
+            someUris.add(SyntheticHits.uri(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Benchmark
+    public List<ViewStats> allUris() {
+        return statService.getStats(start, end, List.of(), false, false);
+    }
+
+    @Benchmark
+    public List<ViewStats> allUrisTop10() {
+        return statService.getStats(start, end, List.of(), false, false, 0, 10);
+    }
+
+    @Benchmark
+    public List<ViewStats> someUris() {
+        return statService.getStats(start, end, someUris, false, false);
+    }
+
+    @Benchmark
+    public List<ViewStats> allUrisUnique() {
+        return statService.getStats(start, end, List.of(), true, false);
+    }
+
+    @Benchmark
+    public List<ViewStats> someUrisUnique() {
+        return statService.getStats(start, end, someUris, true, false);
+    }
+
+    @Benchmark
+    public List<ViewStats> allUrisUniqueApproximate() {
+        return statService.getStats(start, end, List.of(), true, true);
+    }
+}
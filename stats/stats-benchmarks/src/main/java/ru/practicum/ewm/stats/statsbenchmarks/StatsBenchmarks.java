@@ -0,0 +1,32 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запуск бенчмарков: java -jar target/benchmarks.jar [опции JMH]. Результаты по умолчанию пишутся
+ * в JSON (target/jmh-result.json), чтобы сравнивать сборки между собой; -rf и -rff переопределяют формат и файл.
+ */
+public final class StatsBenchmarks {
+    private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    private StatsBenchmarks() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(options.build()).run();
+    }
+}
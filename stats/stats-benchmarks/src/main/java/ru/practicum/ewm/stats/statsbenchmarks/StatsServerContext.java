@@ -0,0 +1,53 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import ru.practicum.ewm.stats.statsserver.StatsServerApp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Сервер статистики на отдельной базе H2 в памяти и временном каталоге журнала для одного запуска бенчмарка.
+ */
+final class StatsServerContext implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final Path logDirectory;
+
+    StatsServerContext(WebApplicationType webApplicationType, String storage, String... properties)
+            throws IOException {
+        logDirectory = Files.createTempDirectory("stats-log");
+        List<String> all = new ArrayList<>(List.of(
+                "spring.datasource.driverClassName=org.h2.Driver",
+                "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "server.port=0",
+                "logging.level.root=WARN",
+                "stats-server.storage=" + storage,
+                "stats-server.log.dir=" + logDirectory));
+        all.addAll(List.of(properties));
+        context = new SpringApplicationBuilder(StatsServerApp.class)
+                .web(webApplicationType)
+                .properties(all.toArray(new String[0]))
+                .run();
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    String getProperty(String name) {
+        return context.getEnvironment().getProperty(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(logDirectory);
+    }
+}
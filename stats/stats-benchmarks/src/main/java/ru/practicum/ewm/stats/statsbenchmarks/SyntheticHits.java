@@ -0,0 +1,53 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Синтетические посещения за PERIOD_DAYS суток, закончившихся вчера: uri и ip выбираются равномерно
+ * из заданного числа вариантов, генератор с фиксированным seed, чтобы наборы совпадали между запусками.
+ */
+final class SyntheticHits {
+    static final String APP = "ewm-main-service";
+    static final int PERIOD_DAYS = 30;
+    static final LocalDateTime FROM = LocalDateTime.now().truncatedTo(ChronoUnit.DAYS).minusDays(PERIOD_DAYS + 1);
+    static final LocalDateTime TO = FROM.plusDays(PERIOD_DAYS);
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private SyntheticHits() {
+    }
+
+    static void load(StatService statService, int hits, int uris, int ips) {
+        Random random = new Random(42);
+        long periodSeconds = ChronoUnit.SECONDS.between(FROM, TO);
+        List<EndpointHit> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < hits; i++) {
+            batch.add(new EndpointHit(APP, uri(random.nextInt(uris)), ip(random.nextInt(ips)),
+                    FROM.plusSeconds((long) (random.nextDouble() * periodSeconds)).format(FORMATTER)));
+            if (batch.size() == BATCH_SIZE) {
+                statService.createAll(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            statService.createAll(batch);
+        }
+    }
+
+    static String uri(int index) {
+        return "/events/" + index;
+    }
+
+    static String ip(int index) {
+        return "10." + ((index >>> 16) & 0xff) + "." + ((index >>> 8) & 0xff) + "." + (index & 0xff);
+    }
+}
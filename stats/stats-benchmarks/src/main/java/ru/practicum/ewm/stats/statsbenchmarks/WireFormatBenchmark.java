@@ -0,0 +1,141 @@
+package ru.practicum.ewm.stats.statsbenchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsReader;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsWriter;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пачка из 1000 посещений и ответ GET /stats из 1000 строк: JSON против двоичного формата
+ * application/x-ewm-stats. Размер тел печатается в @Setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WireFormatBenchmark {
+    private static final int SIZE = 1000;
+
+    private ObjectMapper objectMapper;
+    private List<EndpointHit> hits;
+    private List<LocalDateTime> timestamps;
+    private List<ViewStats> viewStats;
+    private byte[] jsonHits;
+    private byte[] binaryHits;
+    private byte[] jsonViewStats;
+    private byte[] binaryViewStats;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()).build();
+        hits = new ArrayList<>(SIZE);
+        timestamps = new ArrayList<>(SIZE);
+        viewStats = new ArrayList<>(SIZE);
+        LocalDateTime start = LocalDateTime.of(2023, 10, 10, 15, 0);
+        for (int i = 0; i < SIZE; i++) {
+            LocalDateTime timestamp = start.plusSeconds(i / 10);
+            hits.add(new EndpointHit("ewm-main-service", "/events/" + (i % 100), "192.168.0." + (i % 250),
+                    StatMapper.formatTimestamp(timestamp)));
+            timestamps.add(timestamp);
+            viewStats.add(new ViewStats("ewm-main-service", "/events/" + i, SIZE - i));
+        }
+
+        jsonHits = encodeHitsJson();
+        binaryHits = encodeHitsBinary();
+        jsonViewStats = encodeViewStatsJson();
+        binaryViewStats = encodeViewStatsBinary();
+        System.out.printf("%nпосещения: json %d байт, двоичный %d байт; просмотры: json %d байт, двоичный %d байт%n",
+                jsonHits.length, binaryHits.length, jsonViewStats.length, binaryViewStats.length);
+    }
+
+    @Benchmark
+    public byte[] encodeHitsJson() throws IOException {
+        return objectMapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public byte[] encodeHitsBinary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryStatsWriter writer = new BinaryStatsWriter(out)) {
+            for (int i = 0; i < SIZE; i++) {
+                EndpointHit hit = hits.get(i);
+                writer.writeHit(hit.getApp(), hit.getUri(), hit.getIp(), timestamps.get(i));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<EndpointHit> decodeHitsJson() throws IOException {
+        return objectMapper.readValue(jsonHits, new TypeReference<List<EndpointHit>>() {
+        });
+    }
+
+    @Benchmark
+    public int decodeHitsBinary() throws IOException {
+        BinaryStatsReader reader = new BinaryStatsReader(new ByteArrayInputStream(binaryHits));
+        int[] count = new int[1];
+        while (reader.readHit((app, uri, ip, timestamp) -> count[0]++)) {
+            // посещения только считаются
+        }
+        return count[0];
+    }
+
+    @Benchmark
+    public byte[] encodeViewStatsJson() throws IOException {
+        return objectMapper.writeValueAsBytes(viewStats);
+    }
+
+    @Benchmark
+    public byte[] encodeViewStatsBinary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryStatsWriter writer = new BinaryStatsWriter(out)) {
+            for (ViewStats stats : viewStats) {
+                writer.writeViewStats(stats);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<ViewStats> decodeViewStatsJson() throws IOException {
+        return objectMapper.readValue(jsonViewStats, new TypeReference<List<ViewStats>>() {
+        });
+    }
+
+    @Benchmark
+    public List<ViewStats> decodeViewStatsBinary() throws IOException {
+        BinaryStatsReader reader = new BinaryStatsReader(new ByteArrayInputStream(binaryViewStats));
+        List<ViewStats> result = new ArrayList<>(SIZE);
+        ViewStats stats;
+        while ((stats = reader.readViewStats()) != null) {
+            result.add(stats);
+        }
+        return result;
+    }
+}
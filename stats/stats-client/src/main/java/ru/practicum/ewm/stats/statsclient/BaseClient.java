@@ -1,14 +1,19 @@
 package ru.practicum.ewm.stats.statsclient;
 
 import org.springframework.http.*;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.lang.Nullable;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
 public class BaseClient {
+    private static final HttpHeaders DEFAULT_HEADERS = defaultHeaders();
+
     protected final RestTemplate rest;
 
     public BaseClient(RestTemplate rest) {
@@ -23,15 +28,33 @@ public class BaseClient {
         return post(path, null, body);
     }
 
+    /**
+     * POST с телом, которое пишется прямо в поток запроса, в формате contentType.
+     */
+    protected ResponseEntity<Object> post(String path, MediaType contentType, BodyWriter body) {
+        try {
+            HttpStatus status = rest.execute(path, HttpMethod.POST,
+                    request -> {
+                        request.getHeaders().setContentType(contentType);
+                        request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON));
+                        body.writeTo(request.getBody());
+                    },
+                    ClientHttpResponse::getStatusCode);
+            return ResponseEntity.status(status).build();
+        } catch (HttpStatusCodeException e) {
+            return ResponseEntity.status(e.getStatusCode()).body(e.getResponseBodyAsByteArray());
+        }
+    }
+
     protected ResponseEntity<Object> get(String path, @Nullable Map<String, Object> parameters) {
         return makeAndSendRequest(HttpMethod.GET, path, parameters, null);
     }
 
-    private HttpHeaders defaultHeaders() {
+    private static HttpHeaders defaultHeaders() {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-        return headers;
+        return HttpHeaders.readOnlyHttpHeaders(headers);
     }
 
     private static ResponseEntity<Object> prepareGatewayResponse(ResponseEntity<Object> response) {
@@ -51,7 +74,7 @@ public class BaseClient {
     private <T> ResponseEntity<Object> makeAndSendRequest(HttpMethod method, String path,
                                                           @Nullable Map<String, Object> parameters,
                                                           @Nullable T body) {
-        HttpEntity<T> requestEntity = new HttpEntity<>(body, defaultHeaders());
+        HttpEntity<T> requestEntity = new HttpEntity<>(body, DEFAULT_HEADERS);
 
         ResponseEntity<Object> statsServerResponse;
         try {
@@ -65,4 +88,9 @@ public class BaseClient {
         }
         return prepareGatewayResponse(statsServerResponse);
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    protected interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
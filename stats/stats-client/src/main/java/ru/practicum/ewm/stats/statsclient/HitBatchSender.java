@@ -0,0 +1,137 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Буфер посещений, которые отправляются пачками в фоновом потоке. При переполнении буфера
+ * новые посещения отбрасываются, пачка, не отправленная за maxAttempts попыток, тоже отбрасывается,
+ * чтобы недоступность сервера статистики не замедляла основной сервис. Посещения, добавленные после
+ * close(), тоже отбрасываются и учитываются в getDropped().
+ */
+@Slf4j
+class HitBatchSender {
+    private final Consumer<List<EndpointHit>> batchConsumer;
+    private final BlockingQueue<EndpointHit> queue;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    HitBatchSender(Consumer<List<EndpointHit>> batchConsumer, int capacity, int batchSize,
+                   long flushIntervalMillis, int maxAttempts, long retryBackoffMillis) {
+        this.batchConsumer = batchConsumer;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-client-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    void add(EndpointHit endpointHit) {
+        if (closed || !queue.offer(endpointHit)) {
+            drop();
+            return;
+        }
+        if (closed) {
+            // close() мог уже забрать остаток буфера, тогда посещение никто не отправит
+            if (queue.remove(endpointHit)) {
+                drop();
+            }
+            return;
+        }
+
+        if (queue.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                // close() начался после проверки выше, остаток буфера он отправит сам
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(maxAttempts * retryBackoffMillis + 5_000, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        List<EndpointHit> rest = new ArrayList<>(queue.size());
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            send(rest, 1);
+        }
+    }
+
+    private void drop() {
+        long total = dropped.incrementAndGet();
+        if (total % 1000 == 1) {
+            log.warn("Посещение отброшено: буфер переполнен или отправка остановлена, отброшено всего {}", total);
+        }
+    }
+
+    private void flush() {
+        while (!queue.isEmpty()) {
+            List<EndpointHit> batch = new ArrayList<>(batchSize);
+            queue.drainTo(batch, batchSize);
+            send(batch, maxAttempts);
+        }
+    }
+
+    private void send(List<EndpointHit> batch, int attempts) {
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            try {
+                batchConsumer.accept(batch);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == attempts) {
+                    dropped.addAndGet(batch.size());
+                    log.warn("Не удалось отправить {} посещений после {} попыток", batch.size(), attempts, e);
+                    return;
+                }
+                try {
+                    Thread.sleep(retryBackoffMillis << (attempt - 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    dropped.addAndGet(batch.size());
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Кольцо согласованного хэширования: каждый шард занимает virtualNodes точек кольца, ключ относится
+ * к первой точке по часовой стрелке. При добавлении шарда переезжает около 1/N ключей.
+ */
+class ShardRing {
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+
+    ShardRing(List<String> shardNames, int virtualNodes) {
+        if (shardNames.isEmpty()) {
+            throw new IllegalArgumentException("не задано ни одного шарда");
+        }
+        for (int shard = 0; shard < shardNames.size(); shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(hash(shardNames.get(shard) + '#' + node), shard);
+            }
+        }
+    }
+
+    /**
+     * Номер шарда для ключа в порядке shardNames.
+     */
+    int shardOf(String key) {
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * FNV-1a по символам строки с перемешиванием из MurmurHash3, чтобы близкие строки
+     * расходились по кольцу.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,208 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Клиент кластера серверов статистики. Посещения распределяются по шардам согласованным хэшированием uri,
+ * поэтому все посещения одного uri лежат на одном шарде и уникальные ip по нему считаются там точно.
+ * GET /stats рассылается параллельно только шардам, которым принадлежат запрошенные uris (без uris - всем),
+ * частичные ответы объединяются и сортируются по убыванию hits. Ошибка любого шарда - ошибка всего запроса,
+ * чтобы не вернуть неполную статистику.
+ */
+@Service
+@ConditionalOnProperty(name = "stats-server.shards")
+@Slf4j
+public class ShardedStatsClient {
+    private static final Comparator<ViewStats> ORDER = Comparator.comparingInt(ViewStats::getHits).reversed()
+            .thenComparing(ViewStats::getApp)
+            .thenComparing(ViewStats::getUri);
+
+    private final List<StatsClient> shards;
+    private final ShardRing ring;
+    private final ExecutorService executor;
+    private final ViewCountCoalescer viewCounts;
+
+    @Autowired
+    public ShardedStatsClient(@Value("${stats-server.shards}") List<String> shardUrls, RestTemplateBuilder builder,
+                              ObjectMapper objectMapper,
+                              @Value("${stats-client.connect-timeout-ms:1000}") long connectTimeoutMillis,
+                              @Value("${stats-client.read-timeout-ms:2000}") long readTimeoutMillis,
+                              @Value("${stats-client.pool.max-total:50}") int poolMaxTotal,
+                              @Value("${stats-client.pool.max-per-route:20}") int poolMaxPerRoute,
+                              @Value("${stats-client.async.capacity:10000}") int capacity,
+                              @Value("${stats-client.async.batch-size:500}") int batchSize,
+                              @Value("${stats-client.async.flush-interval-ms:1000}") long flushIntervalMillis,
+                              @Value("${stats-client.async.max-attempts:3}") int maxAttempts,
+                              @Value("${stats-client.async.retry-backoff-ms:200}") long retryBackoffMillis,
+                              @Value("${stats-client.max-uris-query-length:4000}") int maxUrisQueryLength,
+                              @Value("${stats-client.binary.enabled:true}") boolean binary,
+                              @Value("${stats-client.views.batch-window-ms:5}") long viewsBatchWindowMillis,
+                              @Value("${stats-client.views.cache-ttl-ms:2000}") long viewsCacheTtlMillis,
+                              @Value("${stats-client.views.cache-max-entries:100000}") int viewsCacheMaxEntries,
+                              @Value("${stats-client.shards.virtual-nodes:128}") int virtualNodes) {
+        this.shards = new ArrayList<>(shardUrls.size());
+        for (String shardUrl : shardUrls) {
+            shards.add(new StatsClient(shardUrl, builder, objectMapper, connectTimeoutMillis, readTimeoutMillis,
+                    poolMaxTotal, poolMaxPerRoute, capacity, batchSize, flushIntervalMillis, maxAttempts,
+                    retryBackoffMillis, maxUrisQueryLength, binary, 0, 0, 0));
+        }
+        this.ring = new ShardRing(shardUrls, virtualNodes);
+        this.viewCounts = new ViewCountCoalescer(this::getViews, viewsBatchWindowMillis, viewsCacheTtlMillis,
+                viewsCacheMaxEntries);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shardUrls.size(), runnable -> {
+            Thread thread = new Thread(runnable, "stats-client-scatter-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Клиент кластера статистики, шарды {}", shardUrls);
+    }
+
+    public void create(EndpointHit endpointHitDto) {
+        shardOf(endpointHitDto.getUri()).create(endpointHitDto);
+    }
+
+    /**
+     * Отправляет посещения каждому шарду одной пачкой.
+     *
+     * @return первый неуспешный ответ шарда или 201
+     */
+    public ResponseEntity<Object> createAll(List<EndpointHit> endpointHits) {
+        Map<Integer, List<EndpointHit>> hitsByShard = new LinkedHashMap<>();
+        for (EndpointHit endpointHit : endpointHits) {
+            hitsByShard.computeIfAbsent(ring.shardOf(endpointHit.getUri()), shard -> new ArrayList<>())
+                    .add(endpointHit);
+        }
+
+        for (Map.Entry<Integer, List<EndpointHit>> entry : hitsByShard.entrySet()) {
+            ResponseEntity<Object> response = shards.get(entry.getKey()).createAll(entry.getValue());
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                return response;
+            }
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    public void createAsync(EndpointHit endpointHitDto) {
+        shardOf(endpointHitDto.getUri()).createAsync(endpointHitDto);
+    }
+
+    public long getDroppedHits() {
+        return shards.stream().mapToLong(StatsClient::getDroppedHits).sum();
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        shards.forEach(StatsClient::close);
+    }
+
+    public List<ViewStats> getViewStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return getViewStats(start, end, uris, unique, 0);
+    }
+
+    /**
+     * Просмотры со всех нужных шардов по убыванию hits. При limit > 0 каждый шард возвращает свои limit
+     * самых посещаемых, из объединения берутся limit первых: uri не делится между шардами, поэтому
+     * результат совпадает с запросом к одному серверу.
+     *
+     * @param limit 0 - без ограничения
+     */
+    public List<ViewStats> getViewStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                        int limit) {
+        Map<Integer, List<String>> urisByShard = new LinkedHashMap<>();
+        if (uris.isEmpty()) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                urisByShard.put(shard, List.of());
+            }
+        } else {
+            for (String uri : uris) {
+                urisByShard.computeIfAbsent(ring.shardOf(uri), shard -> new ArrayList<>()).add(uri);
+            }
+        }
+
+        List<ViewStats> viewStatsList = new ArrayList<>();
+        if (urisByShard.size() == 1) {
+            Map.Entry<Integer, List<String>> entry = urisByShard.entrySet().iterator().next();
+            shards.get(entry.getKey()).forEachViewStats(start, end, entry.getValue(), unique, limit,
+                    viewStatsList::add);
+        } else {
+            List<CompletableFuture<List<ViewStats>>> parts = new ArrayList<>(urisByShard.size());
+            urisByShard.forEach((shard, shardUris) -> parts.add(CompletableFuture.supplyAsync(() -> {
+                List<ViewStats> part = new ArrayList<>();
+                shards.get(shard).forEachViewStats(start, end, shardUris, unique, limit, part::add);
+                return part;
+            }, executor)));
+            try {
+                parts.forEach(part -> viewStatsList.addAll(part.join()));
+            } catch (CompletionException e) {
+                parts.forEach(part -> part.cancel(true));
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        viewStatsList.sort(ORDER);
+        return limit > 0 && viewStatsList.size() > limit ? viewStatsList.subList(0, limit) : viewStatsList;
+    }
+
+    public Map<String, Long> getViews(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        Map<String, Long> views = new HashMap<>();
+        for (ViewStats viewStats : getViewStats(start, end, uris, unique)) {
+            views.merge(viewStats.getUri(), (long) viewStats.getHits(), Long::sum);
+        }
+        return views;
+    }
+
+    /**
+     * См. {@link StatsClient#getViewCounts(Collection, boolean)}; объединённый запрос рассылается по шардам.
+     */
+    public Map<String, Long> getViewCounts(Collection<String> uris, boolean unique) {
+        return viewCounts.getViews(ViewCountCoalescer.ALL_TIME_START, null, uris, unique);
+    }
+
+    public Map<String, Long> getViewCounts(LocalDateTime start, LocalDateTime end, Collection<String> uris,
+                                           boolean unique) {
+        return viewCounts.getViews(start, end, uris, unique);
+    }
+
+    int shardIndexOf(String uri) {
+        return ring.shardOf(uri);
+    }
+
+    StatsClient shard(int index) {
+        return shards.get(index);
+    }
+
+    private StatsClient shardOf(String uri) {
+        return shards.get(ring.shardOf(uri));
+    }
+}
@@ -1,36 +1,205 @@
 package ru.practicum.ewm.stats.statsclient;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.util.DefaultUriBuilderFactory;
+import org.springframework.web.util.UriUtils;
 import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsReader;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsWriter;
+import ru.practicum.ewm.stats.statsdto.binary.StatsBinaryFormat;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
+@Slf4j
 public class StatsClient extends BaseClient {
+    private static final String STATS_PATH = "/stats?start={start}&end={end}&unique={unique}";
+    private static final String URIS_PARAMETER = "&uris=";
+    private static final String LIMIT_PARAMETER = "&limit={limit}";
+    private static final MediaType BINARY = MediaType.parseMediaType(StatsBinaryFormat.MEDIA_TYPE);
+
+    private final CloseableHttpClient httpClient;
+    private final HitBatchSender hitBatchSender;
+    private final ObjectReader viewStatsReader;
+    private final int maxUrisQueryLength;
+    private final ViewCountCoalescer viewCounts;
+    private volatile boolean binary;
+
     @Autowired
-    public StatsClient(@Value("${stats-server.url}") String serverUrl, RestTemplateBuilder builder) {
+    public StatsClient(@Value("${stats-server.url}") String serverUrl, RestTemplateBuilder builder,
+                       ObjectMapper objectMapper,
+                       @Value("${stats-client.connect-timeout-ms:1000}") long connectTimeoutMillis,
+                       @Value("${stats-client.read-timeout-ms:2000}") long readTimeoutMillis,
+                       @Value("${stats-client.pool.max-total:50}") int poolMaxTotal,
+                       @Value("${stats-client.pool.max-per-route:20}") int poolMaxPerRoute,
+                       @Value("${stats-client.async.capacity:10000}") int capacity,
+                       @Value("${stats-client.async.batch-size:500}") int batchSize,
+                       @Value("${stats-client.async.flush-interval-ms:1000}") long flushIntervalMillis,
+                       @Value("${stats-client.async.max-attempts:3}") int maxAttempts,
+                       @Value("${stats-client.async.retry-backoff-ms:200}") long retryBackoffMillis,
+                       @Value("${stats-client.max-uris-query-length:4000}") int maxUrisQueryLength,
+                       @Value("${stats-client.binary.enabled:true}") boolean binary,
+                       @Value("${stats-client.views.batch-window-ms:5}") long viewsBatchWindowMillis,
+                       @Value("${stats-client.views.cache-ttl-ms:2000}") long viewsCacheTtlMillis,
+                       @Value("${stats-client.views.cache-max-entries:100000}") int viewsCacheMaxEntries) {
+        this(pooledHttpClient(poolMaxTotal, poolMaxPerRoute), serverUrl, builder, objectMapper, connectTimeoutMillis,
+                readTimeoutMillis, capacity, batchSize, flushIntervalMillis, maxAttempts, retryBackoffMillis,
+                maxUrisQueryLength, binary, viewsBatchWindowMillis, viewsCacheTtlMillis, viewsCacheMaxEntries);
+    }
+
+    private StatsClient(CloseableHttpClient httpClient, String serverUrl, RestTemplateBuilder builder,
+                        ObjectMapper objectMapper, long connectTimeoutMillis, long readTimeoutMillis, int capacity,
+                        int batchSize, long flushIntervalMillis, int maxAttempts, long retryBackoffMillis,
+                        int maxUrisQueryLength, boolean binary, long viewsBatchWindowMillis, long viewsCacheTtlMillis,
+                        int viewsCacheMaxEntries) {
         super(
                 builder
                         .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
-                        .requestFactory(HttpComponentsClientHttpRequestFactory::new)
+                        .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+                        .setConnectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                        .setReadTimeout(Duration.ofMillis(readTimeoutMillis))
                         .build()
         );
+        this.httpClient = httpClient;
+        this.hitBatchSender = new HitBatchSender(this::sendBatch, capacity, batchSize, flushIntervalMillis,
+                maxAttempts, retryBackoffMillis);
+        this.viewStatsReader = objectMapper.readerFor(ViewStats.class);
+        this.maxUrisQueryLength = maxUrisQueryLength;
+        this.binary = binary;
+        this.viewCounts = new ViewCountCoalescer(this::getViews, viewsBatchWindowMillis, viewsCacheTtlMillis,
+                viewsCacheMaxEntries);
     }
 
     private final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     public void create(EndpointHit endpointHitDto) {
-        post("/hit", endpointHitDto);
+        send("/hit", List.of(endpointHitDto), endpointHitDto);
+    }
+
+    public ResponseEntity<Object> createAll(List<EndpointHit> endpointHits) {
+        return send("/hits", endpointHits, endpointHits);
+    }
+
+    public void createAsync(EndpointHit endpointHitDto) {
+        hitBatchSender.add(endpointHitDto);
+    }
+
+    public long getDroppedHits() {
+        return hitBatchSender.getDropped();
+    }
+
+    @PreDestroy
+    public void close() {
+        hitBatchSender.close();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть пул соединений с сервером статистики", e);
+        }
+    }
+
+    /**
+     * Пул keep-alive соединений с сервером статистики: max-per-route ограничивает соединения с одним сервером,
+     * max-total - со всеми, если клиент ходит к нескольким.
+     */
+    private static CloseableHttpClient pooledHttpClient(int maxTotal, int maxPerRoute) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .build();
+    }
+
+    private void sendBatch(List<EndpointHit> endpointHits) {
+        ResponseEntity<Object> response = createAll(endpointHits);
+        if (response.getStatusCode().is5xxServerError()) {
+            throw new IllegalStateException("сервер статистики ответил " + response.getStatusCode());
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            log.warn("Сервер статистики отклонил {} посещений: {}", endpointHits.size(), response.getStatusCode());
+        }
+    }
+
+    /**
+     * Посещения отправляются в двоичном формате; сервер без его поддержки или с другой версией формата
+     * отвечает 415, после чего клиент переходит на JSON. Посещения, которые нельзя закодировать
+     * (пустые поля, неверное время), отправляются в JSON, чтобы сервер вернул обычную ошибку валидации.
+     */
+    private ResponseEntity<Object> send(String path, List<EndpointHit> endpointHits, Object jsonBody) {
+        if (binary) {
+            LocalDateTime[] timestamps = binaryTimestamps(endpointHits);
+            if (timestamps != null) {
+                ResponseEntity<Object> response = post(path, BINARY, out -> writeHits(out, endpointHits, timestamps));
+                if (response.getStatusCode() != HttpStatus.UNSUPPORTED_MEDIA_TYPE) {
+                    return response;
+                }
+                log.info("Сервер статистики не принимает двоичный формат, посещения отправляются в JSON");
+                binary = false;
+            }
+        }
+        return post(path, jsonBody);
+    }
+
+    private LocalDateTime[] binaryTimestamps(List<EndpointHit> endpointHits) {
+        LocalDateTime[] timestamps = new LocalDateTime[endpointHits.size()];
+        int index = 0;
+        for (EndpointHit endpointHit : endpointHits) {
+            if (endpointHit.getApp() == null || endpointHit.getUri() == null || endpointHit.getIp() == null
+                    || endpointHit.getTimestamp() == null) {
+                return null;
+            }
+            try {
+                timestamps[index++] = LocalDateTime.parse(
+                        URLDecoder.decode(endpointHit.getTimestamp(), StandardCharsets.UTF_8), dateTimeFormatter);
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return timestamps;
+    }
+
+    private static void writeHits(OutputStream out, List<EndpointHit> endpointHits, LocalDateTime[] timestamps)
+            throws IOException {
+        BinaryStatsWriter writer = new BinaryStatsWriter(out);
+        int index = 0;
+        for (EndpointHit endpointHit : endpointHits) {
+            writer.writeHit(endpointHit.getApp(), endpointHit.getUri(), endpointHit.getIp(), timestamps[index++]);
+        }
+        writer.flush();
     }
 
     public ResponseEntity<Object> getStats(String encodedStart, String encodedEnd,
@@ -46,9 +215,118 @@ public class StatsClient extends BaseClient {
         StringBuilder pathBuilder = new StringBuilder("/stats?start={start}&end={end}&unique={unique}");
 
         if (parameters.containsKey("uris")) {
-            pathBuilder.append(parameters.get("&uris={uris}"));
+            pathBuilder.append("&uris={uris}");
         }
 
         return get(pathBuilder.toString(), parameters);
     }
+
+    public List<ViewStats> getViewStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        List<ViewStats> viewStatsList = new ArrayList<>();
+        forEachViewStats(start, end, uris, unique, viewStatsList::add);
+
+        if (uris.size() > 1) {
+            viewStatsList.sort(Comparator.comparingInt(ViewStats::getHits).reversed());
+        }
+        return viewStatsList;
+    }
+
+    public Map<String, Long> getViews(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        Map<String, Long> views = new HashMap<>();
+        forEachViewStats(start, end, uris, unique,
+                viewStats -> views.merge(viewStats.getUri(), (long) viewStats.getHits(), Long::sum));
+        return views;
+    }
+
+    /**
+     * Просмотры uris за всё время до текущего момента, uri без просмотров - 0. Одновременные и близкие по времени
+     * вызовы объединяются в один запрос к серверу, ответ кэшируется на stats-client.views.cache-ttl-ms.
+     */
+    public Map<String, Long> getViewCounts(Collection<String> uris, boolean unique) {
+        return viewCounts.getViews(ViewCountCoalescer.ALL_TIME_START, null, uris, unique);
+    }
+
+    /**
+     * То же, что {@link #getViewCounts(Collection, boolean)}, за период [start, end].
+     */
+    public Map<String, Long> getViewCounts(LocalDateTime start, LocalDateTime end, Collection<String> uris,
+                                           boolean unique) {
+        return viewCounts.getViews(start, end, uris, unique);
+    }
+
+    public void forEachViewStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                 Consumer<ViewStats> consumer) {
+        forEachViewStats(start, end, uris, unique, 0, consumer);
+    }
+
+    /**
+     * Читает ответ GET /stats потоком, не собирая его целиком в памяти. Длинный список uris
+     * разбивается на несколько запросов, чтобы строка запроса не превышала max-uris-query-length.
+     * Порядок элементов сохраняется только в пределах одного запроса.
+     *
+     * @param limit не больше limit самых посещаемых в каждом запросе, 0 - без ограничения
+     */
+    public void forEachViewStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                 int limit, Consumer<ViewStats> consumer) {
+        Map<String, Object> parameters = new HashMap<>(Map.of(
+                "start", dateTimeFormatter.format(start),
+                "end", dateTimeFormatter.format(end),
+                "unique", unique
+        ));
+        String statsPath = STATS_PATH;
+        if (limit > 0) {
+            statsPath += LIMIT_PARAMETER;
+            parameters.put("limit", limit);
+        }
+
+        if (uris.isEmpty()) {
+            requestViewStats(statsPath, parameters, consumer);
+            return;
+        }
+
+        StringBuilder pathBuilder = new StringBuilder(statsPath);
+        int queryLength = 0;
+        int index = 0;
+        for (String uri : new LinkedHashSet<>(uris)) {
+            int length = URIS_PARAMETER.length() + UriUtils.encode(uri, StandardCharsets.UTF_8).length();
+            if (index > 0 && queryLength + length > maxUrisQueryLength) {
+                requestViewStats(pathBuilder.toString(), parameters, consumer);
+                parameters.keySet().removeIf(name -> name.startsWith("uri"));
+                pathBuilder.setLength(statsPath.length());
+                queryLength = 0;
+                index = 0;
+            }
+
+            pathBuilder.append(URIS_PARAMETER).append("{uri").append(index).append('}');
+            parameters.put("uri" + index, uri);
+            queryLength += length;
+            index++;
+        }
+        requestViewStats(pathBuilder.toString(), parameters, consumer);
+    }
+
+    private void requestViewStats(String path, Map<String, Object> parameters, Consumer<ViewStats> consumer) {
+        rest.execute(path, HttpMethod.GET,
+                request -> request.getHeaders().setAccept(binary
+                        ? List.of(BINARY, MediaType.APPLICATION_JSON)
+                        : List.of(MediaType.APPLICATION_JSON)),
+                response -> {
+                    MediaType contentType = response.getHeaders().getContentType();
+                    if (contentType != null && BINARY.isCompatibleWith(contentType)) {
+                        BinaryStatsReader reader = new BinaryStatsReader(response.getBody());
+                        ViewStats viewStats;
+                        while ((viewStats = reader.readViewStats()) != null) {
+                            consumer.accept(viewStats);
+                        }
+                        return null;
+                    }
+                    try (MappingIterator<ViewStats> iterator = viewStatsReader.readValues(response.getBody())) {
+                        while (iterator.hasNextValue()) {
+                            consumer.accept(iterator.nextValue());
+                        }
+                    }
+                    return null;
+                },
+                parameters);
+    }
 }
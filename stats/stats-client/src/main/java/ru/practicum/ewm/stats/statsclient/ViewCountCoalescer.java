@@ -0,0 +1,209 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import lombok.Value;
+import org.springframework.lang.Nullable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Количество просмотров по uri с объединением запросов. Одновременные запросы одних и тех же uri ждут один
+ * ответ сервера; запросы за тот же период, пришедшие в течение batch-window-ms, собираются в один GET /stats
+ * по объединению uris, который выполняет первый из них. Ответы хранятся cache-ttl-ms, uri без просмотров - 0;
+ * сверх max-entries вытесняются давно не запрошенные.
+ */
+public class ViewCountCoalescer {
+    public static final LocalDateTime ALL_TIME_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final ViewsLoader loader;
+    private final long batchWindowMillis;
+    private final long ttlNanos;
+    private final Map<ViewKey, CachedViews> cache;
+    private final ConcurrentMap<ViewKey, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ViewWindow, Batch> batches = new ConcurrentHashMap<>();
+
+    public ViewCountCoalescer(ViewsLoader loader, long batchWindowMillis, long ttlMillis, int maxEntries) {
+        this.loader = loader;
+        this.batchWindowMillis = batchWindowMillis;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ViewKey, CachedViews> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * @param end null - до момента запроса к серверу, такие запросы объединяются независимо от времени вызова
+     */
+    public Map<String, Long> getViews(LocalDateTime start, @Nullable LocalDateTime end, Collection<String> uris,
+                                      boolean unique) {
+        ViewWindow window = new ViewWindow(start, end, unique);
+        Map<String, Long> result = new HashMap<>();
+        Map<String, CompletableFuture<Long>> pending = new HashMap<>();
+        Batch leaderBatch = null;
+        long now = System.nanoTime();
+
+        for (String uri : new LinkedHashSet<>(uris)) {
+            ViewKey key = new ViewKey(window, uri);
+            CachedViews cached = cache.get(key);
+            if (cached != null) {
+                if (cached.expiresAt - now > 0) {
+                    result.put(uri, cached.hits);
+                    continue;
+                }
+                cache.remove(key, cached);
+            }
+
+            CompletableFuture<Long> created = new CompletableFuture<>();
+            CompletableFuture<Long> future = inFlight.putIfAbsent(key, created);
+            if (future == null) {
+                future = created;
+                Batch batch = enqueue(window, uri);
+                if (batch != null) {
+                    leaderBatch = batch;
+                }
+            }
+            pending.put(uri, future);
+        }
+
+        if (leaderBatch != null) {
+            awaitBatchWindow();
+            load(window, leaderBatch);
+        }
+
+        for (Map.Entry<String, CompletableFuture<Long>> entry : pending.entrySet()) {
+            try {
+                result.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Добавляет uri в открытую пачку периода или открывает новую.
+     *
+     * @return новая пачка, если её открыл этот вызов и он должен её отправить, иначе null
+     */
+    private Batch enqueue(ViewWindow window, String uri) {
+        while (true) {
+            Batch batch = batches.get(window);
+            if (batch != null && batch.add(uri)) {
+                return null;
+            }
+
+            Batch created = new Batch(uri);
+            boolean opened = batch == null
+                    ? batches.putIfAbsent(window, created) == null
+                    : batches.replace(window, batch, created);
+            if (opened) {
+                return created;
+            }
+        }
+    }
+
+    private void awaitBatchWindow() {
+        if (batchWindowMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(batchWindowMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load(ViewWindow window, Batch batch) {
+        List<String> uris = batch.close();
+        batches.remove(window, batch);
+
+        Map<String, Long> views;
+        try {
+            views = loader.load(window.start, window.end == null ? LocalDateTime.now() : window.end, uris,
+                    window.unique);
+        } catch (RuntimeException | Error e) {
+            // ошибка любого рода завершает ожидающих: иначе они и следующие запросы тех же uri ждали бы вечно
+            for (String uri : uris) {
+                inFlight.remove(new ViewKey(window, uri)).completeExceptionally(e);
+            }
+            return;
+        }
+
+        long expiresAt = System.nanoTime() + ttlNanos;
+        for (String uri : uris) {
+            ViewKey key = new ViewKey(window, uri);
+            long hits = views.getOrDefault(uri, 0L);
+            if (ttlNanos > 0) {
+                cache.put(key, new CachedViews(hits, expiresAt));
+            }
+            inFlight.remove(key).complete(hits);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ViewsLoader {
+        Map<String, Long> load(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+    }
+
+    @Value
+    private static class ViewWindow {
+        LocalDateTime start;
+        LocalDateTime end;
+        boolean unique;
+    }
+
+    @Value
+    private static class ViewKey {
+        ViewWindow window;
+        String uri;
+    }
+
+    @Value
+    private static class CachedViews {
+        long hits;
+        long expiresAt;
+    }
+
+    private static final class Batch {
+        private final List<String> uris = new ArrayList<>();
+        private boolean closed;
+
+        private Batch(String uri) {
+            uris.add(uri);
+        }
+
+        private synchronized boolean add(String uri) {
+            if (closed) {
+                return false;
+            }
+            uris.add(uri);
+            return true;
+        }
+
+        private synchronized List<String> close() {
+            closed = true;
+            return new ArrayList<>(uris);
+        }
+    }
+}
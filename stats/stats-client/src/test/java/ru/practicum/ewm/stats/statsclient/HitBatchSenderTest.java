@@ -0,0 +1,117 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HitBatchSenderTest {
+    private static final long NEVER_MILLIS = 60_000;
+
+    @Test
+    void add_batchFull_sentWithoutWaitingForInterval() throws InterruptedException {
+        BlockingQueue<List<EndpointHit>> sent = new LinkedBlockingQueue<>();
+        HitBatchSender sender = new HitBatchSender(sent::add, 100, 3, NEVER_MILLIS, 1, 10);
+
+        sender.add(hit(1));
+        sender.add(hit(2));
+        sender.add(hit(3));
+
+        List<EndpointHit> batch = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(List.of(hit(1), hit(2), hit(3)), batch);
+        sender.close();
+    }
+
+    @Test
+    void add_consumerFailsTwice_retriedWithGrowingBackoff() throws InterruptedException {
+        List<Long> attemptNanos = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+        HitBatchSender sender = new HitBatchSender(batch -> {
+            attemptNanos.add(System.nanoTime());
+            if (attemptNanos.size() < 3) {
+                throw new IllegalStateException("сервер недоступен");
+            }
+            delivered.countDown();
+        }, 100, 1, NEVER_MILLIS, 3, 50);
+
+        sender.add(hit(1));
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(3, attemptNanos.size());
+        assertTrue(attemptNanos.get(1) - attemptNanos.get(0) >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(attemptNanos.get(2) - attemptNanos.get(1) >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, sender.getDropped());
+        sender.close();
+    }
+
+    @Test
+    void add_allAttemptsFailed_batchCountedAsDropped() {
+        AtomicInteger attempts = new AtomicInteger();
+        HitBatchSender sender = new HitBatchSender(batch -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("сервер недоступен");
+        }, 100, 2, NEVER_MILLIS, 2, 1);
+
+        sender.add(hit(1));
+        sender.add(hit(2));
+        sender.close();
+
+        assertEquals(2, attempts.get());
+        assertEquals(2, sender.getDropped());
+    }
+
+    @Test
+    void add_bufferFull_hitDropped() {
+        List<EndpointHit> sent = new CopyOnWriteArrayList<>();
+        HitBatchSender sender = new HitBatchSender(sent::addAll, 2, 10, NEVER_MILLIS, 1, 1);
+
+        sender.add(hit(1));
+        sender.add(hit(2));
+        sender.add(hit(3));
+
+        assertEquals(1, sender.getDropped());
+        sender.close();
+        assertEquals(List.of(hit(1), hit(2)), sent);
+    }
+
+    @Test
+    void close_bufferedHitsSentOnce() {
+        List<List<EndpointHit>> sent = new CopyOnWriteArrayList<>();
+        HitBatchSender sender = new HitBatchSender(sent::add, 100, 10, NEVER_MILLIS, 3, 1);
+        sender.add(hit(1));
+        sender.add(hit(2));
+
+        sender.close();
+
+        assertEquals(List.of(List.of(hit(1), hit(2))), sent);
+        assertEquals(0, sender.getDropped());
+    }
+
+    @Test
+    void add_afterClose_countedAsDroppedWithoutException() {
+        List<EndpointHit> sent = new CopyOnWriteArrayList<>();
+        HitBatchSender sender = new HitBatchSender(sent::addAll, 100, 1, NEVER_MILLIS, 1, 1);
+        sender.close();
+
+        sender.add(hit(1));
+        sender.add(hit(2));
+
+        assertEquals(2, sender.getDropped());
+        assertTrue(sent.isEmpty());
+    }
+
+    private static EndpointHit hit(int id) {
+        return new EndpointHit("ewm-main-service", "/events/" + id, "192.168.0.1", "2023-10-10 15:15:15");
+    }
+}
@@ -0,0 +1,101 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.StatsServerApp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Кластер из трёх серверов статистики в одном процессе, у каждого своя база H2.
+ */
+class ShardedStatsClientTest {
+    private static final int SHARDS = 3;
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 10, 0, 0);
+
+    private static final List<ConfigurableApplicationContext> servers = new ArrayList<>();
+    private static ShardedStatsClient client;
+
+    @BeforeAll
+    static void startCluster() {
+        List<String> shardUrls = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            ConfigurableApplicationContext server = new SpringApplicationBuilder(StatsServerApp.class)
+                    .properties("server.port=0",
+                            "spring.datasource.url=jdbc:h2:mem:stats-shard-" + shard,
+                            "spring.sql.init.mode=always",
+                            "spring.jpa.hibernate.ddl-auto=none")
+                    .run();
+            servers.add(server);
+            shardUrls.add("http://localhost:" + server.getEnvironment().getProperty("local.server.port"));
+        }
+        client = new ShardedStatsClient(shardUrls, new RestTemplateBuilder(), new ObjectMapper(),
+                1000, 5000, 10, 10, 1000, 100, 1000, 1, 0, 4000, true, 0, 0, 0, 128);
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        client.close();
+        servers.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    void scatterGather_matchesSingleServerCounts() {
+        List<EndpointHit> hits = new ArrayList<>();
+        Map<String, Integer> expectedHits = new HashMap<>();
+        Map<String, Set<String>> expectedIps = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            String uri = "/events/" + (i % 30);
+            String ip = "10.0.0." + (i % 7);
+            hits.add(new EndpointHit("ewm-main-service", uri, ip, "2023-10-10 12:00:00"));
+            expectedHits.merge(uri, 1, Integer::sum);
+            expectedIps.computeIfAbsent(uri, key -> new HashSet<>()).add(ip);
+        }
+        assertTrue(client.createAll(hits).getStatusCode().is2xxSuccessful());
+
+        Set<Integer> usedShards = new HashSet<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            for (ViewStats viewStats : client.shard(shard).getViewStats(START, START.plusDays(1), List.of(), false)) {
+                assertEquals(shard, client.shardIndexOf(viewStats.getUri()));
+                usedShards.add(shard);
+            }
+        }
+        assertEquals(SHARDS, usedShards.size());
+
+        List<ViewStats> all = client.getViewStats(START, START.plusDays(1), List.of(), false);
+        assertEquals(expectedHits, all.stream().collect(Collectors.toMap(ViewStats::getUri, ViewStats::getHits)));
+        assertEquals(all.stream().sorted(Comparator.comparingInt(ViewStats::getHits).reversed()
+                .thenComparing(ViewStats::getUri)).collect(Collectors.toList()), all);
+
+        Map<String, Long> unique = client.getViews(START, START.plusDays(1), List.of("/events/1", "/events/2",
+                "/events/3", "/events/4"), true);
+        for (String uri : unique.keySet()) {
+            assertEquals(expectedIps.get(uri).size(), unique.get(uri));
+        }
+        assertEquals(4, unique.size());
+
+        List<ViewStats> top = client.getViewStats(START, START.plusDays(1), List.of(), false, 5);
+        assertEquals(all.subList(0, 5), top);
+
+        assertEquals(Map.of("/events/1", (long) expectedHits.get("/events/1"), "/events/missing", 0L),
+                client.getViewCounts(List.of("/events/1", "/events/missing"), false));
+    }
+}
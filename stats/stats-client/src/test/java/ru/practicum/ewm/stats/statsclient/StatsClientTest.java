@@ -0,0 +1,152 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.util.UriUtils;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsReader;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsWriter;
+import ru.practicum.ewm.stats.statsdto.binary.StatsBinaryFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.queryParam;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class StatsClientTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 10, 0, 0);
+
+    private StatsClient client;
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        client = new StatsClient("http://stats", new RestTemplateBuilder(), new ObjectMapper(), 1000, 1000,
+                10, 10, 100, 10, 1000, 1, 0, 4000, true, 0, 0, 0);
+        server = MockRestServiceServer.bindTo(client.rest).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @Test
+    void createAll_whenBinaryNotSupported_thenFallsBackToJson() {
+        List<EndpointHit> hits = List.of(new EndpointHit("ewm-main-service", "/events/1", "192.168.0.1",
+                "2023-10-10 15:15:15"));
+        server.expect(once(), requestTo("http://stats/hits"))
+                .andExpect(header(HttpHeaders.CONTENT_TYPE, StatsBinaryFormat.MEDIA_TYPE))
+                .andRespond(withStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE));
+        server.expect(once(), requestTo("http://stats/hits"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andRespond(withStatus(HttpStatus.CREATED));
+        server.expect(once(), requestTo("http://stats/hit"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andRespond(withStatus(HttpStatus.CREATED));
+
+        assertEquals(HttpStatus.CREATED, client.createAll(hits).getStatusCode());
+        client.create(hits.get(0));
+        server.verify();
+    }
+
+    @Test
+    void createAll_binary_hitsWithInlineIpDecoded() {
+        List<EndpointHit> hits = List.of(
+                new EndpointHit("ewm-main-service", "/events/1", "192.168.0.1", "2023-10-10 15:15:15"),
+                new EndpointHit("ewm-main-service", "/events/1", "192.168.0.2", "2023-10-10 15:15:10"));
+        List<String> decoded = new ArrayList<>();
+        server.expect(once(), requestTo("http://stats/hits"))
+                .andExpect(header(HttpHeaders.CONTENT_TYPE, StatsBinaryFormat.MEDIA_TYPE))
+                .andExpect(request -> {
+                    BinaryStatsReader reader = new BinaryStatsReader(new ByteArrayInputStream(
+                            ((MockClientHttpRequest) request).getBodyAsBytes()));
+                    while (reader.readHit((app, uri, ip, timestamp) ->
+                            decoded.add(app + " " + uri + " " + ip + " " + timestamp))) {
+                        // посещения собираются в decoded
+                    }
+                })
+                .andRespond(withStatus(HttpStatus.CREATED));
+
+        assertEquals(HttpStatus.CREATED, client.createAll(hits).getStatusCode());
+        assertEquals(List.of("ewm-main-service /events/1 192.168.0.1 2023-10-10T15:15:15",
+                "ewm-main-service /events/1 192.168.0.2 2023-10-10T15:15:10"), decoded);
+        server.verify();
+    }
+
+    @Test
+    void getViewStats_whenBinaryResponse_thenDecoded() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (BinaryStatsWriter writer = new BinaryStatsWriter(body)) {
+            writer.writeViewStats(new ViewStats("ewm-main-service", "/events/1", 5));
+            writer.writeViewStats(new ViewStats("ewm-main-service", "/events/2", 3));
+        }
+        server.expect(once(), requestTo(startsWith("http://stats/stats?start=")))
+                .andExpect(method(HttpMethod.GET))
+                .andExpect(header(HttpHeaders.ACCEPT, StatsBinaryFormat.MEDIA_TYPE + ", application/json"))
+                .andRespond(withSuccess(body.toByteArray(), MediaType.parseMediaType(StatsBinaryFormat.MEDIA_TYPE)));
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 5),
+                        new ViewStats("ewm-main-service", "/events/2", 3)),
+                client.getViewStats(START, START.plusDays(1), List.of(), false));
+        server.verify();
+    }
+
+    @Test
+    void getViews_longUriList_splitIntoRequestsAndMerged() {
+        // каждый uri занимает в строке запроса 19 символов ("&uris=" и "%2Fevents%2FN"), в 40 помещаются два
+        StatsClient chunked = new StatsClient("http://stats", new RestTemplateBuilder(), new ObjectMapper(), 1000,
+                1000, 10, 10, 100, 10, 1000, 1, 0, 40, false, 0, 0, 0);
+        MockRestServiceServer chunkedServer = MockRestServiceServer.bindTo(chunked.rest).build();
+        expectViewStats(chunkedServer, List.of("/events/1", "/events/2"),
+                "[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":5},"
+                        + "{\"app\":\"ewm-admin\",\"uri\":\"/events/1\",\"hits\":2},"
+                        + "{\"app\":\"ewm-main-service\",\"uri\":\"/events/2\",\"hits\":3}]");
+        expectViewStats(chunkedServer, List.of("/events/3", "/events/4"),
+                "[{\"app\":\"ewm-main-service\",\"uri\":\"/events/4\",\"hits\":1}]");
+        expectViewStats(chunkedServer, List.of("/events/5"),
+                "[{\"app\":\"ewm-main-service\",\"uri\":\"/events/5\",\"hits\":7}]");
+
+        Map<String, Long> views = chunked.getViews(START, START.plusDays(1),
+                List.of("/events/1", "/events/2", "/events/3", "/events/1", "/events/4", "/events/5"), false);
+
+        assertEquals(Map.of("/events/1", 7L, "/events/2", 3L, "/events/4", 1L, "/events/5", 7L), views);
+        chunkedServer.verify();
+        chunked.close();
+    }
+
+    private static void expectViewStats(MockRestServiceServer mockServer, List<String> uris, String json) {
+        mockServer.expect(once(), requestTo(startsWith("http://stats/stats?start=")))
+                .andExpect(method(HttpMethod.GET))
+                .andExpect(queryParam("unique", "false"))
+                .andExpect(queryParam("uris", uris.stream()
+                        .map(uri -> UriUtils.encode(uri, StandardCharsets.UTF_8))
+                        .toArray(String[]::new)))
+                .andRespond(withSuccess(json, MediaType.APPLICATION_JSON));
+    }
+}
@@ -0,0 +1,112 @@
+package ru.practicum.ewm.stats.statsclient;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ViewCountCoalescerTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 10, 0, 0);
+
+    @Test
+    void getViews_concurrentBurst_oneLoadForUnionOfUris() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        Set<String> loadedUris = new HashSet<>();
+        ViewCountCoalescer coalescer = new ViewCountCoalescer((start, end, uris, unique) -> {
+            loads.incrementAndGet();
+            loadedUris.addAll(uris);
+            return Map.of("/events/1", 5L, "/events/2", 3L);
+        }, 200, 60_000, 100);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        List<Future<Map<String, Long>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            List<String> uris = List.of("/events/" + (i % 3), "/events/1");
+            results.add(executor.submit(() -> {
+                ready.countDown();
+                ready.await();
+                return coalescer.getViews(START, null, uris, false);
+            }));
+        }
+
+        for (int i = 0; i < threads; i++) {
+            Map<String, Long> views = results.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of(0L, 5L, 3L).get(i % 3), views.get("/events/" + (i % 3)));
+            assertEquals(5L, views.get("/events/1"));
+        }
+        executor.shutdown();
+        assertEquals(1, loads.get());
+        assertEquals(Set.of("/events/0", "/events/1", "/events/2"), loadedUris);
+
+        assertEquals(Map.of("/events/2", 3L), coalescer.getViews(START, null, List.of("/events/2"), false));
+        assertEquals(1, loads.get());
+        coalescer.getViews(START, null, List.of("/events/2"), true);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getViews_loadFailed_errorNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        ViewCountCoalescer coalescer = new ViewCountCoalescer((start, end, uris, unique) -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("сервер недоступен");
+            }
+            return Map.of("/events/1", 5L);
+        }, 0, 60_000, 100);
+
+        assertThrows(IllegalStateException.class,
+                () -> coalescer.getViews(START, START.plusDays(1), List.of("/events/1"), false));
+        assertEquals(Map.of("/events/1", 5L),
+                coalescer.getViews(START, START.plusDays(1), List.of("/events/1"), false));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getViews_loaderThrewError_waitersReleasedAndNextCallLoads() {
+        AtomicInteger loads = new AtomicInteger();
+        ViewCountCoalescer coalescer = new ViewCountCoalescer((start, end, uris, unique) -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new StackOverflowError("разбор ответа");
+            }
+            return Map.of("/events/1", 5L);
+        }, 0, 60_000, 100);
+
+        assertThrows(StackOverflowError.class,
+                () -> coalescer.getViews(START, START.plusDays(1), List.of("/events/1"), false));
+        assertEquals(Map.of("/events/1", 5L), assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> coalescer.getViews(START, START.plusDays(1), List.of("/events/1"), false)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getViews_moreUrisThanMaxEntries_leastRecentlyRequestedEvicted() {
+        List<String> loaded = new ArrayList<>();
+        ViewCountCoalescer coalescer = new ViewCountCoalescer((start, end, uris, unique) -> {
+            loaded.addAll(uris);
+            return Map.of();
+        }, 0, 60_000, 2);
+
+        for (String uri : List.of("/events/1", "/events/2", "/events/1", "/events/3", "/events/1", "/events/2")) {
+            coalescer.getViews(START, START.plusDays(1), List.of(uri), false);
+        }
+
+        assertEquals(List.of("/events/1", "/events/2", "/events/3", "/events/2"), loaded);
+    }
+}
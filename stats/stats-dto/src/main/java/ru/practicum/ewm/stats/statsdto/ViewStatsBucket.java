@@ -0,0 +1,17 @@
+package ru.practicum.ewm.stats.statsdto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ViewStatsBucket {
+    private String app;
+    private String uri;
+    private String bucket;
+    private int hits;
+}
@@ -0,0 +1,149 @@
+package ru.practicum.ewm.stats.statsdto.binary;
+
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Чтение потока в формате {@link StatsBinaryFormat}. Ошибки формата - IOException, поток другой версии -
+ * {@link UnsupportedFormatVersionException}.
+ */
+public class BinaryStatsReader {
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private long dictionaryBytes;
+    private boolean headerRead;
+    private long previousEpochSecond;
+
+    public BinaryStatsReader(InputStream in) {
+        this.in = new BufferedInputStream(in);
+    }
+
+    /**
+     * @return false, если поток закончился
+     */
+    public boolean readHit(HitConsumer consumer) throws IOException {
+        String app = readFirstString();
+        if (app == null) {
+            return false;
+        }
+        String uri = readString();
+        String ip = new String(readBytes(), StandardCharsets.UTF_8);
+        long zigzag = readVarLong();
+        long epochSecond = previousEpochSecond + ((zigzag >>> 1) ^ -(zigzag & 1));
+        previousEpochSecond = epochSecond;
+
+        LocalDateTime timestamp;
+        try {
+            timestamp = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        } catch (RuntimeException e) {
+            throw new IOException("некорректное время посещения", e);
+        }
+        consumer.accept(app, uri, ip, timestamp);
+        return true;
+    }
+
+    /**
+     * @return null, если поток закончился
+     */
+    public ViewStats readViewStats() throws IOException {
+        String app = readFirstString();
+        if (app == null) {
+            return null;
+        }
+        String uri = readString();
+        long hits = readVarLong();
+        if (hits > Integer.MAX_VALUE) {
+            throw new IOException("некорректное количество просмотров");
+        }
+        return new ViewStats(app, uri, (int) hits);
+    }
+
+    private String readFirstString() throws IOException {
+        if (!headerRead) {
+            int magic = in.read();
+            if (magic < 0) {
+                return null;
+            }
+            if (magic != StatsBinaryFormat.MAGIC) {
+                throw new IOException("неизвестный двоичный формат");
+            }
+            int version = in.read();
+            if (version != StatsBinaryFormat.VERSION) {
+                throw new UnsupportedFormatVersionException("неподдерживаемая версия двоичного формата " + version);
+            }
+            headerRead = true;
+        }
+
+        in.mark(1);
+        if (in.read() < 0) {
+            return null;
+        }
+        in.reset();
+        return readString();
+    }
+
+    private String readString() throws IOException {
+        long reference = readVarLong();
+        if (reference >= StatsBinaryFormat.FIRST_REFERENCE) {
+            long id = reference - StatsBinaryFormat.FIRST_REFERENCE;
+            if (id >= dictionary.size()) {
+                throw new IOException("ссылка на отсутствующую строку " + id);
+            }
+            return dictionary.get((int) id);
+        }
+
+        byte[] bytes = readBytes();
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if (reference == StatsBinaryFormat.NEW_ENTRY) {
+            dictionaryBytes += bytes.length;
+            if (dictionary.size() >= StatsBinaryFormat.MAX_DICTIONARY_ENTRIES
+                    || dictionaryBytes > StatsBinaryFormat.MAX_DICTIONARY_BYTES) {
+                throw new IOException("словарь потока больше " + StatsBinaryFormat.MAX_DICTIONARY_ENTRIES
+                        + " строк или " + StatsBinaryFormat.MAX_DICTIONARY_BYTES + " байт");
+            }
+            dictionary.add(value);
+        }
+        return value;
+    }
+
+    private byte[] readBytes() throws IOException {
+        long length = readVarLong();
+        if (length > StatsBinaryFormat.MAX_STRING_BYTES) {
+            throw new IOException("строка длиннее " + StatsBinaryFormat.MAX_STRING_BYTES + " байт");
+        }
+        byte[] bytes = in.readNBytes((int) length);
+        if (bytes.length != length) {
+            throw new EOFException("поток оборван внутри строки");
+        }
+        return bytes;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("поток оборван внутри записи");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("слишком длинное число");
+    }
+
+    @FunctionalInterface
+    public interface HitConsumer {
+        void accept(String app, String uri, String ip, LocalDateTime timestamp) throws IOException;
+    }
+}
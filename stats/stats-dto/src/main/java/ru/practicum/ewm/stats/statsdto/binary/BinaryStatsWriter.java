@@ -0,0 +1,89 @@
+package ru.practicum.ewm.stats.statsdto.binary;
+
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Запись потока в формате {@link StatsBinaryFormat}. close() дописывает буфер и закрывает поток.
+ */
+public class BinaryStatsWriter implements Closeable {
+    private final OutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private long dictionaryBytes;
+    private long previousEpochSecond;
+
+    public BinaryStatsWriter(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out);
+        this.out.write(StatsBinaryFormat.MAGIC);
+        this.out.write(StatsBinaryFormat.VERSION);
+    }
+
+    public void writeHit(String app, String uri, String ip, LocalDateTime timestamp) throws IOException {
+        writeString(app);
+        writeString(uri);
+        writeBytes(ip.getBytes(StandardCharsets.UTF_8));
+        long epochSecond = timestamp.toEpochSecond(ZoneOffset.UTC);
+        long delta = epochSecond - previousEpochSecond;
+        writeVarLong((delta << 1) ^ (delta >> 63));
+        previousEpochSecond = epochSecond;
+    }
+
+    public void writeViewStats(ViewStats viewStats) throws IOException {
+        writeString(viewStats.getApp());
+        writeString(viewStats.getUri());
+        writeVarLong(viewStats.getHits());
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeString(String value) throws IOException {
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            writeVarLong(id + (long) StatsBinaryFormat.FIRST_REFERENCE);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (dictionary.size() < StatsBinaryFormat.MAX_DICTIONARY_ENTRIES
+                && dictionaryBytes + bytes.length <= StatsBinaryFormat.MAX_DICTIONARY_BYTES) {
+            dictionary.put(value, dictionary.size());
+            dictionaryBytes += bytes.length;
+            out.write(StatsBinaryFormat.NEW_ENTRY);
+        } else {
+            out.write(StatsBinaryFormat.LITERAL);
+        }
+        writeBytes(bytes);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > StatsBinaryFormat.MAX_STRING_BYTES) {
+            throw new IOException("строка длиннее " + StatsBinaryFormat.MAX_STRING_BYTES + " байт");
+        }
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
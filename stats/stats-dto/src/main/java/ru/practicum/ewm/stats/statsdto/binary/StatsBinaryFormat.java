@@ -0,0 +1,29 @@
+package ru.practicum.ewm.stats.statsdto.binary;
+
+/**
+ * Двоичный формат посещений и ответов GET /stats. Поток начинается с MAGIC и VERSION, затем идут записи
+ * до конца потока. app и uri кодируются ссылкой на общий для потока словарь: varint 0 и строка UTF-8
+ * с длиной varint добавляют её в словарь, varint 1 и строка - та же строка без добавления, varint n > 1 -
+ * ссылка на строку с номером n - 2. Словарь ограничен MAX_DICTIONARY_ENTRIES строками и
+ * MAX_DICTIONARY_BYTES байтами: заполнив его, писатель передаёт новые строки без добавления,
+ * а читатель отвергает поток, который пытается добавить строку сверх ограничения.
+ * ip почти не повторяются, поэтому в словарь не попадают и всегда передаются строкой с длиной varint.
+ * <ul>
+ *     <li>посещение: app, uri, ip, время - разница с предыдущим посещением в секундах, zigzag varint;</li>
+ *     <li>просмотры: app, uri, hits - varint.</li>
+ * </ul>
+ */
+public final class StatsBinaryFormat {
+    public static final String MEDIA_TYPE = "application/x-ewm-stats";
+    static final int MAGIC = 0xE5;
+    static final int VERSION = 2;
+    static final int MAX_STRING_BYTES = 4096;
+    static final int MAX_DICTIONARY_ENTRIES = 16384;
+    static final long MAX_DICTIONARY_BYTES = 1 << 20;
+    static final int NEW_ENTRY = 0;
+    static final int LITERAL = 1;
+    static final int FIRST_REFERENCE = 2;
+
+    private StatsBinaryFormat() {
+    }
+}
@@ -0,0 +1,13 @@
+package ru.practicum.ewm.stats.statsdto.binary;
+
+import java.io.IOException;
+
+/**
+ * Поток записан другой версией {@link StatsBinaryFormat}; в отличие от прочих ошибок формата
+ * отправитель может повторить запрос в JSON.
+ */
+public class UnsupportedFormatVersionException extends IOException {
+    public UnsupportedFormatVersionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,64 @@
+package ru.practicum.ewm.stats.statsserver.bulkhead;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ru.practicum.ewm.stats.statsserver.exception.BulkheadFullException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение числа одновременно выполняемых запросов одного вида. Запрос ждёт свободного места
+ * не дольше maxWaitMillis и получает BulkheadFullException (ответ 503), не занимая поток дольше.
+ */
+public class Bulkhead {
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final Counter rejectedCounter;
+
+    public Bulkhead(String name, int maxConcurrent, long maxWaitMillis, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrent, true);
+
+        Gauge.builder("stats.bulkhead.active", permits, p -> maxConcurrent - p.availablePermits())
+                .description("Запросы, выполняемые внутри ограничения")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("stats.bulkhead.max", () -> maxConcurrent)
+                .tag("name", name)
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("stats.bulkhead.rejected")
+                .description("Запросы, отклонённые из-за отсутствия свободного места")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public void acquire() {
+        try {
+            if (permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedCounter.increment();
+        throw new BulkheadFullException("превышено число одновременных запросов " + name);
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+}
@@ -0,0 +1,66 @@
+package ru.practicum.ewm.stats.statsserver.bulkhead;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+/**
+ * Раздельные ограничения для записи посещений (POST /hit, /hits), аналитических запросов
+ * (GET /stats, /stats/timeseries, /stats/stream) и переноса посещений (/admin/hits): медленные отчёты занимают
+ * не больше analytics.max-concurrent, выгрузка и загрузка - не больше transfer.max-concurrent потоков Tomcat
+ * и соединений с базой, остальные потоки и соединения остаются для записи. Подписка /stats/stream занимает место
+ * только на время начального запроса; открытые подписки ограничены stats-server.live.max-subscribers.
+ */
+@Configuration
+@ConditionalOnProperty(name = "stats-server.bulkhead.enabled", havingValue = "true")
+@Slf4j
+public class BulkheadConfig implements WebMvcConfigurer {
+    private final Bulkhead ingestion;
+    private final Bulkhead analytics;
+    private final Bulkhead transfer;
+    private final ObjectProvider<DataSource> dataSource;
+
+    public BulkheadConfig(MeterRegistry meterRegistry,
+                          ObjectProvider<DataSource> dataSource,
+                          @Value("${stats-server.bulkhead.ingestion.max-concurrent:50}") int ingestionMaxConcurrent,
+                          @Value("${stats-server.bulkhead.ingestion.max-wait-ms:1000}") long ingestionMaxWaitMillis,
+                          @Value("${stats-server.bulkhead.analytics.max-concurrent:6}") int analyticsMaxConcurrent,
+                          @Value("${stats-server.bulkhead.analytics.max-wait-ms:100}") long analyticsMaxWaitMillis,
+                          @Value("${stats-server.bulkhead.transfer.max-concurrent:2}") int transferMaxConcurrent,
+                          @Value("${stats-server.bulkhead.transfer.max-wait-ms:0}") long transferMaxWaitMillis) {
+        this.ingestion = new Bulkhead("ingestion", ingestionMaxConcurrent, ingestionMaxWaitMillis, meterRegistry);
+        this.analytics = new Bulkhead("analytics", analyticsMaxConcurrent, analyticsMaxWaitMillis, meterRegistry);
+        this.transfer = new Bulkhead("transfer", transferMaxConcurrent, transferMaxWaitMillis, meterRegistry);
+        this.dataSource = dataSource;
+    }
+
+    @PostConstruct
+    public void checkPoolSize() {
+        DataSource source = dataSource.getIfAvailable();
+        if (source instanceof HikariDataSource) {
+            int poolSize = ((HikariDataSource) source).getMaximumPoolSize();
+            int limited = analytics.getMaxConcurrent() + transfer.getMaxConcurrent();
+            if (poolSize < limited + 1) {
+                log.warn("Пул соединений ({}) меньше суммы ограничений аналитических запросов и переноса " +
+                        "посещений ({}) + 1, они могут занять все соединения", poolSize, limited);
+            }
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new BulkheadInterceptor(ingestion)).addPathPatterns("/hit", "/hits");
+        registry.addInterceptor(new BulkheadInterceptor(analytics))
+                .addPathPatterns("/stats", "/stats/timeseries", "/stats/stream");
+        registry.addInterceptor(new BulkheadInterceptor(transfer)).addPathPatterns("/admin/hits");
+    }
+}
@@ -0,0 +1,50 @@
+package ru.practicum.ewm.stats.statsserver.bulkhead;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Место занимается на время обработки запроса потоком Tomcat. Асинхронный ответ (SSE) освобождает его,
+ * как только обработчик вернул управление, повторная асинхронная диспетчеризация место не занимает.
+ */
+public class BulkheadInterceptor implements AsyncHandlerInterceptor {
+    private final Bulkhead bulkhead;
+    private final String acquiredAttribute;
+
+    public BulkheadInterceptor(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+        this.acquiredAttribute = BulkheadInterceptor.class.getName() + "." + bulkhead.getName();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        bulkhead.acquire();
+        request.setAttribute(acquiredAttribute, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        release(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        release(request);
+    }
+
+    private void release(HttpServletRequest request) {
+        if (request.getAttribute(acquiredAttribute) != null) {
+            request.removeAttribute(acquiredAttribute);
+            bulkhead.release();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package ru.practicum.ewm.stats.statsserver.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Кэш ответов GET /stats, ограниченный числом записей и оценкой занимаемой памяти (LRU).
+ * Периоды, заканчивающиеся в прошлом, хранятся closed-window-ttl и сбрасываются, если пришло
+ * посещение с временем внутри периода. Периоды, захватывающие текущий момент, хранятся
+ * open-window-ttl: новые посещения в них ожидаемы, поэтому допускается отставание на этот срок.
+ * Одновременные промахи по одному ключу выполняют один запрос к базе.
+ * <p>
+ * С включённой репликой закрытый период мог быть прочитан с реплики, ещё не получившей недавние посещения.
+ * Поэтому посещения помнятся max-staleness-ms, и ответ по периоду, затронутому ими, хранится не дольше,
+ * чем до момента, когда реплика гарантированно их увидит.
+ */
+@Component
+public class StatsCache {
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final long VIEW_STATS_OVERHEAD_BYTES = 112;
+
+    private final Clock clock;
+    private final int maxEntries;
+    private final long maxMemoryBytes;
+    private final long openWindowTtlMillis;
+    private final long closedWindowTtlMillis;
+    private final long staleReadMillis;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<Key>> closedKeysByUri = new HashMap<>();
+    private final Set<Key> closedKeysForAllUris = new HashSet<>();
+    private final Map<Key, Load> loads = new ConcurrentHashMap<>();
+    private final Map<String, Touch> recentTouches = new HashMap<>();
+    private long touchesPrunedAtMillis;
+    private long memoryBytes;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter sizeEvictionCounter;
+    private final Counter expiredEvictionCounter;
+    private final Counter invalidatedEvictionCounter;
+
+    @Autowired
+    public StatsCache(MeterRegistry meterRegistry,
+                      @Value("${stats-server.cache.max-entries:10000}") int maxEntries,
+                      @Value("${stats-server.cache.max-memory-mb:64}") long maxMemoryMb,
+                      @Value("${stats-server.cache.open-window-ttl-ms:1000}") long openWindowTtlMillis,
+                      @Value("${stats-server.cache.closed-window-ttl-ms:3600000}") long closedWindowTtlMillis,
+                      @Value("${stats-server.replica.enabled:false}") boolean replicaEnabled,
+                      @Value("${stats-server.replica.max-staleness-ms:5000}") long replicaMaxStalenessMillis) {
+        this(meterRegistry, Clock.systemDefaultZone(), maxEntries, maxMemoryMb * 1024 * 1024,
+                openWindowTtlMillis, closedWindowTtlMillis, replicaEnabled ? replicaMaxStalenessMillis : 0);
+    }
+
+    StatsCache(MeterRegistry meterRegistry, Clock clock, int maxEntries, long maxMemoryBytes,
+               long openWindowTtlMillis, long closedWindowTtlMillis, long staleReadMillis) {
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.openWindowTtlMillis = openWindowTtlMillis;
+        this.closedWindowTtlMillis = closedWindowTtlMillis;
+        this.staleReadMillis = staleReadMillis;
+
+        Gauge.builder("stats.cache.size", this, StatsCache::size)
+                .description("Количество закэшированных ответов GET /stats")
+                .register(meterRegistry);
+        Gauge.builder("stats.cache.memory", this, StatsCache::memoryBytes)
+                .description("Оценка памяти, занятой кэшем GET /stats, в байтах")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("stats.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("stats.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.sizeEvictionCounter = Counter.builder("stats.cache.evictions").tag("cause", "size")
+                .register(meterRegistry);
+        this.expiredEvictionCounter = Counter.builder("stats.cache.evictions").tag("cause", "expired")
+                .register(meterRegistry);
+        this.invalidatedEvictionCounter = Counter.builder("stats.cache.evictions").tag("cause", "invalidated")
+                .register(meterRegistry);
+    }
+
+    public List<ViewStats> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                               boolean approximate, Supplier<List<ViewStats>> loader) {
+        return get(start, end, uris, unique, approximate, 0, 0, loader);
+    }
+
+    public List<ViewStats> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                               boolean approximate, int offset, int limit, Supplier<List<ViewStats>> loader) {
+        boolean closed = end.isBefore(LocalDateTime.now(clock));
+        long ttlMillis = closed ? closedWindowTtlMillis : openWindowTtlMillis;
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            return loader.get();
+        }
+
+        Key key = new Key(start, end, new TreeSet<>(uris), unique, approximate, offset, limit);
+        List<ViewStats> cached = lookup(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+        missCounter.increment();
+
+        Load load = new Load(closed);
+        Load running = loads.putIfAbsent(key, load);
+        if (running != null) {
+            try {
+                return running.result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            List<ViewStats> result = List.copyOf(loader.get());
+            long expiresAtMillis = clock.millis() + ttlMillis;
+            if (closed && staleReadMillis > 0) {
+                expiresAtMillis = Math.min(expiresAtMillis, replicaCaughtUpMillis(key));
+            }
+            store(key, load, result, expiresAtMillis);
+            load.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key);
+        }
+    }
+
+    public void invalidate(List<Stat> stats) {
+        if (maxEntries <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            // флаг ставится под тем же монитором, под которым store() его проверяет: загрузка, завершившаяся
+            // после этого места, уже не положит в кэш результат без этого посещения
+            for (Map.Entry<Key, Load> load : loads.entrySet()) {
+                for (Stat stat : stats) {
+                    if (load.getValue().closed && load.getKey().covers(stat)) {
+                        load.getValue().invalidated = true;
+                    }
+                }
+            }
+            if (staleReadMillis > 0) {
+                rememberTouches(stats);
+            }
+            for (Stat stat : stats) {
+                removeCovering(closedKeysForAllUris, stat);
+                Set<Key> keys = closedKeysByUri.get(stat.getUri());
+                if (keys != null) {
+                    removeCovering(keys, stat);
+                }
+            }
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    private synchronized List<ViewStats> lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis <= clock.millis()) {
+            remove(key);
+            expiredEvictionCounter.increment();
+            return null;
+        }
+        return entry.value;
+    }
+
+    private synchronized void store(Key key, Load load, List<ViewStats> value, long expiresAtMillis) {
+        if (load.invalidated || expiresAtMillis <= clock.millis()) {
+            return;
+        }
+
+        boolean closed = load.closed;
+        Entry entry = new Entry(value, closed, expiresAtMillis, estimateBytes(key, value));
+        if (entry.bytes > maxMemoryBytes) {
+            return;
+        }
+
+        remove(key);
+        entries.put(key, entry);
+        memoryBytes += entry.bytes;
+        if (closed) {
+            if (key.uris.isEmpty()) {
+                closedKeysForAllUris.add(key);
+            } else {
+                for (String uri : key.uris) {
+                    closedKeysByUri.computeIfAbsent(uri, u -> new HashSet<>()).add(key);
+                }
+            }
+        }
+
+        while (entries.size() > maxEntries || memoryBytes > maxMemoryBytes) {
+            remove(entries.keySet().iterator().next());
+            sizeEvictionCounter.increment();
+        }
+    }
+
+    /**
+     * Момент, к которому реплика гарантированно видит все недавние посещения внутри периода ключа.
+     */
+    private synchronized long replicaCaughtUpMillis(Key key) {
+        long now = clock.millis();
+        long touchedAtMillis = Long.MIN_VALUE;
+        for (Touch touch : key.uris.isEmpty() ? recentTouches.values() : touchesOf(key.uris)) {
+            if (now - touch.atMillis < staleReadMillis && touch.overlaps(key)) {
+                touchedAtMillis = Math.max(touchedAtMillis, touch.atMillis);
+            }
+        }
+        return touchedAtMillis == Long.MIN_VALUE ? Long.MAX_VALUE : touchedAtMillis + staleReadMillis;
+    }
+
+    private List<Touch> touchesOf(Set<String> uris) {
+        List<Touch> touches = new ArrayList<>();
+        for (String uri : uris) {
+            Touch touch = recentTouches.get(uri);
+            if (touch != null) {
+                touches.add(touch);
+            }
+        }
+        return touches;
+    }
+
+    private void rememberTouches(List<Stat> stats) {
+        long now = clock.millis();
+        if (now - touchesPrunedAtMillis >= staleReadMillis) {
+            recentTouches.values().removeIf(touch -> now - touch.atMillis >= staleReadMillis);
+            touchesPrunedAtMillis = now;
+        }
+        for (Stat stat : stats) {
+            Touch touch = recentTouches.get(stat.getUri());
+            if (touch == null || now - touch.atMillis >= staleReadMillis) {
+                recentTouches.put(stat.getUri(), new Touch(now, stat.getTimestamp()));
+            } else {
+                touch.add(now, stat.getTimestamp());
+            }
+        }
+    }
+
+    private void removeCovering(Set<Key> keys, Stat stat) {
+        for (Key key : List.copyOf(keys)) {
+            if (key.covers(stat)) {
+                remove(key);
+                invalidatedEvictionCounter.increment();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+
+        memoryBytes -= entry.bytes;
+        if (entry.closed) {
+            if (key.uris.isEmpty()) {
+                closedKeysForAllUris.remove(key);
+            } else {
+                for (String uri : key.uris) {
+                    Set<Key> keys = closedKeysByUri.get(uri);
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        closedKeysByUri.remove(uri);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long estimateBytes(Key key, List<ViewStats> value) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (String uri : key.uris) {
+            bytes += VIEW_STATS_OVERHEAD_BYTES / 2 + 2L * uri.length();
+        }
+        for (ViewStats viewStats : value) {
+            bytes += VIEW_STATS_OVERHEAD_BYTES + 2L * (viewStats.getApp().length() + viewStats.getUri().length());
+        }
+        return bytes;
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final TreeSet<String> uris;
+        private final boolean unique;
+        private final boolean approximate;
+        private final int offset;
+        private final int limit;
+
+        private Key(LocalDateTime start, LocalDateTime end, TreeSet<String> uris, boolean unique,
+                    boolean approximate, int offset, int limit) {
+            this.start = start;
+            this.end = end;
+            this.uris = uris;
+            this.unique = unique;
+            this.approximate = approximate;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        private boolean covers(Stat stat) {
+            return !stat.getTimestamp().isBefore(start) && !stat.getTimestamp().isAfter(end)
+                    && (uris.isEmpty() || uris.contains(stat.getUri()));
+        }
+    }
+
+    private static final class Entry {
+        private final List<ViewStats> value;
+        private final boolean closed;
+        private final long expiresAtMillis;
+        private final long bytes;
+
+        private Entry(List<ViewStats> value, boolean closed, long expiresAtMillis, long bytes) {
+            this.value = value;
+            this.closed = closed;
+            this.expiresAtMillis = expiresAtMillis;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Недавние посещения одного uri: время последнего и диапазон времени посещений.
+     */
+    private static final class Touch {
+        private long atMillis;
+        private LocalDateTime min;
+        private LocalDateTime max;
+
+        private Touch(long atMillis, LocalDateTime timestamp) {
+            this.atMillis = atMillis;
+            this.min = timestamp;
+            this.max = timestamp;
+        }
+
+        private void add(long atMillis, LocalDateTime timestamp) {
+            this.atMillis = atMillis;
+            if (timestamp.isBefore(min)) {
+                min = timestamp;
+            }
+            if (timestamp.isAfter(max)) {
+                max = timestamp;
+            }
+        }
+
+        private boolean overlaps(Key key) {
+            return !max.isBefore(key.start) && !min.isAfter(key.end);
+        }
+    }
+
+    private static final class Load {
+        private final CompletableFuture<List<ViewStats>> result = new CompletableFuture<>();
+        private final boolean closed;
+        private boolean invalidated;
+
+        private Load(boolean closed) {
+            this.closed = closed;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.ewm.stats.statsserver.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Запросы /admin/** (выгрузка и загрузка сырых посещений) принимаются только с заголовком
+ * {@link AdminTokenInterceptor#HEADER}, равным stats-server.admin.token. Без заданного токена они отклоняются.
+ */
+@Configuration
+@Slf4j
+public class AdminAccessConfig implements WebMvcConfigurer {
+    private final String token;
+
+    public AdminAccessConfig(@Value("${stats-server.admin.token:}") String token) {
+        this.token = token;
+        if (token.isBlank()) {
+            log.warn("stats-server.admin.token не задан, запросы /admin/** отклоняются");
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new AdminTokenInterceptor(token)).addPathPatterns("/admin/**");
+    }
+}
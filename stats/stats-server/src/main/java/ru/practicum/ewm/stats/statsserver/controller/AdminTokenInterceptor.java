@@ -0,0 +1,30 @@
+package ru.practicum.ewm.stats.statsserver.controller;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.practicum.ewm.stats.statsserver.exception.AdminAccessDeniedException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+public class AdminTokenInterceptor implements HandlerInterceptor {
+    public static final String HEADER = "X-Admin-Token";
+
+    private final byte[] token;
+
+    public AdminTokenInterceptor(String token) {
+        this.token = token.isBlank() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String presented = request.getHeader(HEADER);
+        // сравнение за постоянное время, чтобы токен нельзя было подобрать по времени ответа
+        if (token == null || presented == null
+                || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            throw new AdminAccessDeniedException("нужен заголовок " + HEADER + " с токеном администратора");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,229 @@
+package ru.practicum.ewm.stats.statsserver.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import ru.practicum.ewm.stats.statsserver.mapper.EndpointHitParser;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Перенос сырых посещений между окружениями: выгрузка за период в ndjson или csv и загрузка такого файла
+ * обратно. Выгрузка пишется в ответ по мере чтения из хранилища, загрузка сохраняется пачками по chunk-size,
+ * каждая пачка - отдельная транзакция; при ошибке в середине файла пачки до неё остаются сохранёнными,
+ * а ответ 400 сообщает, сколько записей сохранено, см. {@link PartialSave}.
+ * Доступ только с токеном администратора, см. {@link AdminAccessConfig}.
+ */
+@RestController
+@Slf4j
+public class HitTransferController {
+    static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final StatService statService;
+    private final EndpointHitParser endpointHitParser;
+    private final ObjectMapper objectMapper;
+    private final int importChunkSize;
+
+    public HitTransferController(StatService statService, EndpointHitParser endpointHitParser,
+                                 ObjectMapper objectMapper,
+                                 @Value("${stats-server.import.chunk-size:5000}") int importChunkSize) {
+        this.statService = statService;
+        this.endpointHitParser = endpointHitParser;
+        this.objectMapper = objectMapper;
+        this.importChunkSize = importChunkSize;
+    }
+
+    @GetMapping(value = "/admin/hits", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void exportNdjson(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                             HttpServletResponse response) throws IOException {
+        log.info("Запрос GET /admin/hits (ndjson) start {}, end {}", start, end);
+        long count = export(start, end, new NdjsonHitWriter(response));
+        log.info("Ответ GET /admin/hits (ndjson) выгружено {}", count);
+    }
+
+    @GetMapping(value = "/admin/hits", produces = TEXT_CSV_VALUE)
+    public void exportCsv(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                          @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                          HttpServletResponse response) throws IOException {
+        log.info("Запрос GET /admin/hits (csv) start {}, end {}", start, end);
+        long count = export(start, end, new CsvHitWriter(response));
+        log.info("Ответ GET /admin/hits (csv) выгружено {}", count);
+    }
+
+    @PostMapping(value = "/admin/hits", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void importNdjson(InputStream body) throws IOException {
+        log.info("Запрос POST /admin/hits (ndjson)");
+        int count = PartialSave.run(statService,
+                consumer -> endpointHitParser.parseAll(body, importChunkSize, consumer));
+        log.info("Ответ POST /admin/hits (ndjson) status {}, загружено {}", HttpStatus.CREATED, count);
+    }
+
+    @PostMapping(value = "/admin/hits", consumes = TEXT_CSV_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void importCsv(InputStream body) throws IOException {
+        log.info("Запрос POST /admin/hits (csv)");
+        int count = PartialSave.run(statService,
+                consumer -> endpointHitParser.parseAllCsv(body, importChunkSize, consumer));
+        log.info("Ответ POST /admin/hits (csv) status {}, загружено {}", HttpStatus.CREATED, count);
+    }
+
+    private long export(LocalDateTime start, LocalDateTime end, HitWriter writer) throws IOException {
+        try {
+            statService.exportHits(start, end, writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.close();
+        return writer.count;
+    }
+
+    /**
+     * Ответ начинается с первой записи (для csv - с заголовка), поэтому ошибки до неё обрабатываются как обычно.
+     */
+    private abstract static class HitWriter implements Consumer<Stat> {
+        final HttpServletResponse response;
+        private boolean opened;
+        private long count;
+
+        HitWriter(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void accept(Stat stat) {
+            try {
+                if (!opened) {
+                    openOnce();
+                }
+                write(stat);
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() throws IOException {
+            if (!opened) {
+                openOnce();
+            }
+            finish();
+        }
+
+        private void openOnce() throws IOException {
+            open();
+            opened = true;
+        }
+
+        abstract void open() throws IOException;
+
+        abstract void write(Stat stat) throws IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    /**
+     * Строки в формате EndpointHit, файл подходит и для POST /hits.
+     */
+    private final class NdjsonHitWriter extends HitWriter {
+        private JsonGenerator generator;
+
+        private NdjsonHitWriter(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        void open() throws IOException {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            generator = objectMapper.getFactory().createGenerator(response.getOutputStream())
+                    .setRootValueSeparator(null);
+        }
+
+        @Override
+        void write(Stat stat) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("app", stat.getApp());
+            generator.writeStringField("uri", stat.getUri());
+            generator.writeStringField("ip", stat.getIp());
+            generator.writeStringField("timestamp", StatMapper.formatTimestamp(stat.getTimestamp()));
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.close();
+        }
+    }
+
+    private static final class CsvHitWriter extends HitWriter {
+        private Writer writer;
+
+        private CsvHitWriter(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        void open() throws IOException {
+            response.setContentType(TEXT_CSV_VALUE + ";charset=UTF-8");
+            writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            writer.write(String.join(",", EndpointHitParser.CSV_COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        void write(Stat stat) throws IOException {
+            writeField(stat.getApp());
+            writer.write(',');
+            writeField(stat.getUri());
+            writer.write(',');
+            writeField(stat.getIp());
+            writer.write(',');
+            writer.write(StatMapper.formatTimestamp(stat.getTimestamp()));
+            writer.write("\r\n");
+        }
+
+        @Override
+        void finish() throws IOException {
+            writer.close();
+        }
+
+        private void writeField(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.practicum.ewm.stats.statsserver.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.practicum.ewm.stats.statsserver.live.LiveStatsHub;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class LiveStatsController {
+    private final LiveStatsHub liveStatsHub;
+
+    @GetMapping(value = "/stats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                                @RequestParam(defaultValue = "") List<String> uris,
+                                @RequestParam(defaultValue = "false") boolean unique) {
+        log.info("Запрос GET /stats/stream start {}, uris {}, unique {}", start, uris, unique);
+        return liveStatsHub.subscribe(start, uris, unique);
+    }
+}
@@ -0,0 +1,38 @@
+package ru.practicum.ewm.stats.statsserver.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import ru.practicum.ewm.stats.statsserver.exception.InvalidHitException;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Сохранение посещений пачками по мере разбора тела запроса. Пачки до ошибки разбора уже сохранены,
+ * поэтому ошибка сообщает их количество: загрузку можно продолжить с этой записи.
+ */
+final class PartialSave {
+    private PartialSave() {
+    }
+
+    static int run(StatService statService, ChunkedParse parse) throws IOException {
+        int[] saved = new int[1];
+        try {
+            return parse.run(stats -> {
+                statService.createStats(stats);
+                saved[0] += stats.size();
+            });
+        } catch (InvalidHitException e) {
+            throw new InvalidHitException(e.getMessage() + "; сохранено до ошибки: " + saved[0]);
+        } catch (JsonProcessingException e) {
+            throw new InvalidHitException(e.getOriginalMessage() + "; сохранено до ошибки: " + saved[0]);
+        }
+    }
+
+    @FunctionalInterface
+    interface ChunkedParse {
+        int run(Consumer<List<Stat>> consumer) throws IOException;
+    }
+}
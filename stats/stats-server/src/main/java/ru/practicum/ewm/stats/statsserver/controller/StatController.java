@@ -1,40 +1,246 @@
 package ru.practicum.ewm.stats.statsserver.controller;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
-import ru.practicum.ewm.stats.statsdto.EndpointHit;
 import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsWriter;
+import ru.practicum.ewm.stats.statsdto.binary.StatsBinaryFormat;
+import ru.practicum.ewm.stats.statsserver.mapper.EndpointHitParser;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
 import ru.practicum.ewm.stats.statsserver.service.StatService;
 
-import javax.validation.Valid;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 @RestController
-@RequiredArgsConstructor
+@Validated
 @Slf4j
 public class StatController {
+    private static final int NDJSON_CHUNK_SIZE = 1000;
+
     private final StatService statService;
+    private final EndpointHitParser endpointHitParser;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter viewStatsWriter;
+
+    public StatController(StatService statService, EndpointHitParser endpointHitParser, ObjectMapper objectMapper) {
+        this.statService = statService;
+        this.endpointHitParser = endpointHitParser;
+        this.objectMapper = objectMapper;
+        this.viewStatsWriter = objectMapper.writerFor(ViewStats.class);
+    }
+
+    @PostMapping(value = "/hit", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void create(InputStream body) throws IOException {
+        Stat stat = endpointHitParser.parse(body);
+        log.debug("Запрос POST /hit body {}", stat);
+        statService.createStats(List.of(stat));
+    }
 
-    @PostMapping("/hit")
+    /**
+     * Массив разбирается и проверяется целиком, при любой ошибке не сохраняется ни одно посещение.
+     */
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_JSON_VALUE)
     @ResponseStatus(HttpStatus.CREATED)
-    public void create(@RequestBody @Valid EndpointHit endpointHit) {
-        log.info("Запрос POST /hit body {}", endpointHit);
-        statService.create(endpointHit);
-        log.info("Ответ POST /hit status {}", HttpStatus.CREATED);
+    public void createAll(InputStream body) throws IOException {
+        List<Stat> stats = endpointHitParser.parseArray(body);
+        log.info("Запрос POST /hits количество {}", stats.size());
+        statService.createStats(stats);
+        log.info("Ответ POST /hits status {}", HttpStatus.CREATED);
+    }
+
+    /**
+     * Посещения сохраняются пачками по NDJSON_CHUNK_SIZE по мере чтения тела. Загрузка не атомарна: при ошибке
+     * в записи N пачки до неё остаются сохранёнными, их размер указывается в ответе 400, повторять нужно
+     * с первой несохранённой записи.
+     */
+    @PostMapping(value = "/hits", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void createAllStream(InputStream body) throws IOException {
+        log.info("Запрос POST /hits (ndjson)");
+        int count = PartialSave.run(statService,
+                consumer -> endpointHitParser.parseAll(body, NDJSON_CHUNK_SIZE, consumer));
+        log.info("Ответ POST /hits (ndjson) status {}, сохранено {}", HttpStatus.CREATED, count);
+    }
+
+    /**
+     * Сохраняется пачками, как ndjson.
+     */
+    @PostMapping(value = {"/hit", "/hits"}, consumes = StatsBinaryFormat.MEDIA_TYPE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public void createAllBinary(InputStream body) throws IOException {
+        log.info("Запрос POST /hits (двоичный формат)");
+        int count = PartialSave.run(statService,
+                consumer -> endpointHitParser.parseAllBinary(body, NDJSON_CHUNK_SIZE, consumer));
+        log.info("Ответ POST /hits (двоичный формат) status {}, сохранено {}", HttpStatus.CREATED, count);
     }
 
     @GetMapping("/stats")
     public List<ViewStats> getStats(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
                                     @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
                                     @RequestParam(defaultValue = "") List<String> uris,
-                                    @RequestParam(defaultValue = "false") boolean unique) {
-        log.info("Запрос GET /stats start {}, end {}, uris {}, unique {}", start, end, uris, unique);
-        List<ViewStats> viewStatsList = statService.getStats(start, end, uris, unique);
-        log.info("Ответ GET /stats body {}", viewStatsList);
+                                    @RequestParam(defaultValue = "false") boolean unique,
+                                    @RequestParam(defaultValue = "false") boolean approximate,
+                                    @RequestParam(defaultValue = "0") @PositiveOrZero int offset,
+                                    @RequestParam(required = false) @Positive Integer limit) {
+        log.info("Запрос GET /stats start {}, end {}, uris {}, unique {}, approximate {}, offset {}, limit {}",
+                start, end, uris, unique, approximate, offset, limit);
+        List<ViewStats> viewStatsList = statService.getStats(start, end, uris, unique, approximate, offset,
+                limit == null ? 0 : limit);
+        log.info("Ответ GET /stats количество {}", viewStatsList.size());
         return viewStatsList;
     }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void getStatsStream(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                               @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                               @RequestParam(defaultValue = "") List<String> uris,
+                               @RequestParam(defaultValue = "false") boolean unique,
+                               @RequestParam(defaultValue = "false") boolean approximate,
+                               @RequestParam(defaultValue = "0") @PositiveOrZero int offset,
+                               @RequestParam(required = false) @Positive Integer limit,
+                               HttpServletResponse response) throws IOException {
+        log.info("Запрос GET /stats (ndjson) start {}, end {}, uris {}, unique {}, approximate {}, offset {}, " +
+                "limit {}", start, end, uris, unique, approximate, offset, limit);
+        NdjsonViewStatsWriter writer = new NdjsonViewStatsWriter(response);
+        try {
+            statService.streamStats(start, end, uris, unique, approximate, offset, limit == null ? 0 : limit, writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.close();
+        log.info("Ответ GET /stats (ndjson) количество {}", writer.count);
+    }
+
+    @GetMapping(value = "/stats", produces = StatsBinaryFormat.MEDIA_TYPE)
+    public void getStatsBinary(@RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+                               @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+                               @RequestParam(defaultValue = "") List<String> uris,
+                               @RequestParam(defaultValue = "false") boolean unique,
+                               @RequestParam(defaultValue = "false") boolean approximate,
+                               @RequestParam(defaultValue = "0") @PositiveOrZero int offset,
+                               @RequestParam(required = false) @Positive Integer limit,
+                               HttpServletResponse response) throws IOException {
+        log.info("Запрос GET /stats (двоичный формат) start {}, end {}, uris {}, unique {}, approximate {}, " +
+                "offset {}, limit {}", start, end, uris, unique, approximate, offset, limit);
+        BinaryViewStatsWriter writer = new BinaryViewStatsWriter(response);
+        try {
+            statService.streamStats(start, end, uris, unique, approximate, offset, limit == null ? 0 : limit, writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.close();
+        log.info("Ответ GET /stats (двоичный формат) количество {}", writer.count);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public List<ViewStatsBucket> getTimeSeries(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam(defaultValue = "") List<String> uris,
+            @RequestParam(defaultValue = "false") boolean unique,
+            @RequestParam(defaultValue = "false") boolean approximate,
+            @RequestParam(defaultValue = "HOUR") RollupGranularity bucket) {
+        log.info("Запрос GET /stats/timeseries start {}, end {}, uris {}, unique {}, approximate {}, bucket {}",
+                start, end, uris, unique, approximate, bucket);
+        List<ViewStatsBucket> buckets = statService.getTimeSeries(start, end, uris, unique, approximate, bucket);
+        log.info("Ответ GET /stats/timeseries количество {}", buckets.size());
+        return buckets;
+    }
+
+    /**
+     * Пишет строки ответа по мере получения; ответ начинается с первой строкой, поэтому ошибки
+     * до неё обрабатываются как обычно.
+     */
+    private final class NdjsonViewStatsWriter implements Consumer<ViewStats> {
+        private final HttpServletResponse response;
+        private JsonGenerator generator;
+        private int count;
+
+        private NdjsonViewStatsWriter(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void accept(ViewStats viewStats) {
+            try {
+                if (generator == null) {
+                    open();
+                }
+                viewStatsWriter.writeValue(generator, viewStats);
+                generator.writeRaw('\n');
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void open() throws IOException {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            generator = objectMapper.getFactory().createGenerator(response.getOutputStream())
+                    .setRootValueSeparator(null);
+        }
+
+        private void close() throws IOException {
+            if (generator == null) {
+                open();
+            }
+            generator.close();
+        }
+    }
+
+    /**
+     * То же, что NdjsonViewStatsWriter, для двоичного формата.
+     */
+    private static final class BinaryViewStatsWriter implements Consumer<ViewStats> {
+        private final HttpServletResponse response;
+        private BinaryStatsWriter writer;
+        private int count;
+
+        private BinaryViewStatsWriter(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void accept(ViewStats viewStats) {
+            try {
+                if (writer == null) {
+                    open();
+                }
+                writer.writeViewStats(viewStats);
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void open() throws IOException {
+            response.setContentType(StatsBinaryFormat.MEDIA_TYPE);
+            writer = new BinaryStatsWriter(response.getOutputStream());
+        }
+
+        private void close() throws IOException {
+            if (writer == null) {
+                open();
+            }
+            writer.close();
+        }
+    }
 }
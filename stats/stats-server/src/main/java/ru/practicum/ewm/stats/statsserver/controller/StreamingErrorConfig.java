@@ -0,0 +1,32 @@
+package ru.practicum.ewm.stats.statsserver.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.practicum.ewm.stats.statsdto.binary.StatsBinaryFormat;
+
+import java.util.List;
+
+/**
+ * Ответы об ошибках для запросов с Accept: application/x-ndjson, text/event-stream, text/csv или двоичным
+ * форматом статистики пишутся одной строкой JSON, иначе ErrorHandler не может выбрать формат и клиент получает
+ * 500 вместо 400.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class StreamingErrorConfig implements WebMvcConfigurer {
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter(objectMapper);
+        converter.setSupportedMediaTypes(List.of(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM,
+                MediaType.parseMediaType(HitTransferController.TEXT_CSV_VALUE),
+                MediaType.parseMediaType(StatsBinaryFormat.MEDIA_TYPE)));
+        converters.add(converter);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.exception;
+
+public class AdminAccessDeniedException extends RuntimeException {
+    public AdminAccessDeniedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.exception;
+
+public class BulkheadFullException extends RuntimeException {
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
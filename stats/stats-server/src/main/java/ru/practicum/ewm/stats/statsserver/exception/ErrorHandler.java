@@ -1,5 +1,6 @@
 package ru.practicum.ewm.stats.statsserver.exception;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
+import javax.validation.ConstraintViolationException;
 import java.util.Map;
 
 @RestControllerAdvice
@@ -17,10 +19,42 @@ public class ErrorHandler {
     @ExceptionHandler({MethodArgumentNotValidException.class,
             MissingServletRequestParameterException.class,
             MethodArgumentTypeMismatchException.class,
-            InvalidTimePeriodException.class})
+            ConstraintViolationException.class,
+            JsonProcessingException.class,
+            InvalidTimePeriodException.class,
+            InvalidHitException.class})
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public Map<String, String> handlerValidation(final Exception e) {
         log.info("Завершен ошибкой", e);
         return Map.of("некорректные данные", e.getMessage());
     }
+
+    @ExceptionHandler(AdminAccessDeniedException.class)
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    public Map<String, String> handlerAccessDenied(final AdminAccessDeniedException e) {
+        log.info("Завершен ошибкой", e);
+        return Map.of("доступ запрещён", e.getMessage());
+    }
+
+    @ExceptionHandler({HitBufferOverflowException.class, BulkheadFullException.class,
+            SubscriptionLimitException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> handlerOverflow(final RuntimeException e) {
+        log.info("Завершен ошибкой", e);
+        return Map.of("сервис недоступен", e.getMessage());
+    }
+
+    @ExceptionHandler(UnsupportedHitFormatException.class)
+    @ResponseStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+    public Map<String, String> handlerUnsupportedFormat(final UnsupportedHitFormatException e) {
+        log.info("Завершен ошибкой", e);
+        return Map.of("неподдерживаемый формат", e.getMessage());
+    }
+
+    @ExceptionHandler(UnsupportedStorageOperationException.class)
+    @ResponseStatus(HttpStatus.NOT_IMPLEMENTED)
+    public Map<String, String> handlerUnsupported(final UnsupportedStorageOperationException e) {
+        log.info("Завершен ошибкой", e);
+        return Map.of("не поддерживается", e.getMessage());
+    }
 }
@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.exception;
+
+public class HitBufferOverflowException extends RuntimeException {
+    public HitBufferOverflowException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.exception;
+
+public class InvalidHitException extends RuntimeException {
+    public InvalidHitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.exception;
+
+public class SubscriptionLimitException extends RuntimeException {
+    public SubscriptionLimitException(String message) {
+        super(message);
+    }
+}
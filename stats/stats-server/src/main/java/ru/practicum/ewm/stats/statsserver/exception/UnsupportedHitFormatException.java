@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.exception;
+
+public class UnsupportedHitFormatException extends RuntimeException {
+    public UnsupportedHitFormatException(String message) {
+        super(message);
+    }
+}
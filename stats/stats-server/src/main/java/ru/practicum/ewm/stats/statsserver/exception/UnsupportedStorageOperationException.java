@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.exception;
+
+public class UnsupportedStorageOperationException extends RuntimeException {
+    public UnsupportedStorageOperationException(String message) {
+        super(message);
+    }
+}
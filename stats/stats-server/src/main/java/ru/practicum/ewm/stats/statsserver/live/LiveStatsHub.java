@@ -0,0 +1,229 @@
+package ru.practicum.ewm.stats.statsserver.live;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.exception.InvalidTimePeriodException;
+import ru.practicum.ewm.stats.statsserver.exception.SubscriptionLimitException;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Подписки GET /stats/stream: клиент один раз получает просмотры с start до текущего момента (событие init),
+ * затем раз в tick-ms - прибавку по изменившимся (app, uri) (событие delta). Новые посещения копятся
+ * в общей таблице по (app, uri), поэтому на тик приходится одна выборка независимо от числа посещений.
+ * Неуникальные просмотры складываются в памяти без запроса к базе. Уникальные просмотры и посещения
+ * со временем раньше start подписки пересчитываются запросом только по затронутым uri.
+ * <p>
+ * Начальный запрос и накопленные посещения не сопоставить по отдельным посещениям, поэтому тики нумеруются:
+ * прибавкой отправляются только посещения из тиков, начавших копиться после init, а затронутые uri более ранних
+ * тиков, в том числе пришедших до окончания init, пересчитываются запросом. Пересчёт заменяет значение,
+ * поэтому посещение, уже учтённое в init, не считается дважды, если только его запись и publish не разделяет
+ * весь начальный запрос. Посещения передаются в publish после того, как стали видны запросам (StatWriter),
+ * иначе пересчёт мог бы их не увидеть.
+ */
+@Component
+@Slf4j
+public class LiveStatsHub {
+    private final StatStorage statStorage;
+    private final long tickMillis;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+
+    private final Set<LiveSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ConcurrentHashMap<List<String>, PendingHits> pending = new ConcurrentHashMap<>();
+    // номер последнего тика, увеличивается до выборки pending; пишет только поток тиков
+    private volatile long epoch;
+    private final ScheduledExecutorService ticker;
+
+    public LiveStatsHub(StatStorage statStorage,
+                        MeterRegistry meterRegistry,
+                        @Value("${stats-server.live.tick-ms:1000}") long tickMillis,
+                        @Value("${stats-server.live.max-subscribers:1000}") int maxSubscribers,
+                        @Value("${stats-server.live.timeout-ms:1800000}") long timeoutMillis) {
+        this.statStorage = statStorage;
+        this.tickMillis = tickMillis;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMillis;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stat-live-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("stats.live.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Открытые подписки GET /stats/stream")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        for (LiveSubscription subscription : subscriptions) {
+            subscription.emitter.complete();
+        }
+        subscriptions.clear();
+    }
+
+    public SseEmitter subscribe(LocalDateTime start, List<String> uris, boolean unique) {
+        if (!start.isBefore(LocalDateTime.now())) {
+            throw new InvalidTimePeriodException("некорректный временной период");
+        }
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new SubscriptionLimitException("превышено количество подписок " + maxSubscribers);
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        LiveSubscription subscription = new LiveSubscription(start, Set.copyOf(uris), unique, emitter);
+        emitter.onCompletion(() -> remove(subscription));
+        emitter.onError(e -> remove(subscription));
+        subscriptions.add(subscription);
+
+        try {
+            subscription.init(statStorage.getStats(start, LocalDateTime.now(), uris, unique, false), epoch);
+        } catch (IOException e) {
+            remove(subscription);
+            emitter.completeWithError(e);
+        } catch (RuntimeException e) {
+            remove(subscription);
+            throw e;
+        }
+        return emitter;
+    }
+
+    /**
+     * Учитывает посещения, уже видимые запросам, в следующем тике. Без подписок ничего не делает.
+     */
+    public void publish(List<Stat> stats) {
+        if (subscriberCount.get() == 0) {
+            return;
+        }
+
+        Map<List<String>, PendingHits> batch = new HashMap<>();
+        for (Stat stat : stats) {
+            batch.merge(List.of(stat.getApp(), stat.getUri()), new PendingHits(1, stat.getTimestamp()),
+                    PendingHits::merge);
+        }
+        batch.forEach((key, hits) -> pending.merge(key, hits, PendingHits::merge));
+    }
+
+    int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    void tick() {
+        long tickEpoch = ++epoch;
+        Map<List<String>, PendingHits> drained = new HashMap<>();
+        for (List<String> key : pending.keySet()) {
+            PendingHits hits = pending.remove(key);
+            if (hits != null) {
+                drained.put(key, hits);
+            }
+        }
+
+        for (LiveSubscription subscription : subscriptions) {
+            try {
+                deliver(subscription, drained, tickEpoch);
+            } catch (IOException e) {
+                log.debug("Подписка на просмотры закрыта клиентом", e);
+                remove(subscription);
+                subscription.emitter.completeWithError(e);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось отправить прибавку просмотров подписке", e);
+            }
+        }
+    }
+
+    private void deliver(LiveSubscription subscription, Map<List<String>, PendingHits> drained, long tickEpoch)
+            throws IOException {
+        Set<String> touchedUris = new HashSet<>();
+        for (List<String> key : drained.keySet()) {
+            if (subscription.matches(key.get(1))) {
+                touchedUris.add(key.get(1));
+            }
+        }
+        if (!subscription.isInitialized()) {
+            subscription.deferRecount(touchedUris);
+            return;
+        }
+
+        Set<String> recountUris = subscription.takeDeferredRecount();
+        if (drained.isEmpty() && recountUris.isEmpty()) {
+            return;
+        }
+        List<ViewStats> deltas = new ArrayList<>();
+        boolean settled = subscription.isSettled(tickEpoch);
+        drained.forEach((key, hits) -> {
+            if (!touchedUris.contains(key.get(1))) {
+                return;
+            }
+            if (!settled || subscription.unique || hits.earliest.isBefore(subscription.start)) {
+                recountUris.add(key.get(1));
+            } else {
+                deltas.add(subscription.add(key, hits.count));
+            }
+        });
+
+        if (!recountUris.isEmpty()) {
+            for (ViewStats viewStats : statStorage.getStats(subscription.start, LocalDateTime.now(),
+                    new ArrayList<>(recountUris), subscription.unique, false)) {
+                ViewStats delta = subscription.recount(viewStats);
+                if (delta != null) {
+                    deltas.add(delta);
+                }
+            }
+        }
+
+        if (!deltas.isEmpty()) {
+            subscription.sendDeltas(deltas);
+        }
+    }
+
+    private void remove(LiveSubscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    private static final class PendingHits {
+        private final int count;
+        private final LocalDateTime earliest;
+
+        private PendingHits(int count, LocalDateTime earliest) {
+            this.count = count;
+            this.earliest = earliest;
+        }
+
+        private static PendingHits merge(PendingHits first, PendingHits second) {
+            return new PendingHits(first.count + second.count,
+                    first.earliest.isBefore(second.earliest) ? first.earliest : second.earliest);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ru.practicum.ewm.stats.statsserver.live;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.storage.TopHits;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Подписка на просмотры с start до текущего момента: известные клиенту значения hits по (app, uri),
+ * чтобы отправлять только прибавку.
+ */
+class LiveSubscription {
+    static final String INIT_EVENT = "init";
+    static final String DELTA_EVENT = "delta";
+
+    final LocalDateTime start;
+    final Set<String> uris;
+    final boolean unique;
+    final SseEmitter emitter;
+
+    private final Map<List<String>, Integer> totals = new HashMap<>();
+    private final Set<String> deferredRecount = new HashSet<>();
+    // первый тик, посещения которого копились целиком после init; до init - Long.MAX_VALUE
+    private volatile long settledEpoch = Long.MAX_VALUE;
+
+    LiveSubscription(LocalDateTime start, Set<String> uris, boolean unique, SseEmitter emitter) {
+        this.start = start;
+        this.uris = uris;
+        this.unique = unique;
+        this.emitter = emitter;
+    }
+
+    boolean isInitialized() {
+        return settledEpoch != Long.MAX_VALUE;
+    }
+
+    /**
+     * Посещения тика tickEpoch записаны после начального запроса и ещё не учтены в известных значениях.
+     */
+    boolean isSettled(long tickEpoch) {
+        return tickEpoch >= settledEpoch;
+    }
+
+    boolean matches(String uri) {
+        return uris.isEmpty() || uris.contains(uri);
+    }
+
+    /**
+     * @param epoch номер тика на момент окончания начального запроса: посещения следующего тика могли
+     *              копиться ещё во время запроса, прибавкой отправляются только начиная со второго
+     */
+    synchronized void init(List<ViewStats> viewStats, long epoch) throws IOException {
+        for (ViewStats current : viewStats) {
+            totals.put(List.of(current.getApp(), current.getUri()), current.getHits());
+        }
+        send(INIT_EVENT, viewStats);
+        settledEpoch = epoch + 2;
+    }
+
+    /**
+     * Запоминает uri, посещения которых пришли до окончания init: они пересчитываются после него.
+     */
+    synchronized void deferRecount(Set<String> touchedUris) {
+        deferredRecount.addAll(touchedUris);
+    }
+
+    synchronized Set<String> takeDeferredRecount() {
+        Set<String> taken = new HashSet<>(deferredRecount);
+        deferredRecount.clear();
+        return taken;
+    }
+
+    /**
+     * Прибавляет hits к известному значению.
+     */
+    synchronized ViewStats add(List<String> key, int hits) {
+        totals.merge(key, hits, Integer::sum);
+        return new ViewStats(key.get(0), key.get(1), hits);
+    }
+
+    /**
+     * Заменяет известное значение пересчитанным, если оно выросло.
+     *
+     * @return прибавка или null, если значение не выросло
+     */
+    synchronized ViewStats recount(ViewStats viewStats) {
+        List<String> key = List.of(viewStats.getApp(), viewStats.getUri());
+        int known = totals.getOrDefault(key, 0);
+        if (viewStats.getHits() <= known) {
+            return null;
+        }
+        totals.put(key, viewStats.getHits());
+        return new ViewStats(viewStats.getApp(), viewStats.getUri(), viewStats.getHits() - known);
+    }
+
+    void sendDeltas(List<ViewStats> deltas) throws IOException {
+        deltas.sort(TopHits.ORDER);
+        send(DELTA_EVENT, deltas);
+    }
+
+    private void send(String event, List<ViewStats> viewStats) throws IOException {
+        emitter.send(SseEmitter.event().name(event).data(viewStats, MediaType.APPLICATION_JSON));
+    }
+}
@@ -0,0 +1,322 @@
+package ru.practicum.ewm.stats.statsserver.mapper;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsReader;
+import ru.practicum.ewm.stats.statsdto.binary.UnsupportedFormatVersionException;
+import ru.practicum.ewm.stats.statsserver.exception.InvalidHitException;
+import ru.practicum.ewm.stats.statsserver.exception.UnsupportedHitFormatException;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static java.net.URLDecoder.decode;
+
+/**
+ * Потоковый разбор тел POST /hit, POST /hits (ndjson и двоичный формат) и загрузки посещений (ndjson и csv)
+ * сразу в Stat, минуя EndpointHit и Bean Validation. Проверки совпадают с ограничениями EndpointHit,
+ * время разбирается прямо из буфера парсера.
+ */
+@Component
+public class EndpointHitParser {
+    public static final List<String> CSV_COLUMNS = List.of("app", "uri", "ip", "timestamp");
+    private static final int MAX_APP_LENGTH = 255;
+    private static final int MAX_URI_LENGTH = 255;
+    private static final int MAX_IP_LENGTH = 39;
+
+    private final JsonFactory jsonFactory;
+
+    public EndpointHitParser(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public Stat parse(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new InvalidHitException("пустое тело запроса");
+            }
+            return readHit(parser, token);
+        }
+    }
+
+    /**
+     * Разбирает массив JSON посещений целиком, до сохранения первого из них.
+     */
+    public List<Stat> parseArray(InputStream body) throws IOException {
+        List<Stat> stats = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new InvalidHitException("ожидался массив посещений");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                stats.add(readHit(parser, token, stats.size() + 1));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Разбирает последовательность объектов посещений и передаёт их пачками не больше chunkSize. В ошибке
+     * указывается номер записи, пачки до неё уже переданы consumer.
+     *
+     * @return количество разобранных посещений
+     */
+    public int parseAll(InputStream body, int chunkSize, Consumer<List<Stat>> consumer) throws IOException {
+        int count = 0;
+        List<Stat> chunk = new ArrayList<>(chunkSize);
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                chunk.add(readHit(parser, token, count + chunk.size() + 1));
+                if (chunk.size() == chunkSize) {
+                    consumer.accept(chunk);
+                    count += chunk.size();
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            consumer.accept(chunk);
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    /**
+     * То же, что parseAll, для тела в формате {@link ru.practicum.ewm.stats.statsdto.binary.StatsBinaryFormat}.
+     * Поток другой версии формата - {@link UnsupportedHitFormatException}, клиент повторит его в JSON.
+     */
+    public int parseAllBinary(InputStream body, int chunkSize, Consumer<List<Stat>> consumer) {
+        BinaryStatsReader reader = new BinaryStatsReader(body);
+        int count = 0;
+        List<Stat> chunk = new ArrayList<>(chunkSize);
+
+        try {
+            while (reader.readHit((app, uri, ip, timestamp) -> {
+                checkText("app", app, MAX_APP_LENGTH);
+                checkText("uri", uri, MAX_URI_LENGTH);
+                checkText("ip", ip, MAX_IP_LENGTH);
+                chunk.add(new Stat(null, app, uri, ip, timestamp));
+            })) {
+                if (chunk.size() == chunkSize) {
+                    consumer.accept(new ArrayList<>(chunk));
+                    count += chunk.size();
+                    chunk.clear();
+                }
+            }
+        } catch (UnsupportedFormatVersionException e) {
+            throw new UnsupportedHitFormatException(e.getMessage());
+        } catch (IOException e) {
+            throw new InvalidHitException("двоичный формат: " + e.getMessage());
+        }
+
+        if (!chunk.isEmpty()) {
+            consumer.accept(chunk);
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    /**
+     * То же, что parseAll, для csv (RFC 4180) с первой строкой {@link #CSV_COLUMNS}. В ошибке указывается
+     * номер записи, пачки до неё уже переданы consumer.
+     */
+    public int parseAllCsv(InputStream body, int chunkSize, Consumer<List<Stat>> consumer) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        List<String> fields = new ArrayList<>(CSV_COLUMNS.size());
+        StringBuilder field = new StringBuilder();
+        if (!readCsvRecord(reader, fields, field) || !CSV_COLUMNS.equals(fields)) {
+            throw new InvalidHitException("csv: первая строка должна быть " + String.join(",", CSV_COLUMNS));
+        }
+
+        int count = 0;
+        List<Stat> chunk = new ArrayList<>(chunkSize);
+        while (readCsvRecord(reader, fields, field)) {
+            try {
+                chunk.add(csvHit(fields));
+            } catch (InvalidHitException e) {
+                throw new InvalidHitException("csv, запись " + (count + chunk.size() + 1) + ": " + e.getMessage());
+            }
+            if (chunk.size() == chunkSize) {
+                consumer.accept(chunk);
+                count += chunk.size();
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            consumer.accept(chunk);
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    private static Stat csvHit(List<String> fields) {
+        if (fields.size() != CSV_COLUMNS.size()) {
+            throw new InvalidHitException("ожидалось полей " + CSV_COLUMNS.size() + ", получено " + fields.size());
+        }
+        String app = fields.get(0);
+        String uri = fields.get(1);
+        String ip = fields.get(2);
+        checkText("app", app, MAX_APP_LENGTH);
+        checkText("uri", uri, MAX_URI_LENGTH);
+        checkText("ip", ip, MAX_IP_LENGTH);
+        try {
+            return new Stat(null, app, uri, ip, StatMapper.parseTimestamp(fields.get(3)));
+        } catch (DateTimeParseException e) {
+            throw new InvalidHitException("timestamp: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Читает одну запись csv в fields; поле в кавычках может содержать запятые, переводы строк и "".
+     *
+     * @return false, если поток закончился
+     */
+    private static boolean readCsvRecord(Reader reader, List<String> fields, StringBuilder field) throws IOException {
+        fields.clear();
+        field.setLength(0);
+        int c = reader.read();
+        if (c < 0) {
+            return false;
+        }
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new InvalidHitException("csv: не закрыты кавычки");
+                }
+                if (c == '"') {
+                    c = reader.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c < 0) {
+                fields.add(field.toString());
+                return true;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    private Stat readHit(JsonParser parser, JsonToken token, int number) throws IOException {
+        try {
+            return readHit(parser, token);
+        } catch (InvalidHitException e) {
+            throw new InvalidHitException("запись " + number + ": " + e.getMessage());
+        }
+    }
+
+    private Stat readHit(JsonParser parser, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new InvalidHitException("ожидался объект посещения, получено " + token);
+        }
+
+        String app = null;
+        String uri = null;
+        String ip = null;
+        LocalDateTime timestamp = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                if (isHitField(field)) {
+                    throw new InvalidHitException(field + ": ожидалась строка");
+                }
+                continue;
+            }
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            switch (field) {
+                case "app":
+                    app = parser.getText();
+                    break;
+                case "uri":
+                    uri = parser.getText();
+                    break;
+                case "ip":
+                    ip = parser.getText();
+                    break;
+                case "timestamp":
+                    timestamp = readTimestamp(parser);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        checkText("app", app, MAX_APP_LENGTH);
+        checkText("uri", uri, MAX_URI_LENGTH);
+        checkText("ip", ip, MAX_IP_LENGTH);
+        if (timestamp == null) {
+            throw new InvalidHitException("timestamp: не должно быть пустым");
+        }
+        return new Stat(null, app, uri, ip, timestamp);
+    }
+
+    private static LocalDateTime readTimestamp(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        if (length != StatMapper.TIMESTAMP_LENGTH) {
+            throw new InvalidHitException("timestamp: размер должен быть " + StatMapper.TIMESTAMP_LENGTH);
+        }
+
+        try {
+            for (int i = offset; i < offset + length; i++) {
+                if (chars[i] == '%') {
+                    return StatMapper.parseTimestamp(decode(new String(chars, offset, length), StandardCharsets.UTF_8));
+                }
+            }
+            return StatMapper.parseTimestamp(CharBuffer.wrap(chars, offset, length));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new InvalidHitException("timestamp: " + e.getMessage());
+        }
+    }
+
+    private static void checkText(String field, String value, int maxLength) {
+        if (value == null || value.isBlank()) {
+            throw new InvalidHitException(field + ": не должно быть пустым");
+        }
+        if (value.length() > maxLength) {
+            throw new InvalidHitException(field + ": размер должен быть не больше " + maxLength);
+        }
+    }
+
+    private static boolean isHitField(String field) {
+        return "app".equals(field) || "uri".equals(field) || "ip".equals(field) || "timestamp".equals(field);
+    }
+}
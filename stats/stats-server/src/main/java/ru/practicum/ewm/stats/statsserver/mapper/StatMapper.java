@@ -1,36 +1,85 @@
 package ru.practicum.ewm.stats.statsserver.mapper;
 
 import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsserver.exception.InvalidHitException;
 import ru.practicum.ewm.stats.statsserver.model.Stat;
 
 import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 import static java.net.URLDecoder.decode;
 
 public final class StatMapper {
+    public static final int TIMESTAMP_LENGTH = 19;
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private StatMapper() {
     }
 
+    /**
+     * @throws InvalidHitException если timestamp не разбирается: Bean Validation проверяет только его длину
+     */
     public static Stat endpointHitToStatMapper(EndpointHit endpointHit) {
-        return Stat.builder()
-                .app(endpointHit.getApp())
-                .uri(endpointHit.getUri())
-                .ip(endpointHit.getIp())
-                .timestamp(encodedStingToLocalDateTime(endpointHit.getTimestamp()))
-                .build();
+        LocalDateTime timestamp;
+        try {
+            timestamp = encodedStingToLocalDateTime(endpointHit.getTimestamp());
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new InvalidHitException("timestamp: " + e.getMessage());
+        }
+        return new Stat(null, endpointHit.getApp(), endpointHit.getUri(), endpointHit.getIp(), timestamp);
     }
 
     public static String decodedTimestampString(String encodedString) {
-        return decode(encodedString, StandardCharsets.UTF_8);
+        return encodedString.indexOf('%') < 0 ? encodedString : decode(encodedString, StandardCharsets.UTF_8);
     }
 
     public static LocalDateTime stringToLocalDateTime(String string) {
-        return LocalDateTime.parse(string, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        return parseTimestamp(string);
     }
 
     public static LocalDateTime encodedStingToLocalDateTime(String encodedString) {
         return stringToLocalDateTime(decodedTimestampString(encodedString));
     }
+
+    public static String formatTimestamp(LocalDateTime timestamp) {
+        return TIMESTAMP_FORMATTER.format(timestamp);
+    }
+
+    /**
+     * Разбор времени в формате yyyy-MM-dd HH:mm:ss без форматтера и промежуточных объектов.
+     */
+    public static LocalDateTime parseTimestamp(CharSequence text) {
+        if (text.length() != TIMESTAMP_LENGTH
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            throw new DateTimeParseException("время должно быть в формате yyyy-MM-dd HH:mm:ss", text, 0);
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (DateTimeException e) {
+            throw new DateTimeParseException(e.getMessage(), text, 0, e);
+        }
+    }
+
+    private static int digits(CharSequence text, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new DateTimeParseException("ожидалась цифра", text, i);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
 }
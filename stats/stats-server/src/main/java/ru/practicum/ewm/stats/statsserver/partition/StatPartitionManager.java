@@ -0,0 +1,195 @@
+package ru.practicum.ewm.stats.statsserver.partition;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Помесячное секционирование таблицы statistics в PostgreSQL. При старте обычная таблица
+ * переводится в секционированную по created, затем по расписанию создаются секции на ближайшие
+ * месяцы и удаляются секции старше срока хранения. Посещения вне созданных секций попадают
+ * в statistics_default и переносятся в свою секцию при её создании. Вместе с секциями старше срока хранения
+ * удаляются агрегаты и скетчи тех же месяцев, иначе неуникальные и приближённые запросы считали бы посещения,
+ * которых уже нет в сырой таблице.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.partitioning.enabled", havingValue = "true")
+@Slf4j
+public class StatPartitionManager {
+    static final String DEFAULT_PARTITION = "statistics_default";
+
+    private static final String PARTITION_PREFIX = "statistics_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final int premadeMonths;
+    private final int retentionMonths;
+
+    @Autowired
+    public StatPartitionManager(JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${stats-server.partitioning.premade-months:2}") int premadeMonths,
+                                @Value("${stats-server.partitioning.retention-months:0}") int retentionMonths) {
+        this(jdbcTemplate, transactionTemplate, Clock.systemDefaultZone(), premadeMonths, retentionMonths);
+    }
+
+    StatPartitionManager(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, Clock clock,
+                         int premadeMonths, int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.premadeMonths = premadeMonths;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @PostConstruct
+    public void start() {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            throw new IllegalStateException("секционирование statistics поддерживается только в PostgreSQL, " +
+                    "текущая база " + database);
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!isPartitioned()) {
+                migrateToPartitioned();
+            }
+        });
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats-server.partitioning.cron:0 0 3 * * *}")
+    public void maintain() {
+        YearMonth current = YearMonth.now(clock);
+        TreeSet<YearMonth> existing = existingPartitions();
+
+        for (YearMonth month = current.minusMonths(1); !month.isAfter(current.plusMonths(premadeMonths));
+             month = month.plusMonths(1)) {
+            if (!existing.contains(month)) {
+                createPartition(month);
+            }
+        }
+
+        if (retentionMonths > 0) {
+            YearMonth oldestKept = current.minusMonths(retentionMonths);
+            for (YearMonth month : existing.headSet(oldestKept)) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(month));
+                log.info("Удалена секция статистики {}", partitionName(month));
+            }
+            jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE created < ?",
+                    Timestamp.valueOf(oldestKept.atDay(1).atStartOfDay()));
+            purgeAggregates(oldestKept.atDay(1).atStartOfDay());
+        }
+    }
+
+    /**
+     * Удаляет агрегаты, скетчи и отметки пересчёта скетчей с интервалами раньше oldestKept. Интервалы минут,
+     * часов и суток не пересекают начало месяца, поэтому граница совпадает с границей сырых посещений.
+     */
+    void purgeAggregates(LocalDateTime oldestKept) {
+        Timestamp before = Timestamp.valueOf(oldestKept);
+        int rollups = 0;
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            rollups += jdbcTemplate.update("DELETE FROM " + granularity.getTable() + " WHERE bucket < ?", before);
+            rollups += jdbcTemplate.update("DELETE FROM " + granularity.getSketchTable() + " WHERE bucket < ?",
+                    before);
+        }
+        jdbcTemplate.update("DELETE FROM stat_sketch_pending WHERE bucket < ?", before);
+        log.info("Удалены агрегаты и скетчи раньше {}, строк {}", oldestKept, rollups);
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    private boolean isPartitioned() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_partitioned_table " +
+                "WHERE partrelid = to_regclass('statistics')", Integer.class);
+        return count != null && count > 0;
+    }
+
+    private void migrateToPartitioned() {
+        jdbcTemplate.execute("ALTER TABLE statistics RENAME TO statistics_legacy");
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS statistics_id_seq");
+        jdbcTemplate.execute("SELECT setval('statistics_id_seq', COALESCE(MAX(id), 0) + 1, false) " +
+                "FROM statistics_legacy");
+        jdbcTemplate.execute("CREATE TABLE statistics (" +
+                "id BIGINT NOT NULL DEFAULT nextval('statistics_id_seq'), " +
+                "app VARCHAR(255) NOT NULL, " +
+                "uri VARCHAR(255) NOT NULL, " +
+                "ip VARCHAR(39) NOT NULL, " +
+                "created TIMESTAMP NOT NULL, " +
+                "CONSTRAINT pk_statistics_partitioned PRIMARY KEY (id, created)" +
+                ") PARTITION BY RANGE (created)");
+        jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF statistics DEFAULT");
+
+        List<LocalDateTime> months = jdbcTemplate.queryForList("SELECT DISTINCT date_trunc('month', created) " +
+                "FROM statistics_legacy", LocalDateTime.class);
+        for (LocalDateTime month : months) {
+            createPartition(YearMonth.from(month));
+        }
+
+        jdbcTemplate.execute("INSERT INTO statistics (id, app, uri, ip, created) " +
+                "SELECT id, app, uri, ip, created FROM statistics_legacy");
+        jdbcTemplate.execute("DROP TABLE statistics_legacy");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_statistics_created_uri_app_ip " +
+                "ON statistics (created, uri, app, ip)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_statistics_uri_created_app_ip " +
+                "ON statistics (uri, created, app, ip)");
+        log.info("Таблица statistics переведена на секционирование по месяцам, перенесено секций {}", months.size());
+    }
+
+    private void createPartition(YearMonth month) {
+        String partition = partitionName(month);
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+
+        // посещения этого месяца могли попасть в секцию по умолчанию, их нужно перенести до подключения секции;
+        // блокировка не пускает вставки до подключения, иначе посещение между переносом и ATTACH останется
+        // в секции по умолчанию и ATTACH откажет. Чтение не блокируется
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE statistics IN SHARE ROW EXCLUSIVE MODE");
+            jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE statistics INCLUDING DEFAULTS)");
+            jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " " +
+                    "WHERE created >= ? AND created < ? RETURNING id, app, uri, ip, created) " +
+                    "INSERT INTO " + partition + " (id, app, uri, ip, created) " +
+                    "SELECT id, app, uri, ip, created FROM moved", from, to);
+            jdbcTemplate.execute("ALTER TABLE statistics ATTACH PARTITION " + partition + " " +
+                    "FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        });
+        log.info("Создана секция статистики {}", partition);
+    }
+
+    private TreeSet<YearMonth> existingPartitions() {
+        List<String> names = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = to_regclass('statistics')", String.class);
+
+        TreeSet<YearMonth> months = new TreeSet<>();
+        for (String name : names) {
+            if (name.startsWith(PARTITION_PREFIX)) {
+                months.add(YearMonth.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+            }
+        }
+        return months;
+    }
+}
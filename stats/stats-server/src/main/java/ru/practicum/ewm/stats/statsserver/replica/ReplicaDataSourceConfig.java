@@ -0,0 +1,70 @@
+package ru.practicum.ewm.stats.statsserver.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+
+/**
+ * Раздельные пулы соединений для основной базы (spring.datasource.*) и реплики (stats-server.replica.datasource.*).
+ * Транзакции readOnly - запросы статистики - идут в реплику, запись посещений и всё остальное - в основную
+ * базу; при отставании реплики больше max-staleness-ms запросы статистики тоже идут в основную базу.
+ */
+@Configuration
+@ConditionalOnProperty(name = "stats-server.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("stats-primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("stats-server.replica.datasource.hikari")
+    public HikariDataSource replicaDataSource(@Value("${stats-server.replica.datasource.url}") String url,
+                                              @Value("${stats-server.replica.datasource.username:}") String username,
+                                              @Value("${stats-server.replica.datasource.password:}") String password) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("stats-replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                               @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                               @Value("${stats-server.replica.max-staleness-ms:5000}")
+                                               long maxStalenessMillis) {
+        return new ReplicaLagMonitor(new JdbcTemplate(primaryDataSource), new JdbcTemplate(replicaDataSource),
+                Clock.systemUTC(), maxStalenessMillis);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                 ReplicaLagMonitor replicaLagMonitor) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource,
+                replicaLagMonitor::isReplicaUsable);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
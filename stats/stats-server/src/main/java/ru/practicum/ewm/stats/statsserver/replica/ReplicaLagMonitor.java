@@ -0,0 +1,85 @@
+package ru.practicum.ewm.stats.statsserver.replica;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Clock;
+
+/**
+ * Отставание реплики по строке stat_replica_heartbeat: раз в heartbeat-interval-ms в основную базу пишется
+ * текущее время, из реплики читается последнее доехавшее. Реплика используется, пока отставание не больше
+ * max-staleness-ms; отставание оценивается с точностью до интервала, поэтому max-staleness-ms должен быть
+ * больше heartbeat-interval-ms. До первой проверки и при ошибках чтения все запросы идут в основную базу.
+ */
+@Slf4j
+public class ReplicaLagMonitor implements MeterBinder {
+    private static final String READ_SQL = "SELECT beat FROM stat_replica_heartbeat WHERE id = 1";
+    private static final String UPDATE_SQL = "UPDATE stat_replica_heartbeat SET beat = ? WHERE id = 1";
+    private static final String INSERT_SQL = "INSERT INTO stat_replica_heartbeat (id, beat) VALUES (1, ?)";
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final Clock clock;
+    private final long maxStalenessMillis;
+    private volatile boolean replicaUsable;
+    private volatile long lagMillis = -1;
+
+    ReplicaLagMonitor(JdbcTemplate primary, JdbcTemplate replica, Clock clock, long maxStalenessMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.clock = clock;
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    @Scheduled(fixedDelayString = "${stats-server.replica.heartbeat-interval-ms:1000}")
+    public void check() {
+        long now = clock.millis();
+        Long beat;
+        try {
+            beat = replica.queryForObject(READ_SQL, Long.class);
+        } catch (DataAccessException e) {
+            log.debug("Не удалось прочитать отметку времени из реплики", e);
+            beat = null;
+        }
+
+        try {
+            if (primary.update(UPDATE_SQL, now) == 0) {
+                primary.update(INSERT_SQL, now);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Не удалось записать отметку времени для реплики", e);
+        }
+
+        lagMillis = beat == null ? -1 : now - beat;
+        boolean usable = beat != null && lagMillis <= maxStalenessMillis;
+        if (usable != replicaUsable) {
+            if (usable) {
+                log.info("Реплика догнала основную базу, отставание {} мс, отчёты читаются из реплики", lagMillis);
+            } else {
+                log.warn("Реплика недоступна или отстаёт больше {} мс (отставание {} мс), отчёты читаются " +
+                        "из основной базы", maxStalenessMillis, lagMillis);
+            }
+        }
+        replicaUsable = usable;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stats.replica.lag", this, monitor -> monitor.lagMillis)
+                .description("Отставание реплики по последней проверке, -1 - неизвестно")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("stats.replica.usable", this, monitor -> monitor.replicaUsable ? 1 : 0)
+                .description("1 - отчёты читаются из реплики, 0 - из основной базы")
+                .register(registry);
+    }
+}
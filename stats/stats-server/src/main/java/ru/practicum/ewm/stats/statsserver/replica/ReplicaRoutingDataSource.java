@@ -0,0 +1,33 @@
+package ru.practicum.ewm.stats.statsserver.replica;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Соединения для транзакций readOnly берутся из реплики, пока она не отстала, остальные - из основной базы.
+ * Работает только за LazyConnectionDataSourceProxy: признак readOnly выставляется уже после того, как
+ * менеджер транзакций запросил соединение.
+ */
+class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private final BooleanSupplier replicaUsable;
+
+    ReplicaRoutingDataSource(DataSource primary, DataSource replica, BooleanSupplier replicaUsable) {
+        this.replicaUsable = replicaUsable;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && replicaUsable.getAsBoolean()
+                ? REPLICA
+                : PRIMARY;
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Часть периода запроса: интервал [from, to) агрегата granularity или, при granularity = null,
+ * интервал сырых записей statistics, включающий to при toInclusive.
+ */
+@Value
+public class HitRange {
+    RollupGranularity granularity;
+    LocalDateTime from;
+    LocalDateTime to;
+    boolean toInclusive;
+}
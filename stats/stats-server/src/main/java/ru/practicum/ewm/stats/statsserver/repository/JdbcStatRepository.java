@@ -0,0 +1,147 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Repository
+public class JdbcStatRepository {
+    private static final String INSERT_SQL = "INSERT INTO statistics (app, uri, ip, created) VALUES (?, ?, ?, ?)";
+    private static final String IPS_SQL = "SELECT app, uri, ip FROM statistics " +
+            "WHERE created >= :from AND created %1$s :to %2$s";
+    private static final String UNIQUE_BUCKETS_SQL = "SELECT DATE_TRUNC('%1$s', created) AS bucket, app, uri, " +
+            "COUNT(DISTINCT ip) AS hits FROM statistics " +
+            "WHERE created >= :from AND created < :to %2$s" +
+            "GROUP BY DATE_TRUNC('%1$s', created), app, uri " +
+            "ORDER BY bucket, app, uri";
+    private static final String BUCKET_IPS_SQL = "SELECT DISTINCT DATE_TRUNC('%1$s', created) AS bucket, " +
+            "app, uri, ip FROM statistics WHERE created >= :from AND created < :to %2$s";
+    private static final String EXPORT_SQL = "SELECT id, app, uri, ip, created FROM statistics " +
+            "WHERE created <= :to AND (created > :afterCreated OR (created = :afterCreated AND id > :afterId)) " +
+            "ORDER BY created, id LIMIT :limit";
+    private static final String URI_FILTER = "AND uri IN (:uris) ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final int batchSize;
+    private final int exportPageSize;
+
+    public JdbcStatRepository(JdbcTemplate jdbcTemplate,
+                              @Value("${stats-server.hits.batch-size:500}") int batchSize,
+                              @Value("${stats-server.export.page-size:10000}") int exportPageSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.batchSize = batchSize;
+        this.exportPageSize = exportPageSize;
+    }
+
+    public void saveAll(List<Stat> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, stats, batchSize, (ps, stat) -> {
+            ps.setString(1, stat.getApp());
+            ps.setString(2, stat.getUri());
+            ps.setString(3, stat.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(stat.getTimestamp()));
+        });
+    }
+
+    public void forEachIp(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                          IpConsumer consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("uris", uris);
+        String sql = String.format(IPS_SQL, toInclusive ? "<=" : "<", uris.isEmpty() ? "" : URI_FILTER);
+
+        namedParameterJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(rs.getString("app"), rs.getString("uri"), rs.getString("ip"));
+        });
+    }
+
+    /**
+     * Уникальные ip по интервалам granularity за [from, to) одним проходом по сырым записям.
+     */
+    public void countUniqueByBucket(RollupGranularity granularity, LocalDateTime from, LocalDateTime to,
+                                    List<String> uris, Consumer<ViewStatsBucket> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("uris", uris);
+        String sql = String.format(UNIQUE_BUCKETS_SQL, granularity.name(), uris.isEmpty() ? "" : URI_FILTER);
+
+        namedParameterJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new ViewStatsBucket(rs.getString("app"), rs.getString("uri"),
+                    StatMapper.formatTimestamp(rs.getTimestamp("bucket").toLocalDateTime()), rs.getInt("hits")));
+        });
+    }
+
+    /**
+     * Различные ip за [from, to) вместе с интервалом granularity, в который попало посещение.
+     */
+    public void forEachBucketIp(RollupGranularity granularity, LocalDateTime from, LocalDateTime to,
+                                List<String> uris, BucketIpConsumer consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("uris", uris);
+        String sql = String.format(BUCKET_IPS_SQL, granularity.name(), uris.isEmpty() ? "" : URI_FILTER);
+
+        namedParameterJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(rs.getTimestamp("bucket").toLocalDateTime(), rs.getString("app"), rs.getString("uri"),
+                    rs.getString("ip"));
+        });
+    }
+
+    /**
+     * Сырые посещения за [from, to] в порядке (created, id) страницами по export.page-size. Каждая страница - отдельный
+     * короткий запрос, продолжающий предыдущую по ключу (created, id), поэтому выгрузка не держит ни транзакцию,
+     * ни соединение, пока consumer обрабатывает строки, и память ограничена одной страницей.
+     */
+    public void forEachHit(LocalDateTime from, LocalDateTime to, Consumer<Stat> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("afterCreated", Timestamp.valueOf(from))
+                .addValue("afterId", Long.MIN_VALUE)
+                .addValue("limit", exportPageSize);
+
+        List<Stat> page = new ArrayList<>(exportPageSize);
+        do {
+            page.clear();
+            namedParameterJdbcTemplate.query(EXPORT_SQL, params, rs -> {
+                page.add(new Stat(rs.getLong("id"), rs.getString("app"), rs.getString("uri"), rs.getString("ip"),
+                        rs.getTimestamp("created").toLocalDateTime()));
+            });
+            page.forEach(consumer);
+
+            if (!page.isEmpty()) {
+                Stat last = page.get(page.size() - 1);
+                params.addValue("afterCreated", Timestamp.valueOf(last.getTimestamp()))
+                        .addValue("afterId", last.getId());
+            }
+        } while (page.size() == exportPageSize);
+    }
+
+    @FunctionalInterface
+    public interface IpConsumer {
+        void accept(String app, String uri, String ip);
+    }
+
+    @FunctionalInterface
+    public interface BucketIpConsumer {
+        void accept(LocalDateTime bucket, String app, String uri, String ip);
+    }
+}
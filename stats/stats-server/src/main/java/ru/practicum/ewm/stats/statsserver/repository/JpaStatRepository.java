@@ -1,15 +1,24 @@
 package ru.practicum.ewm.stats.statsserver.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import ru.practicum.ewm.stats.statsdto.ViewStats;
 import ru.practicum.ewm.stats.statsserver.model.Stat;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Stream;
 
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+
+/**
+ * Запросы уникальных просмотров читаются курсором: pageable превращается в LIMIT/OFFSET,
+ * поток нужно закрыть и читать внутри транзакции.
+ */
 public interface JpaStatRepository extends JpaRepository<Stat, Long> {
     @Query("SELECT new ru.practicum.ewm.stats.statsdto.ViewStats(" +
             "st.app, " +
@@ -19,23 +28,12 @@ public interface JpaStatRepository extends JpaRepository<Stat, Long> {
             "WHERE st.timestamp BETWEEN :start AND :end " +
             "AND st.uri IN :uris " +
             "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(DISTINCT st.ip) DESC")
-    Optional<List<ViewStats>> getStatsByUriAndUniqueIp(@Param("start") LocalDateTime start,
-                                                       @Param("end") LocalDateTime end,
-                                                       @Param("uris") List<String> uris);
-
-    @Query("SELECT new ru.practicum.ewm.stats.statsdto.ViewStats(" +
-            "st.app, " +
-            "st.uri, " +
-            "CAST(COUNT(st.ip) AS int)) " +
-            "FROM Stat st " +
-            "WHERE st.timestamp BETWEEN :start AND :end " +
-            "AND st.uri IN :uris " +
-            "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(st.ip) DESC")
-    Optional<List<ViewStats>> getStatsByUriAndNotUniqueIp(@Param("start") LocalDateTime start,
-                                                          @Param("end") LocalDateTime end,
-                                                          @Param("uris") List<String> uris);
+            "ORDER BY COUNT(DISTINCT st.ip) DESC, st.app, st.uri")
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "1000"))
+    Stream<ViewStats> getStatsByUriAndUniqueIp(@Param("start") LocalDateTime start,
+                                               @Param("end") LocalDateTime end,
+                                               @Param("uris") List<String> uris,
+                                               Pageable pageable);
 
     @Query("SELECT new ru.practicum.ewm.stats.statsdto.ViewStats(" +
             "st.app, " +
@@ -44,18 +42,9 @@ public interface JpaStatRepository extends JpaRepository<Stat, Long> {
             "FROM Stat st " +
             "WHERE st.timestamp BETWEEN :start AND :end " +
             "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(DISTINCT st.ip) DESC")
-    Optional<List<ViewStats>> getStatsByWithoutUriAndUniqueIp(@Param("start") LocalDateTime start,
-                                                              @Param("end") LocalDateTime end);
-
-    @Query("SELECT new ru.practicum.ewm.stats.statsdto.ViewStats(" +
-            "st.app, " +
-            "st.uri, " +
-            "CAST(COUNT(st.ip) AS int)) " +
-            "FROM Stat st " +
-            "WHERE st.timestamp BETWEEN :start AND :end " +
-            "GROUP BY st.app, st.uri " +
-            "ORDER BY COUNT(st.ip) DESC")
-    Optional<List<ViewStats>> getStatsByWithoutUriAndNotUniqueIp(@Param("start") LocalDateTime start,
-                                                                 @Param("end") LocalDateTime end);
+            "ORDER BY COUNT(DISTINCT st.ip) DESC, st.app, st.uri")
+    @QueryHints(@QueryHint(name = FETCH_SIZE, value = "1000"))
+    Stream<ViewStats> getStatsByWithoutUriAndUniqueIp(@Param("start") LocalDateTime start,
+                                                      @Param("end") LocalDateTime end,
+                                                      Pageable pageable);
 }
@@ -0,0 +1,77 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Pageable с произвольным смещением: PageRequest умеет только смещения, кратные размеру страницы.
+ * Порядок задаётся в самом запросе.
+ */
+@EqualsAndHashCode
+@ToString
+public final class OffsetLimitRequest implements Pageable {
+    private final long offset;
+    private final int limit;
+
+    private OffsetLimitRequest(long offset, int limit) {
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * @param limit 0 - без ограничения
+     */
+    public static Pageable of(long offset, int limit) {
+        if (offset == 0 && limit == 0) {
+            return Pageable.unpaged();
+        }
+        return new OffsetLimitRequest(offset, limit > 0 ? limit : Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int getPageNumber() {
+        return (int) (offset / limit);
+    }
+
+    @Override
+    public int getPageSize() {
+        return limit;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public Sort getSort() {
+        return Sort.unsorted();
+    }
+
+    @Override
+    public Pageable next() {
+        return new OffsetLimitRequest(offset + limit, limit);
+    }
+
+    @Override
+    public Pageable previousOrFirst() {
+        return new OffsetLimitRequest(Math.max(0, offset - limit), limit);
+    }
+
+    @Override
+    public Pageable first() {
+        return new OffsetLimitRequest(0, limit);
+    }
+
+    @Override
+    public Pageable withPage(int pageNumber) {
+        return new OffsetLimitRequest((long) pageNumber * limit, limit);
+    }
+
+    @Override
+    public boolean hasPrevious() {
+        return offset > 0;
+    }
+}
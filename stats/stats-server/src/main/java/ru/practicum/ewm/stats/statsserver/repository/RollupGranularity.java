@@ -0,0 +1,55 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupGranularity {
+    MINUTE("stat_rollup_minute", "stat_sketch_minute", ChronoUnit.MINUTES),
+    HOUR("stat_rollup_hour", "stat_sketch_hour", ChronoUnit.HOURS),
+    DAY("stat_rollup_day", "stat_sketch_day", ChronoUnit.DAYS);
+
+    private final String table;
+    private final String sketchTable;
+    private final ChronoUnit unit;
+
+    RollupGranularity(String table, String sketchTable, ChronoUnit unit) {
+        this.table = table;
+        this.sketchTable = sketchTable;
+        this.unit = unit;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getSketchTable() {
+        return sketchTable;
+    }
+
+    public LocalDateTime floor(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime dateTime) {
+        LocalDateTime floor = floor(dateTime);
+        return floor.equals(dateTime) ? floor : floor.plus(1, unit);
+    }
+
+    public LocalDateTime next(LocalDateTime bucket) {
+        return bucket.plus(1, unit);
+    }
+
+    /**
+     * Длина интервала; минута, час и сутки во времени UTC без секунд координации постоянны.
+     */
+    public long seconds() {
+        return unit.getDuration().getSeconds();
+    }
+
+    /**
+     * Количество интервалов от интервала, содержащего start, до интервала, содержащего end.
+     */
+    public long bucketsBetween(LocalDateTime start, LocalDateTime end) {
+        return unit.between(floor(start), floor(end)) + 1;
+    }
+}
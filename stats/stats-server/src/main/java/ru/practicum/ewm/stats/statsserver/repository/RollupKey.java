@@ -0,0 +1,21 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+final class RollupKey {
+    // ключи упорядочены, чтобы параллельные транзакции блокировали строки в одном порядке
+    static final Comparator<RollupKey> ORDER = Comparator.comparing((RollupKey key) -> key.bucket)
+            .thenComparing(key -> key.app)
+            .thenComparing(key -> key.uri);
+
+    final LocalDateTime bucket;
+    final String app;
+    final String uri;
+
+    RollupKey(LocalDateTime bucket, String app, String uri) {
+        this.bucket = bucket;
+        this.app = app;
+        this.uri = uri;
+    }
+}
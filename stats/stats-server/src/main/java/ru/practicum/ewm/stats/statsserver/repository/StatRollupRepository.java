@@ -0,0 +1,140 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+@Repository
+public class StatRollupRepository {
+    private static final String POSTGRES_UPSERT_SQL = "INSERT INTO %1$s AS r (bucket, app, uri, hits) " +
+            "VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (bucket, app, uri) DO UPDATE SET hits = r.hits + EXCLUDED.hits";
+    private static final String MERGE_UPSERT_SQL = "MERGE INTO %1$s r " +
+            "USING (VALUES (CAST(? AS TIMESTAMP), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), " +
+            "CAST(? AS BIGINT))) s (bucket, app, uri, hits) " +
+            "ON r.bucket = s.bucket AND r.app = s.app AND r.uri = s.uri " +
+            "WHEN MATCHED THEN UPDATE SET hits = r.hits + s.hits " +
+            "WHEN NOT MATCHED THEN INSERT (bucket, app, uri, hits) VALUES (s.bucket, s.app, s.uri, s.hits)";
+    private static final String SUM_PART_SQL = "SELECT app, uri, SUM(hits) AS hits FROM %1$s " +
+            "WHERE bucket >= :from%2$d AND bucket < :to%2$d %3$s" +
+            "GROUP BY app, uri";
+    private static final String COUNT_PART_SQL = "SELECT app, uri, COUNT(*) AS hits FROM statistics " +
+            "WHERE created >= :from%2$d AND created %1$s :to%2$d %3$s" +
+            "GROUP BY app, uri";
+    private static final String TOTAL_SQL = "SELECT app, uri, SUM(hits) AS total FROM (%1$s) p " +
+            "GROUP BY app, uri " +
+            "ORDER BY total DESC, app, uri%2$s%3$s";
+    private static final String BUCKETS_SQL = "SELECT bucket, app, uri, hits FROM %1$s " +
+            "WHERE bucket >= :from AND bucket < :to %2$s" +
+            "ORDER BY bucket, app, uri";
+    private static final String URI_FILTER = "AND uri IN (:uris) ";
+    private static final int FETCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final Map<RollupGranularity, String> upsertSql = new EnumMap<>(RollupGranularity.class);
+
+    public StatRollupRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        JdbcTemplate cursorJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        cursorJdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(cursorJdbcTemplate);
+
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        String upsertTemplate = "PostgreSQL".equals(database) ? POSTGRES_UPSERT_SQL : MERGE_UPSERT_SQL;
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            upsertSql.put(granularity, String.format(upsertTemplate, granularity.getTable()));
+        }
+    }
+
+    public void addAll(List<Stat> stats) {
+        if (stats.isEmpty()) {
+            return;
+        }
+
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            Map<RollupKey, Long> counts = new TreeMap<>(RollupKey.ORDER);
+            for (Stat stat : stats) {
+                counts.merge(new RollupKey(granularity.floor(stat.getTimestamp()), stat.getApp(), stat.getUri()),
+                        1L, Long::sum);
+            }
+
+            jdbcTemplate.batchUpdate(upsertSql.get(granularity), new ArrayList<>(counts.entrySet()), counts.size(),
+                    (ps, entry) -> {
+                        ps.setTimestamp(1, Timestamp.valueOf(entry.getKey().bucket));
+                        ps.setString(2, entry.getKey().app);
+                        ps.setString(3, entry.getKey().uri);
+                        ps.setLong(4, entry.getValue());
+                    });
+        }
+    }
+
+    /**
+     * Суммы просмотров по всем частям периода одним запросом: сортировка, offset и limit выполняются
+     * в базе, строки передаются consumer по мере чтения курсора.
+     *
+     * @param limit 0 - без ограничения
+     */
+    public void sumHits(List<HitRange> ranges, List<String> uris, int offset, int limit,
+                        Consumer<ViewStats> consumer) {
+        if (ranges.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("uris", uris)
+                .addValue("offset", offset)
+                .addValue("limit", limit);
+        String uriFilter = uris.isEmpty() ? "" : URI_FILTER;
+        StringJoiner parts = new StringJoiner(" UNION ALL ");
+        for (int i = 0; i < ranges.size(); i++) {
+            HitRange range = ranges.get(i);
+            params.addValue("from" + i, Timestamp.valueOf(range.getFrom()))
+                    .addValue("to" + i, Timestamp.valueOf(range.getTo()));
+            parts.add(range.getGranularity() != null
+                    ? String.format(SUM_PART_SQL, range.getGranularity().getTable(), i, uriFilter)
+                    : String.format(COUNT_PART_SQL, range.isToInclusive() ? "<=" : "<", i, uriFilter));
+        }
+        String sql = String.format(TOTAL_SQL, parts, limit > 0 ? " LIMIT :limit" : "",
+                offset > 0 ? " OFFSET :offset" : "");
+
+        namedParameterJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new ViewStats(rs.getString("app"), rs.getString("uri"), rs.getInt("total")));
+        });
+    }
+
+    /**
+     * Строки агрегата granularity за интервалы [from, to) по порядку интервалов.
+     */
+    public void forEachBucket(RollupGranularity granularity, LocalDateTime from, LocalDateTime to, List<String> uris,
+                              Consumer<ViewStatsBucket> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("uris", uris);
+        String sql = String.format(BUCKETS_SQL, granularity.getTable(), uris.isEmpty() ? "" : URI_FILTER);
+
+        namedParameterJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(new ViewStatsBucket(rs.getString("app"), rs.getString("uri"),
+                    StatMapper.formatTimestamp(rs.getTimestamp("bucket").toLocalDateTime()),
+                    (int) Math.min(rs.getLong("hits"), Integer.MAX_VALUE)));
+        });
+    }
+}
@@ -0,0 +1,244 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Скетчи уникальных ip по минутам, часам и суткам. Запись посещения только добавляет строку в
+ * stat_sketch_pending; скетчи пересчитываются пачкой в {@link #rebuildPending} по сырым записям затронутых минут,
+ * поэтому строки часов и суток блокирует только пересчёт, а не запросы записи. Объединение скетчей идемпотентно,
+ * повторный пересчёт минуты ничего не портит. Скетч, в котором заполнено мало регистров, хранится в разреженном
+ * виде, см. {@link HyperLogLog#toBytes()}.
+ */
+@Repository
+public class StatSketchRepository {
+    private static final int LOCK_CHUNK_SIZE = 100;
+    private static final String PENDING_INSERT_SQL = "INSERT INTO stat_sketch_pending (bucket, app, uri) " +
+            "VALUES (?, ?, ?)";
+    private static final String PENDING_SQL = "SELECT id, bucket, app, uri FROM stat_sketch_pending " +
+            "ORDER BY id LIMIT ?";
+    private static final String PENDING_DELETE_SQL = "DELETE FROM stat_sketch_pending WHERE id = ?";
+    private static final String MINUTE_IPS_SQL = "SELECT ip FROM statistics " +
+            "WHERE uri = ? AND created >= ? AND created < ? AND app = ?";
+    private static final String POSTGRES_INSERT_IF_ABSENT_SQL = "INSERT INTO %1$s (bucket, app, uri, registers) " +
+            "VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (bucket, app, uri) DO NOTHING";
+    private static final String MERGE_INSERT_IF_ABSENT_SQL = "MERGE INTO %1$s r " +
+            "USING (VALUES (CAST(? AS TIMESTAMP), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), " +
+            "CAST(? AS BYTEA))) s (bucket, app, uri, registers) " +
+            "ON r.bucket = s.bucket AND r.app = s.app AND r.uri = s.uri " +
+            "WHEN NOT MATCHED THEN INSERT (bucket, app, uri, registers) " +
+            "VALUES (s.bucket, s.app, s.uri, s.registers)";
+    private static final String LOCK_SQL = "SELECT bucket, app, uri, registers FROM %1$s " +
+            "WHERE (bucket, app, uri) IN (%2$s) FOR UPDATE";
+    private static final String UPDATE_SQL = "UPDATE %1$s SET registers = ? WHERE bucket = ? AND app = ? AND uri = ?";
+    private static final String FIND_SQL = "SELECT app, uri, registers FROM %1$s " +
+            "WHERE bucket >= :from AND bucket < :to %2$s";
+    private static final String BUCKETS_SQL = "SELECT bucket, app, uri, registers FROM %1$s " +
+            "WHERE bucket >= :from AND bucket < :to %2$s" +
+            "ORDER BY bucket, app, uri";
+    private static final String URI_FILTER = "AND uri IN (:uris) ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final int precision;
+    private final boolean enabled;
+    private final Map<RollupGranularity, String> insertIfAbsentSql = new EnumMap<>(RollupGranularity.class);
+
+    @Autowired
+    public StatSketchRepository(JdbcTemplate jdbcTemplate,
+                                @Value("${stats-server.hll.precision:12}") int precision,
+                                @Value("${stats-server.hll.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.precision = HyperLogLog.empty(precision).getPrecision();
+        this.enabled = enabled;
+
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        String insertTemplate = "PostgreSQL".equals(database)
+                ? POSTGRES_INSERT_IF_ABSENT_SQL
+                : MERGE_INSERT_IF_ABSENT_SQL;
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            insertIfAbsentSql.put(granularity, String.format(insertTemplate, granularity.getSketchTable()));
+        }
+    }
+
+    public HyperLogLog emptySketch() {
+        return HyperLogLog.empty(precision);
+    }
+
+    /**
+     * false - скетчи не ведутся, запросы approximate=true считаются точно.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Отмечает минуты посещений для пересчёта скетчей: по строке на минуту, app и uri пачки, без блокировок.
+     */
+    public void addAll(List<Stat> stats) {
+        if (!enabled || stats.isEmpty()) {
+            return;
+        }
+
+        Set<RollupKey> keys = new TreeSet<>(RollupKey.ORDER);
+        for (Stat stat : stats) {
+            keys.add(new RollupKey(RollupGranularity.MINUTE.floor(stat.getTimestamp()), stat.getApp(), stat.getUri()));
+        }
+        jdbcTemplate.batchUpdate(PENDING_INSERT_SQL, new ArrayList<>(keys), keys.size(), (ps, key) -> {
+            ps.setTimestamp(1, Timestamp.valueOf(key.bucket));
+            ps.setString(2, key.app);
+            ps.setString(3, key.uri);
+        });
+    }
+
+    /**
+     * Пересчитывает скетчи минут из не больше limit первых отметок stat_sketch_pending по сырым записям и
+     * объединяет их со скетчами минут, часов и суток, затем удаляет прочитанные отметки. Выполняется в одной
+     * транзакции: отметка ещё не завершённой записи не видна и будет обработана следующим вызовом.
+     *
+     * @param rebuilt получает каждую пересчитанную минуту
+     * @return количество обработанных отметок
+     */
+    public int rebuildPending(int limit, BucketSketchConsumer rebuilt) {
+        List<Long> ids = new ArrayList<>();
+        Set<RollupKey> minutes = new TreeSet<>(RollupKey.ORDER);
+        jdbcTemplate.query(PENDING_SQL, rs -> {
+            ids.add(rs.getLong("id"));
+            minutes.add(new RollupKey(rs.getTimestamp("bucket").toLocalDateTime(), rs.getString("app"),
+                    rs.getString("uri")));
+        }, limit);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        Map<RollupGranularity, Map<RollupKey, HyperLogLog>> sketches = new EnumMap<>(RollupGranularity.class);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            sketches.put(granularity, new TreeMap<>(RollupKey.ORDER));
+        }
+        for (RollupKey minute : minutes) {
+            HyperLogLog sketch = emptySketch();
+            jdbcTemplate.query(MINUTE_IPS_SQL, rs -> {
+                sketch.add(rs.getString("ip"));
+            }, minute.uri, Timestamp.valueOf(minute.bucket),
+                    Timestamp.valueOf(RollupGranularity.MINUTE.next(minute.bucket)), minute.app);
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                sketches.get(granularity).computeIfAbsent(
+                        new RollupKey(granularity.floor(minute.bucket), minute.app, minute.uri),
+                        key -> emptySketch()).merge(sketch);
+            }
+        }
+
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            mergeAll(granularity, sketches.get(granularity));
+        }
+        jdbcTemplate.batchUpdate(PENDING_DELETE_SQL, ids, ids.size(), (ps, id) -> ps.setLong(1, id));
+
+        for (RollupKey minute : minutes) {
+            rebuilt.accept(minute.bucket, minute.app, minute.uri, sketches.get(RollupGranularity.MINUTE).get(minute));
+        }
+        return ids.size();
+    }
+
+    private void mergeAll(RollupGranularity granularity, Map<RollupKey, HyperLogLog> sketches) {
+        List<RollupKey> keys = new ArrayList<>(sketches.keySet());
+        byte[] emptyRegisters = emptySketch().toBytes();
+        jdbcTemplate.batchUpdate(insertIfAbsentSql.get(granularity), keys, keys.size(), (ps, key) -> {
+            ps.setTimestamp(1, Timestamp.valueOf(key.bucket));
+            ps.setString(2, key.app);
+            ps.setString(3, key.uri);
+            ps.setBytes(4, emptyRegisters);
+        });
+
+        for (int from = 0; from < keys.size(); from += LOCK_CHUNK_SIZE) {
+            mergeLocked(granularity, keys.subList(from, Math.min(from + LOCK_CHUNK_SIZE, keys.size())), sketches);
+        }
+    }
+
+    public void forEachSketch(RollupGranularity granularity, LocalDateTime from, LocalDateTime to, List<String> uris,
+                              SketchConsumer consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("uris", uris);
+        String sql = String.format(FIND_SQL, granularity.getSketchTable(), uris.isEmpty() ? "" : URI_FILTER);
+
+        namedParameterJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(rs.getString("app"), rs.getString("uri"),
+                    HyperLogLog.fromBytes(rs.getBytes("registers")));
+        });
+    }
+
+    /**
+     * Скетчи granularity за интервалы [from, to) по порядку интервалов, без объединения.
+     */
+    public void forEachBucketSketch(RollupGranularity granularity, LocalDateTime from, LocalDateTime to,
+                                    List<String> uris, BucketSketchConsumer consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("uris", uris);
+        String sql = String.format(BUCKETS_SQL, granularity.getSketchTable(), uris.isEmpty() ? "" : URI_FILTER);
+
+        namedParameterJdbcTemplate.query(sql, params, rs -> {
+            consumer.accept(rs.getTimestamp("bucket").toLocalDateTime(), rs.getString("app"), rs.getString("uri"),
+                    HyperLogLog.fromBytes(rs.getBytes("registers")));
+        });
+    }
+
+    private void mergeLocked(RollupGranularity granularity, List<RollupKey> keys,
+                             Map<RollupKey, HyperLogLog> sketches) {
+        String sql = String.format(LOCK_SQL, granularity.getSketchTable(),
+                String.join(", ", Collections.nCopies(keys.size(), "(?, ?, ?)")));
+        Object[] args = new Object[keys.size() * 3];
+        for (int i = 0; i < keys.size(); i++) {
+            args[i * 3] = Timestamp.valueOf(keys.get(i).bucket);
+            args[i * 3 + 1] = keys.get(i).app;
+            args[i * 3 + 2] = keys.get(i).uri;
+        }
+
+        jdbcTemplate.query(sql, rs -> {
+            HyperLogLog sketch = sketches.get(new RollupKey(rs.getTimestamp("bucket").toLocalDateTime(),
+                    rs.getString("app"), rs.getString("uri")));
+            sketch.merge(HyperLogLog.fromBytes(rs.getBytes("registers")));
+        }, args);
+
+        jdbcTemplate.batchUpdate(String.format(UPDATE_SQL, granularity.getSketchTable()), keys, keys.size(),
+                (ps, key) -> {
+                    ps.setBytes(1, sketches.get(key).toBytes());
+                    ps.setTimestamp(2, Timestamp.valueOf(key.bucket));
+                    ps.setString(3, key.app);
+                    ps.setString(4, key.uri);
+                });
+    }
+
+    @FunctionalInterface
+    public interface SketchConsumer {
+        void accept(String app, String uri, HyperLogLog sketch);
+    }
+
+    @FunctionalInterface
+    public interface BucketSketchConsumer {
+        void accept(LocalDateTime bucket, String app, String uri, HyperLogLog sketch);
+    }
+}
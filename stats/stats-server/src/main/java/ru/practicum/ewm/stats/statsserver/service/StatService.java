@@ -2,12 +2,48 @@ package ru.practicum.ewm.stats.statsserver.service;
 
 import ru.practicum.ewm.stats.statsdto.EndpointHit;
 import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public interface StatService {
     void create(EndpointHit endpointHit);
 
-    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+    void createAll(List<EndpointHit> endpointHits);
+
+    void createStats(List<Stat> stats);
+
+    default List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                     boolean approximate) {
+        return getStats(start, end, uris, unique, approximate, 0, 0);
+    }
+
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             boolean approximate, int offset, int limit);
+
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                     boolean approximate, int offset, int limit, Consumer<ViewStats> consumer);
+
+    List<ViewStatsBucket> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                        boolean approximate, RollupGranularity granularity);
+
+    /**
+     * Сырые посещения за [start, end] для переноса между окружениями, передаются consumer по мере чтения.
+     */
+    void exportHits(LocalDateTime start, LocalDateTime end, Consumer<Stat> consumer);
+
+    /**
+     * Просмотры за один интервал granularity, содержащий at, например за текущий час.
+     */
+    default List<ViewStats> getBucketStats(RollupGranularity granularity, LocalDateTime at, List<String> uris,
+                                           boolean unique) {
+        return getTimeSeries(at, at, uris, unique, false, granularity).stream()
+                .map(bucket -> new ViewStats(bucket.getApp(), bucket.getUri(), bucket.getHits()))
+                .collect(Collectors.toList());
+    }
 }
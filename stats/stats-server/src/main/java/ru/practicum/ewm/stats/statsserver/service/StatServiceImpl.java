@@ -1,48 +1,183 @@
 package ru.practicum.ewm.stats.statsserver.service;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 import ru.practicum.ewm.stats.statsdto.EndpointHit;
 import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.cache.StatsCache;
 import ru.practicum.ewm.stats.statsserver.exception.InvalidTimePeriodException;
 import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
-import ru.practicum.ewm.stats.statsserver.repository.JpaStatRepository;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+import ru.practicum.ewm.stats.statsserver.writer.StatWriter;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 public class StatServiceImpl implements StatService {
-    private final JpaStatRepository jpaStatRepository;
+    private static final long MAX_TIME_SERIES_BUCKETS = 10_000;
+    private static final String[] URIS_TAGS = {"all", "filtered"};
+    private static final String[] UNIQUE_TAGS = {"false", "exact", "approximate"};
+
+    private final StatStorage statStorage;
+    private final StatWriter statWriter;
+    private final StatsCache statsCache;
+    private final Counter ingestedCounter;
+    private final Counter exportedCounter;
+    private final Timer writeTimer;
+    // индекс - queryIndex(uris, unique, approximate): свой таймер на каждый вид запроса к хранилищу
+    private final Timer[] queryTimers = new Timer[URIS_TAGS.length * UNIQUE_TAGS.length];
+    private final Timer timeSeriesTimer;
+    private final DistributionSummary rowsSummary;
+    private final DistributionSummary windowSummary;
+
+    public StatServiceImpl(StatStorage statStorage, StatWriter statWriter, StatsCache statsCache,
+                           MeterRegistry meterRegistry) {
+        this.statStorage = statStorage;
+        this.statWriter = statWriter;
+        this.statsCache = statsCache;
+
+        this.ingestedCounter = Counter.builder("stats.hits.ingested")
+                .description("Принятые посещения")
+                .register(meterRegistry);
+        this.exportedCounter = Counter.builder("stats.hits.exported")
+                .description("Выгруженные сырые посещения")
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("stats.hits.write")
+                .description("Время передачи пачки посещений в запись")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        for (int i = 0; i < URIS_TAGS.length; i++) {
+            for (int j = 0; j < UNIQUE_TAGS.length; j++) {
+                queryTimers[i * UNIQUE_TAGS.length + j] = Timer.builder("stats.query")
+                        .description("Время запроса статистики к хранилищу без учёта кэша")
+                        .tag("uris", URIS_TAGS[i])
+                        .tag("unique", UNIQUE_TAGS[j])
+                        .publishPercentileHistogram()
+                        .register(meterRegistry);
+            }
+        }
+        this.timeSeriesTimer = Timer.builder("stats.query.timeseries")
+                .description("Время запроса просмотров по интервалам")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rowsSummary = DistributionSummary.builder("stats.query.rows")
+                .description("Количество строк в ответе GET /stats и GET /stats/timeseries")
+                .baseUnit("rows")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.windowSummary = DistributionSummary.builder("stats.query.window")
+                .description("Ширина запрошенного периода")
+                .baseUnit("seconds")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
     @Override
     public void create(EndpointHit endpointHit) {
-        jpaStatRepository.save(StatMapper.endpointHitToStatMapper(endpointHit));
+        write(List.of(StatMapper.endpointHitToStatMapper(endpointHit)));
     }
 
     @Override
-    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
-        if (start.isAfter(end) || start.equals(end) || start.isAfter(LocalDateTime.now())) {
+    public void createAll(List<EndpointHit> endpointHits) {
+        write(endpointHits.stream()
+                .map(StatMapper::endpointHitToStatMapper)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public void createStats(List<Stat> stats) {
+        write(stats);
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                    boolean approximate, int offset, int limit) {
+        validatePeriod(start, end);
+        windowSummary.record(Duration.between(start, end).getSeconds());
+
+        Timer queryTimer = queryTimers[queryIndex(uris, unique, approximate)];
+        List<ViewStats> result = statsCache.get(start, end, uris, unique, approximate, offset, limit,
+                () -> queryTimer.record(
+                        () -> statStorage.getStats(start, end, uris, unique, approximate, offset, limit)));
+        rowsSummary.record(result.size());
+        return result;
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            boolean approximate, int offset, int limit, Consumer<ViewStats> consumer) {
+        validatePeriod(start, end);
+        windowSummary.record(Duration.between(start, end).getSeconds());
+
+        int[] rows = new int[1];
+        queryTimers[queryIndex(uris, unique, approximate)].record(() ->
+                statStorage.streamStats(start, end, uris, unique, approximate, offset, limit, viewStats -> {
+                    rows[0]++;
+                    consumer.accept(viewStats);
+                }));
+        rowsSummary.record(rows[0]);
+    }
+
+    @Override
+    public List<ViewStatsBucket> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                               boolean unique, boolean approximate, RollupGranularity granularity) {
+        if (start.isAfter(end) || start.isAfter(LocalDateTime.now())) {
             throw new InvalidTimePeriodException("некорректный временной период");
         }
+        if (granularity.bucketsBetween(start, end) > MAX_TIME_SERIES_BUCKETS) {
+            throw new InvalidTimePeriodException("период содержит больше " + MAX_TIME_SERIES_BUCKETS + " интервалов");
+        }
+        windowSummary.record(Duration.between(start, end).getSeconds());
 
-        if (!uris.isEmpty()) {
-            if (unique) {
-                return jpaStatRepository.getStatsByUriAndUniqueIp(
-                        start, end, uris).orElse(List.of());
-            } else {
-                return jpaStatRepository.getStatsByUriAndNotUniqueIp(
-                        start, end, uris).orElse(List.of());
-            }
-        } else {
-            if (unique) {
-                return jpaStatRepository.getStatsByWithoutUriAndUniqueIp(
-                        start, end).orElse(List.of());
-            } else {
-                return jpaStatRepository.getStatsByWithoutUriAndNotUniqueIp(
-                        start, end).orElse(List.of());
-            }
+        List<ViewStatsBucket> result = timeSeriesTimer.record(
+                () -> statStorage.getTimeSeries(start, end, uris, unique, approximate, granularity));
+        rowsSummary.record(result.size());
+        return result;
+    }
+
+    @Override
+    public void exportHits(LocalDateTime start, LocalDateTime end, Consumer<Stat> consumer) {
+        if (start.isAfter(end)) {
+            throw new InvalidTimePeriodException("некорректный временной период");
+        }
+
+        long[] count = new long[1];
+        try {
+            statStorage.exportHits(start, end, stat -> {
+                count[0]++;
+                consumer.accept(stat);
+            });
+        } finally {
+            exportedCounter.increment(count[0]);
         }
     }
+
+    private static int queryIndex(List<String> uris, boolean unique, boolean approximate) {
+        int urisIndex = uris.isEmpty() ? 0 : 1;
+        int uniqueIndex = !unique ? 0 : approximate ? 2 : 1;
+        return urisIndex * UNIQUE_TAGS.length + uniqueIndex;
+    }
+
+    private void validatePeriod(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end) || start.equals(end) || start.isAfter(LocalDateTime.now())) {
+            throw new InvalidTimePeriodException("некорректный временной период");
+        }
+    }
+
+    private void write(List<Stat> stats) {
+        // кэш и подписки уведомляет сам StatWriter после того, как посещения стали видны запросам: при отложенной
+        // записи сброс до записи пачки позволил бы закэшировать устаревший ответ на весь closed-window-ttl
+        writeTimer.record(() -> statWriter.write(stats));
+        ingestedCounter.increment(stats.size());
+    }
 }
@@ -0,0 +1,214 @@
+package ru.practicum.ewm.stats.statsserver.sketch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog-оценка количества уникальных строк. Скетч занимает 2^precision байт,
+ * относительная стандартная ошибка оценки 1.04 / sqrt(2^precision): 1.6% при precision=12.
+ * Скетчи с одинаковой точностью объединяются поэлементным максимумом регистров. Скетч с большей точностью
+ * перед объединением сворачивается до меньшей без потерь относительно скетча, сразу построенного с меньшей
+ * точностью: так скетчи, сохранённые до изменения stats-server.hll.precision, продолжают объединяться с новыми.
+ * <p>
+ * {@link #toBytes()} выбирает более короткий из двух форматов. Плотный - 2^precision байт регистров.
+ * Разреженный - байт 0x80 | precision, затем по 3 байта на ненулевой регистр: номер (2 байта) и значение.
+ * Регистр не больше 61, поэтому первый байт плотного формата неотрицателен и форматы не путаются.
+ */
+public final class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private static final int SPARSE_MARKER = 0x80;
+    private static final int SPARSE_ENTRY_BYTES = 3;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private int precision;
+    private byte[] registers;
+
+    private HyperLogLog(int precision, byte[] registers) {
+        this.precision = precision;
+        this.registers = registers;
+    }
+
+    public static HyperLogLog empty(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("точность HyperLogLog должна быть от " + MIN_PRECISION +
+                    " до " + MAX_PRECISION + ": " + precision);
+        }
+        return new HyperLogLog(precision, new byte[1 << precision]);
+    }
+
+    public static HyperLogLog fromBytes(byte[] registers) {
+        if (registers.length > 0 && registers[0] < 0) {
+            return fromSparseBytes(registers);
+        }
+        int precision = Integer.numberOfTrailingZeros(registers.length);
+        if (registers.length != 1 << precision || precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("некорректный размер скетча HyperLogLog: " + registers.length);
+        }
+        return new HyperLogLog(precision, registers.clone());
+    }
+
+    private static HyperLogLog fromSparseBytes(byte[] bytes) {
+        HyperLogLog sketch = empty(bytes[0] & ~SPARSE_MARKER & 0xff);
+        if ((bytes.length - 1) % SPARSE_ENTRY_BYTES != 0) {
+            throw new IllegalArgumentException("некорректный размер разреженного скетча HyperLogLog: " + bytes.length);
+        }
+        for (int i = 1; i < bytes.length; i += SPARSE_ENTRY_BYTES) {
+            int index = (bytes[i] & 0xff) << 8 | bytes[i + 1] & 0xff;
+            if (index >= sketch.registers.length) {
+                throw new IllegalArgumentException("некорректный номер регистра HyperLogLog: " + index);
+            }
+            sketch.registers[index] = bytes[i + 2];
+        }
+        return sketch;
+    }
+
+    public static double relativeError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    public void add(String value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (Long.SIZE - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), Long.SIZE - precision) + 1;
+        if (registers[index] < rank) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Объединяет other с этим скетчем; при разной точности результат получает меньшую из двух.
+     */
+    public void merge(HyperLogLog other) {
+        byte[] otherRegisters = other.registers;
+        if (other.precision < precision) {
+            registers = fold(registers, precision, other.precision);
+            precision = other.precision;
+        } else if (other.precision > precision) {
+            otherRegisters = fold(otherRegisters, other.precision, precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < otherRegisters[i]) {
+                registers[i] = otherRegisters[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public byte[] toBytes() {
+        int nonZero = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                nonZero++;
+            }
+        }
+        if (1 + nonZero * SPARSE_ENTRY_BYTES >= registers.length) {
+            return registers.clone();
+        }
+
+        byte[] bytes = new byte[1 + nonZero * SPARSE_ENTRY_BYTES];
+        bytes[0] = (byte) (SPARSE_MARKER | precision);
+        int offset = 1;
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] != 0) {
+                bytes[offset] = (byte) (i >>> 8);
+                bytes[offset + 1] = (byte) i;
+                bytes[offset + 2] = registers[i];
+                offset += SPARSE_ENTRY_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return Arrays.equals(registers, ((HyperLogLog) o).registers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registers);
+    }
+
+    /**
+     * Регистры скетча точности precision, пересчитанные для точности lower: младшие биты номера регистра становятся
+     * старшими битами остатка хэша, по которому считается ранг.
+     */
+    private static byte[] fold(byte[] registers, int precision, int lower) {
+        int shift = precision - lower;
+        byte[] folded = new byte[1 << lower];
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] == 0) {
+                continue;
+            }
+            int dropped = i & ((1 << shift) - 1);
+            int rank = dropped == 0
+                    ? registers[i] + shift
+                    : Integer.numberOfLeadingZeros(dropped) - (Integer.SIZE - shift) + 1;
+            int index = i >>> shift;
+            if (folded[index] < rank) {
+                folded[index] = (byte) rank;
+            }
+        }
+        return folded;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    private static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+
+        // перемешивание fmix64 из MurmurHash3, чтобы старшие биты зависели от всех байтов строки
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
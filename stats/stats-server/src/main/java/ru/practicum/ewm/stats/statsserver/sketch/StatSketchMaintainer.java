@@ -0,0 +1,72 @@
+package ru.practicum.ewm.stats.statsserver.sketch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.stats.statsserver.cache.StatsCache;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.StatSketchRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пересчёт скетчей по отметкам stat_sketch_pending раз в rebuild-interval-ms, пачками по rebuild-batch-size
+ * отметок. Ответы approximate=true отстают от записи посещений на этот срок; закэшированные ответы,
+ * захватывающие пересчитанные минуты, сбрасываются после фиксации пересчёта.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.hll.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class StatSketchMaintainer {
+    private final StatSketchRepository statSketchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StatsCache statsCache;
+    private final int batchSize;
+    private final Counter rebuiltCounter;
+
+    public StatSketchMaintainer(StatSketchRepository statSketchRepository,
+                                TransactionTemplate transactionTemplate,
+                                StatsCache statsCache,
+                                MeterRegistry meterRegistry,
+                                @Value("${stats-server.hll.rebuild-batch-size:10000}") int batchSize) {
+        this.statSketchRepository = statSketchRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.statsCache = statsCache;
+        this.batchSize = batchSize;
+        this.rebuiltCounter = Counter.builder("stats.sketch.rebuilt")
+                .description("Минуты, скетчи которых пересчитаны по сырым записям")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${stats-server.hll.rebuild-interval-ms:1000}")
+    public void rebuild() {
+        try {
+            int processed;
+            do {
+                processed = rebuildBatch();
+            } while (processed == batchSize);
+        } catch (DataAccessException e) {
+            log.warn("Не удалось пересчитать скетчи уникальных ip, повтор через интервал", e);
+        }
+    }
+
+    private int rebuildBatch() {
+        // минута пересчёта как посещение: сбрасывает закэшированные периоды, в которые она попадает
+        List<Stat> rebuilt = new ArrayList<>();
+        Integer processed = transactionTemplate.execute(status -> statSketchRepository.rebuildPending(batchSize,
+                (bucket, app, uri, sketch) -> rebuilt.add(new Stat(null, app, uri, null, bucket))));
+        statsCache.invalidate(rebuilt);
+        rebuiltCounter.increment(rebuilt.size());
+        if (!rebuilt.isEmpty()) {
+            log.debug("Пересчитаны скетчи минут {}, отметок {}", rebuilt.size(), processed);
+        }
+        return processed == null ? 0 : processed;
+    }
+}
@@ -0,0 +1,107 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Упаковка ip в 128 бит (старшие и младшие 64). IPv4 хранится как IPv4-mapped IPv6 (::ffff:a.b.c.d).
+ * Строка с ':' разбирается как литерал IPv6, без обращения к DNS.
+ */
+public final class IpAddresses {
+    /**
+     * Префикс 0100::/64 (RFC 6666, discard-only) для строк, не являющихся ip: младшие 64 бита
+     * занимает номер строки в отдельном словаре.
+     */
+    public static final long NON_IP_HIGH = 0x0100_0000_0000_0000L;
+
+    private static final long IPV4_MAPPED_LOW = 0xffff_0000_0000L;
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Записывает ip в out[0] (старшие 64 бита) и out[1] (младшие), возвращает false, если строка не ip.
+     */
+    public static boolean pack(String ip, long[] out) {
+        long ipv4 = parseIpv4(ip);
+        if (ipv4 >= 0) {
+            out[0] = 0;
+            out[1] = IPV4_MAPPED_LOW | ipv4;
+            return true;
+        }
+
+        if (ip.indexOf(':') < 0) {
+            return false;
+        }
+        byte[] bytes;
+        try {
+            bytes = InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+        // литерал ::ffff:a.b.c.d InetAddress возвращает как IPv4
+        if (bytes.length == 4) {
+            out[0] = 0;
+            out[1] = IPV4_MAPPED_LOW | toLong(bytes, 0, 4);
+            return true;
+        }
+        out[0] = toLong(bytes, 0, 8);
+        out[1] = toLong(bytes, 8, 8);
+        return true;
+    }
+
+    /**
+     * Строковая запись упакованного ip: IPv4-mapped адрес как a.b.c.d, остальные в полной форме IPv6.
+     * Для префикса {@link #NON_IP_HIGH} строку нужно брать из словаря.
+     */
+    public static String format(long high, long low) {
+        if (high == 0 && (low & ~0xffff_ffffL) == IPV4_MAPPED_LOW) {
+            return ((low >>> 24) & 0xff) + "." + ((low >>> 16) & 0xff) + "." +
+                    ((low >>> 8) & 0xff) + "." + (low & 0xff);
+        }
+
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (low >>> (56 - 8 * i));
+        }
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long parseIpv4(String ip) {
+        long result = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet < 0 ? c - '0' : octet * 10 + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && octets < 3) {
+                result = result << 8 | octet;
+                octets++;
+                octet = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (octets != 3 || octet < 0) {
+            return -1;
+        }
+        return result << 8 | octet;
+    }
+
+    private static long toLong(byte[] bytes, int offset, int length) {
+        long result = 0;
+        for (int i = offset; i < offset + length; i++) {
+            result = result << 8 | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+}
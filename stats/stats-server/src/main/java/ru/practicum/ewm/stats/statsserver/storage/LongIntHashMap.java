@@ -0,0 +1,85 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import java.util.Arrays;
+
+/**
+ * Счётчики по long-ключу с открытой адресацией (линейное пробирование), без упаковки в объекты.
+ * Long.MIN_VALUE зарезервирован под пустую ячейку.
+ */
+public final class LongIntHashMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap() {
+        keys = new long[64];
+        values = new int[64];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public void increment(long key) {
+        add(key, 1);
+    }
+
+    public void add(long key, int delta) {
+        int slot = slot(keys, key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                resize();
+                slot = slot(keys, key);
+            }
+        }
+        values[slot] += delta;
+    }
+
+    public void forEach(Consumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static int slot(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, int value);
+    }
+}
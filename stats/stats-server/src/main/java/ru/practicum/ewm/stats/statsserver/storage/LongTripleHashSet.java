@@ -0,0 +1,71 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+/**
+ * Множество троек long (группа app/uri и 128-битный ip) с открытой адресацией для подсчёта уникальных ip.
+ */
+public final class LongTripleHashSet {
+    private long[] first;
+    private long[] second;
+    private long[] third;
+    private boolean[] used;
+    private int size;
+
+    public LongTripleHashSet() {
+        allocate(64);
+    }
+
+    /**
+     * Добавляет тройку, возвращает true, если её ещё не было.
+     */
+    public boolean add(long a, long b, long c) {
+        int slot = slot(a, b, c);
+        if (used[slot]) {
+            return false;
+        }
+        used[slot] = true;
+        first[slot] = a;
+        second[slot] = b;
+        third[slot] = c;
+        if (++size * 2 > used.length) {
+            resize();
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long a, long b, long c) {
+        int mask = used.length - 1;
+        int slot = LongIntHashMap.hash(a * 31 * 31 + b * 31 + c) & mask;
+        while (used[slot] && (first[slot] != a || second[slot] != b || third[slot] != c)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        first = new long[capacity];
+        second = new long[capacity];
+        third = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    private void resize() {
+        long[] oldFirst = first;
+        long[] oldSecond = second;
+        long[] oldThird = third;
+        boolean[] oldUsed = used;
+        allocate(oldUsed.length * 2);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldFirst[i], oldSecond[i], oldThird[i]);
+                used[slot] = true;
+                first[slot] = oldFirst[i];
+                second[slot] = oldSecond[i];
+                third[slot] = oldThird[i];
+            }
+        }
+    }
+}
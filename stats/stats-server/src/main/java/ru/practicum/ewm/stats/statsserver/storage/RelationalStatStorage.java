@@ -0,0 +1,192 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.HitRange;
+import ru.practicum.ewm.stats.statsserver.repository.JdbcStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.JpaStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.OffsetLimitRequest;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+import ru.practicum.ewm.stats.statsserver.repository.StatRollupRepository;
+import ru.practicum.ewm.stats.statsserver.repository.StatSketchRepository;
+import ru.practicum.ewm.stats.statsserver.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Component
+@ConditionalOnProperty(name = "stats-server.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class RelationalStatStorage implements StatStorage {
+    private static final RollupGranularity[] ROLLUPS_COARSEST_FIRST = {
+            RollupGranularity.DAY, RollupGranularity.HOUR, RollupGranularity.MINUTE
+    };
+
+    private final JpaStatRepository jpaStatRepository;
+    private final JdbcStatRepository jdbcStatRepository;
+    private final StatRollupRepository statRollupRepository;
+    private final StatSketchRepository statSketchRepository;
+
+    @Override
+    @Transactional
+    public void saveAll(List<Stat> stats) {
+        jdbcStatRepository.saveAll(stats);
+        statRollupRepository.addAll(stats);
+        statSketchRepository.addAll(stats);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                    boolean approximate) {
+        return getStats(start, end, uris, unique, approximate, 0, 0);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                    boolean approximate, int offset, int limit) {
+        List<ViewStats> result = new ArrayList<>();
+        streamStats(start, end, uris, unique, approximate, offset, limit, result::add);
+        return result;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            boolean approximate, int offset, int limit, Consumer<ViewStats> consumer) {
+        if (unique && approximate && statSketchRepository.isEnabled()) {
+            TopHits.page(getApproximateUniqueStats(start, end, uris), offset, limit).forEach(consumer);
+        } else if (unique) {
+            Pageable pageable = OffsetLimitRequest.of(offset, limit);
+            try (Stream<ViewStats> viewStats = uris.isEmpty()
+                    ? jpaStatRepository.getStatsByWithoutUriAndUniqueIp(start, end, pageable)
+                    : jpaStatRepository.getStatsByUriAndUniqueIp(start, end, uris, pageable)) {
+                viewStats.forEach(consumer);
+            }
+        } else {
+            statRollupRepository.sumHits(splitRange(start, end), uris, offset, limit, consumer);
+        }
+    }
+
+    /**
+     * Без транзакции: страницы читаются отдельными запросами, см. {@link JdbcStatRepository#forEachHit}.
+     */
+    @Override
+    public void exportHits(LocalDateTime start, LocalDateTime end, Consumer<Stat> consumer) {
+        jdbcStatRepository.forEachHit(start, end, consumer);
+    }
+
+    /**
+     * Один запрос к таблице интервалов granularity: неуникальные просмотры - из агрегатов,
+     * приближённые уникальные - из скетчей без объединения, точные уникальные - по сырым записям.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStatsBucket> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                               boolean unique, boolean approximate, RollupGranularity granularity) {
+        LocalDateTime from = granularity.floor(start);
+        LocalDateTime to = granularity.next(granularity.floor(end));
+        List<ViewStatsBucket> result = new ArrayList<>();
+        if (!unique) {
+            statRollupRepository.forEachBucket(granularity, from, to, uris, result::add);
+        } else if (approximate && statSketchRepository.isEnabled()) {
+            statSketchRepository.forEachBucketSketch(granularity, from, to, uris, (bucket, app, uri, sketch) ->
+                    result.add(new ViewStatsBucket(app, uri, StatMapper.formatTimestamp(bucket),
+                            (int) Math.min(sketch.estimate(), Integer.MAX_VALUE))));
+        } else {
+            jdbcStatRepository.countUniqueByBucket(granularity, from, to, uris, result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Части периода [start, end] для неуникальных просмотров: целые сутки, часы и минуты внутри периода
+     * берутся из агрегатов, сырые записи читаются только для неполных минут по краям.
+     */
+    private List<HitRange> splitRange(LocalDateTime start, LocalDateTime end) {
+        List<HitRange> ranges = new ArrayList<>();
+        splitRange(start, end, true, 0, new RangeVisitor() {
+            @Override
+            public void buckets(RollupGranularity granularity, LocalDateTime from, LocalDateTime to) {
+                ranges.add(new HitRange(granularity, from, to, false));
+            }
+
+            @Override
+            public void raw(LocalDateTime from, LocalDateTime to, boolean toInclusive) {
+                ranges.add(new HitRange(null, from, to, toInclusive));
+            }
+        });
+        return ranges;
+    }
+
+    /**
+     * Оценка уникальных ip за [start, end] объединением HyperLogLog-скетчей тех же интервалов,
+     * что и в {@link #splitRange}; для неполных минут по краям скетч строится по сырым записям.
+     */
+    private List<ViewStats> getApproximateUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<List<String>, HyperLogLog> merged = new LinkedHashMap<>();
+        splitRange(start, end, true, 0, new RangeVisitor() {
+            @Override
+            public void buckets(RollupGranularity granularity, LocalDateTime from, LocalDateTime to) {
+                statSketchRepository.forEachSketch(granularity, from, to, uris, (app, uri, sketch) ->
+                        merged.computeIfAbsent(List.of(app, uri), key -> statSketchRepository.emptySketch())
+                                .merge(sketch));
+            }
+
+            @Override
+            public void raw(LocalDateTime from, LocalDateTime to, boolean toInclusive) {
+                jdbcStatRepository.forEachIp(from, to, toInclusive, uris, (app, uri, ip) ->
+                        merged.computeIfAbsent(List.of(app, uri), key -> statSketchRepository.emptySketch())
+                                .add(ip));
+            }
+        });
+
+        List<ViewStats> result = new ArrayList<>(merged.size());
+        merged.forEach((key, sketch) -> result.add(
+                new ViewStats(key.get(0), key.get(1), (int) Math.min(sketch.estimate(), Integer.MAX_VALUE))));
+        return result;
+    }
+
+    private void splitRange(LocalDateTime from, LocalDateTime to, boolean toInclusive, int level,
+                            RangeVisitor visitor) {
+        if (from.isAfter(to) || (from.equals(to) && !toInclusive)) {
+            return;
+        }
+
+        if (level == ROLLUPS_COARSEST_FIRST.length) {
+            visitor.raw(from, to, toInclusive);
+            return;
+        }
+
+        RollupGranularity granularity = ROLLUPS_COARSEST_FIRST[level];
+        LocalDateTime bucketsFrom = granularity.ceil(from);
+        LocalDateTime bucketsTo = granularity.floor(to);
+        if (!bucketsFrom.isBefore(bucketsTo)) {
+            splitRange(from, to, toInclusive, level + 1, visitor);
+            return;
+        }
+
+        visitor.buckets(granularity, bucketsFrom, bucketsTo);
+        splitRange(from, bucketsFrom, false, level + 1, visitor);
+        splitRange(bucketsTo, to, toInclusive, level + 1, visitor);
+    }
+
+    private interface RangeVisitor {
+        void buckets(RollupGranularity granularity, LocalDateTime from, LocalDateTime to);
+
+        void raw(LocalDateTime from, LocalDateTime to, boolean toInclusive);
+    }
+}
@@ -0,0 +1,67 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.exception.UnsupportedStorageOperationException;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface StatStorage {
+    void saveAll(List<Stat> stats);
+
+    default List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                     boolean approximate) {
+        return getStats(start, end, uris, unique, approximate, 0, 0);
+    }
+
+    /**
+     * Просмотры в порядке {@link TopHits#ORDER}, начиная с offset, не больше limit (0 - без ограничения).
+     */
+    List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             boolean approximate, int offset, int limit);
+
+    /**
+     * То же, что getStats, но строки передаются consumer по мере получения, без сборки всего ответа,
+     * если хранилище это умеет.
+     */
+    default void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             boolean approximate, int offset, int limit, Consumer<ViewStats> consumer) {
+        getStats(start, end, uris, unique, approximate, offset, limit).forEach(consumer);
+    }
+
+    /**
+     * Сырые посещения за [start, end] в порядке времени для выгрузки; память не должна зависеть от их количества.
+     */
+    default void exportHits(LocalDateTime start, LocalDateTime end, Consumer<Stat> consumer) {
+        throw new UnsupportedStorageOperationException("хранилище не поддерживает выгрузку посещений");
+    }
+
+    /**
+     * Просмотры по интервалам granularity, выровненным по началу минуты, часа или суток: от интервала,
+     * содержащего start, до интервала, содержащего end, крайние интервалы считаются целиком. Порядок -
+     * по интервалу, затем по app и uri. Реализация по умолчанию запрашивает getStats по каждому интервалу.
+     */
+    default List<ViewStatsBucket> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                boolean unique, boolean approximate, RollupGranularity granularity) {
+        List<ViewStatsBucket> result = new ArrayList<>();
+        for (LocalDateTime bucket = granularity.floor(start); !bucket.isAfter(end); bucket = granularity.next(bucket)) {
+            // время хранится с точностью до секунды, поэтому конец интервала включительно - за секунду до следующего
+            List<ViewStats> viewStats = new ArrayList<>(getStats(bucket, granularity.next(bucket).minusSeconds(1),
+                    uris, unique, approximate));
+            viewStats.sort(Comparator.comparing(ViewStats::getApp).thenComparing(ViewStats::getUri));
+            String bucketTimestamp = StatMapper.formatTimestamp(bucket);
+            for (ViewStats current : viewStats) {
+                result.add(new ViewStatsBucket(current.getApp(), current.getUri(), bucketTimestamp,
+                        current.getHits()));
+            }
+        }
+        return result;
+    }
+}
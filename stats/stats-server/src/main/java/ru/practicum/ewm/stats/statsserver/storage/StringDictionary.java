@@ -0,0 +1,62 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Словарь строк: каждой строке при первом появлении выдаётся следующий номер, в колонках хранятся номера.
+ */
+public final class StringDictionary {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    public int intern(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    public int find(String value) {
+        return ids.getOrDefault(value, -1);
+    }
+
+    public String get(int id) {
+        return values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public List<String> values() {
+        return new ArrayList<>(values);
+    }
+
+    public static void write(List<String> values, DataOutput out) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public void read(DataInput in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            intern(new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+}
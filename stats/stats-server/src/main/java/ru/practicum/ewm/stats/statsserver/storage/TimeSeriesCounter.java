@@ -0,0 +1,102 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Счётчики временного ряда за один проход по посещениям: номер интервала вычисляется из времени посещения,
+ * у каждого интервала свои счётчики по группе (app << 32 | uri) и, для уникальных, своё множество ip.
+ * Счётчики интервала создаются при первом посещении в нём.
+ */
+public final class TimeSeriesCounter {
+    private final LocalDateTime first;
+    private final RollupGranularity granularity;
+    private final long from;
+    private final long to;
+    private final long bucketSeconds;
+    private final LongIntHashMap[] hits;
+    private final LongTripleHashSet[] seen;
+
+    public TimeSeriesCounter(LocalDateTime start, LocalDateTime end, RollupGranularity granularity, boolean unique) {
+        int buckets = Math.toIntExact(granularity.bucketsBetween(start, end));
+        this.first = granularity.floor(start);
+        this.granularity = granularity;
+        this.bucketSeconds = granularity.seconds();
+        this.from = first.toEpochSecond(ZoneOffset.UTC);
+        this.to = from + buckets * bucketSeconds - 1;
+        this.hits = new LongIntHashMap[buckets];
+        this.seen = unique ? new LongTripleHashSet[buckets] : null;
+    }
+
+    /**
+     * Начало первого интервала в секундах эпохи UTC.
+     */
+    public long from() {
+        return from;
+    }
+
+    /**
+     * Последняя секунда последнего интервала, включительно.
+     */
+    public long to() {
+        return to;
+    }
+
+    /**
+     * Посещение в секунду timestamp из [from(), to()]; ip учитывается только для уникальных.
+     */
+    public void add(long timestamp, long group, long ipHigh, long ipLow) {
+        int bucket = (int) ((timestamp - from) / bucketSeconds);
+        if (seen != null) {
+            if (seen[bucket] == null) {
+                seen[bucket] = new LongTripleHashSet();
+            }
+            if (!seen[bucket].add(group, ipHigh, ipLow)) {
+                return;
+            }
+        }
+        bucketHits(bucket).increment(group);
+    }
+
+    /**
+     * Уже посчитанные просмотры интервала, содержащего timestamp, например из агрегатов базы.
+     */
+    public void add(long timestamp, long group, int count) {
+        bucketHits((int) ((timestamp - from) / bucketSeconds)).add(group, count);
+    }
+
+    /**
+     * Интервалы по порядку, внутри интервала - по app и uri.
+     */
+    public List<ViewStatsBucket> toBuckets(IntFunction<String> apps, IntFunction<String> uris) {
+        List<ViewStatsBucket> result = new ArrayList<>();
+        LocalDateTime bucket = first;
+        for (LongIntHashMap bucketHits : hits) {
+            if (bucketHits != null) {
+                String timestamp = StatMapper.formatTimestamp(bucket);
+                List<ViewStatsBucket> rows = new ArrayList<>(bucketHits.size());
+                bucketHits.forEach((group, count) -> rows.add(new ViewStatsBucket(apps.apply((int) (group >>> 32)),
+                        uris.apply((int) group), timestamp, count)));
+                rows.sort(Comparator.comparing(ViewStatsBucket::getApp).thenComparing(ViewStatsBucket::getUri));
+                result.addAll(rows);
+            }
+            bucket = granularity.next(bucket);
+        }
+        return result;
+    }
+
+    private LongIntHashMap bucketHits(int bucket) {
+        if (hits[bucket] == null) {
+            hits[bucket] = new LongIntHashMap();
+        }
+        return hits[bucket];
+    }
+}
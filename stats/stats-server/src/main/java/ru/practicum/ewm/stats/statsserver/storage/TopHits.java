@@ -0,0 +1,51 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Порядок ответа GET /stats - по убыванию hits, при равенстве по app и uri, чтобы страницы
+ * offset/limit не пересекались, - и выбор страницы из посчитанных в памяти просмотров.
+ */
+public final class TopHits {
+    public static final Comparator<ViewStats> ORDER = Comparator.comparingInt(ViewStats::getHits).reversed()
+            .thenComparing(ViewStats::getApp)
+            .thenComparing(ViewStats::getUri);
+
+    private TopHits() {
+    }
+
+    /**
+     * Страница [offset, offset + limit) в порядке ORDER. При limit > 0 хранится не больше offset + limit
+     * элементов, полная сортировка не нужна.
+     *
+     * @param limit 0 - без ограничения
+     */
+    public static List<ViewStats> page(Collection<ViewStats> viewStats, int offset, int limit) {
+        long size = limit > 0 ? (long) offset + limit : Long.MAX_VALUE;
+        List<ViewStats> sorted;
+        if (size < viewStats.size()) {
+            PriorityQueue<ViewStats> top = new PriorityQueue<>((int) size + 1, ORDER.reversed());
+            for (ViewStats current : viewStats) {
+                top.add(current);
+                if (top.size() > size) {
+                    top.poll();
+                }
+            }
+            sorted = new ArrayList<>(top);
+        } else {
+            sorted = new ArrayList<>(viewStats);
+        }
+        sorted.sort(ORDER);
+
+        if (offset >= sorted.size()) {
+            return new ArrayList<>();
+        }
+        return offset == 0 ? sorted : new ArrayList<>(sorted.subList(offset, sorted.size()));
+    }
+}
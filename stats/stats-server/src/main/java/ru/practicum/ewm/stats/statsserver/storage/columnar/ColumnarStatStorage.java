@@ -0,0 +1,450 @@
+package ru.practicum.ewm.stats.statsserver.storage.columnar;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+import ru.practicum.ewm.stats.statsserver.storage.IpAddresses;
+import ru.practicum.ewm.stats.statsserver.storage.LongIntHashMap;
+import ru.practicum.ewm.stats.statsserver.storage.LongTripleHashSet;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+import ru.practicum.ewm.stats.statsserver.storage.StringDictionary;
+import ru.practicum.ewm.stats.statsserver.storage.TimeSeriesCounter;
+import ru.practicum.ewm.stats.statsserver.storage.TopHits;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище посещений в памяти по колонкам: app и uri заменяются номерами из словарей, ip упаковывается
+ * в 128 бит, время хранится в секундах эпохи. Посещения дописываются в открытый сегмент, заполненные
+ * сегменты сортируются по времени, поэтому период находится двоичным поиском. Подсчёт идёт хэш-таблицами
+ * с открытой адресацией; уникальные ip считаются точно, в том числе при approximate=true.
+ * Содержимое периодически сохраняется в снимок на диске и загружается из него при старте.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.storage", havingValue = "columnar")
+@Slf4j
+public class ColumnarStatStorage implements StatStorage, MeterBinder {
+    private static final int SNAPSHOT_MAGIC = 0x45574d43;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Path snapshotPath;
+    private final int segmentSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final StringDictionary apps = new StringDictionary();
+    private final StringDictionary uris = new StringDictionary();
+    private final StringDictionary nonIpAddresses = new StringDictionary();
+    private final List<HitSegment> sealed = new ArrayList<>();
+    private HitSegment active;
+    private long version;
+    private volatile long snapshotVersion;
+
+    public ColumnarStatStorage(@Value("${stats-server.columnar.snapshot-path:}") String snapshotPath,
+                               @Value("${stats-server.columnar.segment-size:65536}") int segmentSize) {
+        this.snapshotPath = snapshotPath.isBlank() ? null : Paths.get(snapshotPath);
+        this.segmentSize = Math.max(1, Math.min(segmentSize, HitSegment.MAX_CAPACITY));
+        this.active = new HitSegment(this.segmentSize);
+    }
+
+    @Override
+    public void saveAll(List<Stat> stats) {
+        long[] ip = new long[2];
+        lock.writeLock().lock();
+        try {
+            for (Stat stat : stats) {
+                if (!IpAddresses.pack(stat.getIp(), ip)) {
+                    ip[0] = IpAddresses.NON_IP_HIGH;
+                    ip[1] = nonIpAddresses.intern(stat.getIp());
+                }
+                active.append(apps.intern(stat.getApp()), uris.intern(stat.getUri()), ip[0], ip[1],
+                        toEpochSecond(stat.getTimestamp()));
+                if (active.isFull()) {
+                    active.seal();
+                    sealed.add(active);
+                    active = new HitSegment(segmentSize);
+                }
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stats.columnar.hits", this, ColumnarStatStorage::hitCount)
+                .description("Количество посещений в памяти")
+                .register(registry);
+        Gauge.builder("stats.columnar.segments", this, ColumnarStatStorage::segmentCount)
+                .register(registry);
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uriList, boolean unique,
+                                    boolean approximate, int offset, int limit) {
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end);
+        List<ViewStats> result;
+
+        lock.readLock().lock();
+        try {
+            boolean[] uriFilter = uriFilter(uriList);
+            if (uriFilter != null && uriFilter.length == 0) {
+                return List.of();
+            }
+
+            LongIntHashMap hits = new LongIntHashMap();
+            LongTripleHashSet seen = unique ? new LongTripleHashSet() : null;
+            for (HitSegment segment : sealed) {
+                scan(segment, from, to, uriFilter, hits, seen);
+            }
+            scan(active, from, to, uriFilter, hits, seen);
+
+            List<ViewStats> viewStats = new ArrayList<>(hits.size());
+            hits.forEach((group, count) -> viewStats.add(
+                    new ViewStats(apps.get((int) (group >>> 32)), uris.get((int) group), count)));
+            result = viewStats;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return TopHits.page(result, offset, limit);
+    }
+
+    /**
+     * Запечатанные сегменты не меняются, поэтому под блокировкой берутся только их список, копия открытого
+     * сегмента и словари; выгрузка идёт без блокировки слиянием сегментов, каждый из которых упорядочен по времени.
+     */
+    @Override
+    public void exportHits(LocalDateTime start, LocalDateTime end, Consumer<Stat> consumer) {
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end);
+        List<HitSegment> segments;
+        HitSegment activeCopy;
+        List<String> appValues;
+        List<String> uriValues;
+        List<String> nonIpValues;
+        lock.readLock().lock();
+        try {
+            segments = new ArrayList<>(sealed);
+            activeCopy = active.copy();
+            appValues = apps.values();
+            uriValues = uris.values();
+            nonIpValues = nonIpAddresses.values();
+        } finally {
+            lock.readLock().unlock();
+        }
+        activeCopy.seal();
+        segments.add(activeCopy);
+
+        PriorityQueue<SegmentCursor> cursors = new PriorityQueue<>(
+                Comparator.comparingLong(SegmentCursor::timestamp));
+        for (HitSegment segment : segments) {
+            SegmentCursor cursor = new SegmentCursor(segment, segment.lowerBound(from), segment.lowerBound(to + 1));
+            if (cursor.row < cursor.end) {
+                cursors.add(cursor);
+            }
+        }
+
+        SegmentCursor cursor;
+        while ((cursor = cursors.poll()) != null) {
+            HitSegment segment = cursor.segment;
+            int row = cursor.row;
+            String ip = segment.ipHigh[row] == IpAddresses.NON_IP_HIGH
+                    ? nonIpValues.get((int) segment.ipLow[row])
+                    : IpAddresses.format(segment.ipHigh[row], segment.ipLow[row]);
+            consumer.accept(new Stat(null, appValues.get(segment.apps[row]), uriValues.get(segment.uris[row]), ip,
+                    LocalDateTime.ofEpochSecond(segment.timestamps[row], 0, ZoneOffset.UTC)));
+            if (++cursor.row < cursor.end) {
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * Все интервалы ряда считаются за один проход по сегментам, а не отдельным getStats на каждый интервал.
+     */
+    @Override
+    public List<ViewStatsBucket> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uriList,
+                                               boolean unique, boolean approximate, RollupGranularity granularity) {
+        TimeSeriesCounter counter = new TimeSeriesCounter(start, end, granularity, unique);
+        lock.readLock().lock();
+        try {
+            boolean[] uriFilter = uriFilter(uriList);
+            if (uriFilter != null && uriFilter.length == 0) {
+                return List.of();
+            }
+
+            for (HitSegment segment : sealed) {
+                scan(segment, uriFilter, counter);
+            }
+            scan(active, uriFilter, counter);
+            return counter.toBuckets(apps::get, uris::get);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PostConstruct
+    public void load() {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) {
+            return;
+        }
+
+        long hits = 0;
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("неизвестный формат снимка");
+            }
+            apps.read(in);
+            uris.read(in);
+            nonIpAddresses.read(in);
+            int segments = in.readInt();
+            for (int i = 0; i < segments; i++) {
+                HitSegment segment = HitSegment.read(in, segmentSize);
+                hits += segment.size;
+                if (segment.sorted) {
+                    sealed.add(segment);
+                } else {
+                    active = segment;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("не удалось загрузить снимок хранилища " + snapshotPath, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Загружен снимок хранилища {}, посещений {}", snapshotPath, hits);
+    }
+
+    @Scheduled(fixedDelayString = "${stats-server.columnar.snapshot-interval-ms:60000}")
+    public synchronized void snapshot() {
+        if (snapshotPath == null) {
+            return;
+        }
+
+        List<HitSegment> segments;
+        List<String> appValues;
+        List<String> uriValues;
+        List<String> nonIpValues;
+        long snapshotOf;
+        // запечатанные сегменты не меняются, копируется только открытый, запись на диск идёт без блокировки
+        lock.readLock().lock();
+        try {
+            if (version == snapshotVersion) {
+                return;
+            }
+            segments = new ArrayList<>(sealed);
+            segments.add(active.copy());
+            appValues = apps.values();
+            uriValues = uris.values();
+            nonIpValues = nonIpAddresses.values();
+            snapshotOf = version;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                         Channels.newOutputStream(channel)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                StringDictionary.write(appValues, out);
+                StringDictionary.write(uriValues, out);
+                StringDictionary.write(nonIpValues, out);
+                out.writeInt(segments.size());
+                for (HitSegment segment : segments) {
+                    segment.write(out);
+                }
+                // без force после сбоя питания переименование может оказаться на диске раньше данных,
+                // и на месте прежнего снимка останется пустой или оборванный файл
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(snapshotPath.toAbsolutePath().getParent());
+            snapshotVersion = snapshotOf;
+        } catch (IOException e) {
+            log.error("Не удалось сохранить снимок хранилища {}", snapshotPath, e);
+        }
+    }
+
+    /**
+     * Переименование становится надёжным только после fsync каталога. Не все системы позволяют открыть
+     * каталог (Windows), там fsync пропускается.
+     */
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("fsync каталога {} не поддерживается", directory, e);
+        }
+    }
+
+    private long hitCount() {
+        lock.readLock().lock();
+        try {
+            long count = active.size;
+            for (HitSegment segment : sealed) {
+                count += segment.size;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return sealed.size() + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        snapshot();
+    }
+
+    /**
+     * Отметки uri из запроса или null, если фильтра нет; пустой массив - ни один uri хранилищу не известен.
+     */
+    private boolean[] uriFilter(List<String> uriList) {
+        if (uriList.isEmpty()) {
+            return null;
+        }
+        boolean[] uriFilter = new boolean[uris.size()];
+        boolean known = false;
+        for (String uri : uriList) {
+            int id = uris.find(uri);
+            if (id >= 0) {
+                uriFilter[id] = true;
+                known = true;
+            }
+        }
+        return known ? uriFilter : new boolean[0];
+    }
+
+    private static void scan(HitSegment segment, boolean[] uriFilter, TimeSeriesCounter counter) {
+        long from = counter.from();
+        long to = counter.to();
+        if (segment.size == 0 || segment.maxTimestamp < from || segment.minTimestamp > to) {
+            return;
+        }
+
+        int begin = 0;
+        int end = segment.size;
+        boolean checkTime = !segment.sorted;
+        if (segment.sorted) {
+            begin = segment.lowerBound(from);
+            end = segment.lowerBound(to + 1);
+        }
+
+        int[] appColumn = segment.apps;
+        int[] uriColumn = segment.uris;
+        long[] ipHigh = segment.ipHigh;
+        long[] ipLow = segment.ipLow;
+        long[] timestamps = segment.timestamps;
+        for (int i = begin; i < end; i++) {
+            if (checkTime && (timestamps[i] < from || timestamps[i] > to)) {
+                continue;
+            }
+            int uri = uriColumn[i];
+            if (uriFilter != null && (uri >= uriFilter.length || !uriFilter[uri])) {
+                continue;
+            }
+            counter.add(timestamps[i], (long) appColumn[i] << 32 | uri, ipHigh[i], ipLow[i]);
+        }
+    }
+
+    private static void scan(HitSegment segment, long from, long to, boolean[] uriFilter, LongIntHashMap hits,
+                             LongTripleHashSet seen) {
+        if (segment.size == 0 || segment.maxTimestamp < from || segment.minTimestamp > to) {
+            return;
+        }
+
+        int begin = 0;
+        int end = segment.size;
+        boolean checkTime = !segment.sorted;
+        if (segment.sorted) {
+            begin = segment.lowerBound(from);
+            end = segment.lowerBound(to + 1);
+        }
+
+        int[] appColumn = segment.apps;
+        int[] uriColumn = segment.uris;
+        long[] ipHigh = segment.ipHigh;
+        long[] ipLow = segment.ipLow;
+        long[] timestamps = segment.timestamps;
+        for (int i = begin; i < end; i++) {
+            if (checkTime && (timestamps[i] < from || timestamps[i] > to)) {
+                continue;
+            }
+            int uri = uriColumn[i];
+            if (uriFilter != null && (uri >= uriFilter.length || !uriFilter[uri])) {
+                continue;
+            }
+            long group = (long) appColumn[i] << 32 | uri;
+            if (seen == null || seen.add(group, ipHigh[i], ipLow[i])) {
+                hits.increment(group);
+            }
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static final class SegmentCursor {
+        private final HitSegment segment;
+        private final int end;
+        private int row;
+
+        private SegmentCursor(HitSegment segment, int row, int end) {
+            this.segment = segment;
+            this.row = row;
+            this.end = end;
+        }
+
+        private long timestamp() {
+            return segment.timestamps[row];
+        }
+    }
+}
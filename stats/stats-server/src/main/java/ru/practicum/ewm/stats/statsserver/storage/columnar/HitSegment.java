@@ -0,0 +1,135 @@
+package ru.practicum.ewm.stats.statsserver.storage.columnar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Сегмент посещений в виде параллельных массивов примитивов. Открытый сегмент только дописывается,
+ * заполненный запечатывается: обрезается по размеру и сортируется по времени, после чего не меняется.
+ */
+final class HitSegment {
+    static final int MAX_CAPACITY = 1 << 20;
+
+    private static final int INDEX_BITS = 20;
+
+    int[] apps;
+    int[] uris;
+    long[] ipHigh;
+    long[] ipLow;
+    long[] timestamps;
+    int size;
+    boolean sorted;
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+
+    HitSegment(int capacity) {
+        apps = new int[capacity];
+        uris = new int[capacity];
+        ipHigh = new long[capacity];
+        ipLow = new long[capacity];
+        timestamps = new long[capacity];
+    }
+
+    boolean isFull() {
+        return size == apps.length;
+    }
+
+    void append(int app, int uri, long high, long low, long timestamp) {
+        apps[size] = app;
+        uris[size] = uri;
+        ipHigh[size] = high;
+        ipLow[size] = low;
+        timestamps[size] = timestamp;
+        size++;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+    }
+
+    /**
+     * Сортирует строки по времени одной сортировкой long-ключей (смещение времени, номер строки)
+     * и переставляет колонки.
+     */
+    void seal() {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (timestamps[i] - minTimestamp) << INDEX_BITS | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sortedApps = new int[size];
+        int[] sortedUris = new int[size];
+        long[] sortedIpHigh = new long[size];
+        long[] sortedIpLow = new long[size];
+        long[] sortedTimestamps = new long[size];
+        for (int i = 0; i < size; i++) {
+            int row = (int) (keys[i] & ((1 << INDEX_BITS) - 1));
+            sortedApps[i] = apps[row];
+            sortedUris[i] = uris[row];
+            sortedIpHigh[i] = ipHigh[row];
+            sortedIpLow[i] = ipLow[row];
+            sortedTimestamps[i] = timestamps[row];
+        }
+        apps = sortedApps;
+        uris = sortedUris;
+        ipHigh = sortedIpHigh;
+        ipLow = sortedIpLow;
+        timestamps = sortedTimestamps;
+        sorted = true;
+    }
+
+    /**
+     * Первая строка со временем не меньше timestamp, только для запечатанного сегмента.
+     */
+    int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamps[middle] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    HitSegment copy() {
+        HitSegment copy = new HitSegment(size);
+        System.arraycopy(apps, 0, copy.apps, 0, size);
+        System.arraycopy(uris, 0, copy.uris, 0, size);
+        System.arraycopy(ipHigh, 0, copy.ipHigh, 0, size);
+        System.arraycopy(ipLow, 0, copy.ipLow, 0, size);
+        System.arraycopy(timestamps, 0, copy.timestamps, 0, size);
+        copy.size = size;
+        copy.sorted = sorted;
+        copy.minTimestamp = minTimestamp;
+        copy.maxTimestamp = maxTimestamp;
+        return copy;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeBoolean(sorted);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(apps[i]);
+            out.writeInt(uris[i]);
+            out.writeLong(ipHigh[i]);
+            out.writeLong(ipLow[i]);
+            out.writeLong(timestamps[i]);
+        }
+    }
+
+    static HitSegment read(DataInput in, int capacity) throws IOException {
+        int size = in.readInt();
+        boolean sorted = in.readBoolean();
+        HitSegment segment = new HitSegment(sorted ? size : Math.max(size, capacity));
+        for (int i = 0; i < size; i++) {
+            segment.append(in.readInt(), in.readInt(), in.readLong(), in.readLong(), in.readLong());
+        }
+        segment.sorted = sorted;
+        return segment;
+    }
+}
@@ -0,0 +1,135 @@
+package ru.practicum.ewm.stats.statsserver.storage.log;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.ewm.stats.statsserver.storage.StringDictionary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Словари app, uri и строк, не являющихся ip, для записей журнала. Новая строка дописывается в файл
+ * до записи посещения, которое на неё ссылается: запись вида, длина, UTF-8 и CRC32C.
+ */
+@Slf4j
+final class HitLogDictionary {
+    static final int APP = 0;
+    static final int URI = 1;
+    static final int NON_IP = 2;
+
+    private static final int ENTRY_HEADER_BYTES = 5;
+    private static final int CRC_BYTES = 4;
+
+    private final FileChannel channel;
+    private final StringDictionary[] dictionaries = {
+            new StringDictionary(), new StringDictionary(), new StringDictionary()
+    };
+    private final CRC32C crc = new CRC32C();
+    private boolean dirty;
+
+    private HitLogDictionary(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Читает словарь, оборванная последняя запись отрезается.
+     */
+    static HitLogDictionary open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        HitLogDictionary dictionary = new HitLogDictionary(channel);
+        try {
+            ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+            while (content.hasRemaining()) {
+                if (channel.read(content) < 0) {
+                    break;
+                }
+            }
+            content.flip();
+
+            int valid = 0;
+            while (content.remaining() >= ENTRY_HEADER_BYTES + CRC_BYTES) {
+                int kind = content.get(valid);
+                int length = content.getInt(valid + 1);
+                if (kind < APP || kind > NON_IP || length < 0
+                        || content.limit() - valid < ENTRY_HEADER_BYTES + length + CRC_BYTES
+                        || dictionary.entryCrc(content, valid, length)
+                        != content.getInt(valid + ENTRY_HEADER_BYTES + length)) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                content.position(valid + ENTRY_HEADER_BYTES);
+                content.get(bytes);
+                dictionary.dictionaries[kind].intern(new String(bytes, StandardCharsets.UTF_8));
+                valid += ENTRY_HEADER_BYTES + length + CRC_BYTES;
+                content.position(valid);
+            }
+
+            if (valid < channel.size()) {
+                log.warn("В словаре журнала {} отброшено {} байт оборванной записи", file, channel.size() - valid);
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            channel.position(valid);
+            return dictionary;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int intern(int kind, String value) throws IOException {
+        StringDictionary dictionary = dictionaries[kind];
+        int id = dictionary.find(value);
+        if (id >= 0) {
+            return id;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER_BYTES + bytes.length + CRC_BYTES);
+        entry.put((byte) kind).putInt(bytes.length).put(bytes);
+        entry.putInt(entryCrc(entry, 0, bytes.length));
+        entry.flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+        dirty = true;
+        return dictionary.intern(value);
+    }
+
+    int find(int kind, String value) {
+        return dictionaries[kind].find(value);
+    }
+
+    String get(int kind, int id) {
+        return dictionaries[kind].get(id);
+    }
+
+    int size(int kind) {
+        return dictionaries[kind].size();
+    }
+
+    void force() throws IOException {
+        if (dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private int entryCrc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + ENTRY_HEADER_BYTES + length).position(offset);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+}
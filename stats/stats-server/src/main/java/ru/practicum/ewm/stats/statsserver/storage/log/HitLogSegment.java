@@ -0,0 +1,239 @@
+package ru.practicum.ewm.stats.statsserver.storage.log;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Файл журнала посещений фиксированного размера, отображённый в память. Заголовок хранит число записей
+ * и диапазон времени сегмента, записи фиксированной длины: app, uri, ip (два long), время в секундах
+ * эпохи и CRC32C первых 32 байт. Заголовок обновляется при каждом fsync.
+ */
+@Slf4j
+final class HitLogSegment {
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 36;
+
+    private static final int DATA_BYTES = 32;
+    private static final int MAGIC = 0x45574d4c;
+    private static final int VERSION = 1;
+    private static final int HEADER_CAPACITY = 16;
+    private static final int HEADER_COUNT = 20;
+    private static final int HEADER_MIN_TIMESTAMP = 24;
+    private static final int HEADER_MAX_TIMESTAMP = 32;
+    private static final int HEADER_SEALED = 40;
+    private static final int HEADER_CRC = 60;
+    private static final String FILE_PREFIX = "hits-";
+    private static final String FILE_SUFFIX = ".seg";
+
+    final long id;
+    final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final ByteBuffer record = ByteBuffer.allocate(DATA_BYTES);
+    private final CRC32C crc = new CRC32C();
+
+    int count;
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+    boolean sealed;
+
+    private HitLogSegment(long id, Path file, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.id = id;
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    static HitLogSegment create(Path directory, long id, int capacity) throws IOException {
+        Path file = directory.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_BYTES + (long) capacity * RECORD_BYTES);
+        HitLogSegment segment = new HitLogSegment(id, file, channel, buffer, capacity);
+        segment.force();
+        return segment;
+    }
+
+    /**
+     * Открывает сегмент после перезапуска. Заголовку запечатанного сегмента можно доверять, открытый
+     * сегмент проверяется по записям: первая запись с неверной контрольной суммой или ссылкой на
+     * неизвестную строку словаря считается оборванной, она и всё после неё обнуляется.
+     */
+    static HitLogSegment open(Path file, RecordValidator validator) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("неизвестный формат сегмента журнала " + file);
+            }
+            int capacity = buffer.getInt(HEADER_CAPACITY);
+            if (channel.size() != HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+                throw new IOException("неверный размер сегмента журнала " + file);
+            }
+
+            HitLogSegment segment = new HitLogSegment(buffer.getLong(8), file, channel, buffer, capacity);
+            if (segment.isHeaderValid() && buffer.get(HEADER_SEALED) != 0) {
+                segment.count = buffer.getInt(HEADER_COUNT);
+                segment.minTimestamp = buffer.getLong(HEADER_MIN_TIMESTAMP);
+                segment.maxTimestamp = buffer.getLong(HEADER_MAX_TIMESTAMP);
+                segment.sealed = true;
+                return segment;
+            }
+
+            segment.recover(validator);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static String fileName(long id) {
+        return String.format("%s%020d%s", FILE_PREFIX, id, FILE_SUFFIX);
+    }
+
+    static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+
+    static long parseId(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    boolean isFull() {
+        return sealed || count == capacity;
+    }
+
+    void append(int app, int uri, long ipHigh, long ipLow, long timestamp) {
+        record.clear();
+        record.putInt(app).putInt(uri).putLong(ipHigh).putLong(ipLow).putLong(timestamp).flip();
+        crc.reset();
+        crc.update(record);
+
+        int offset = offset(count);
+        buffer.putInt(offset, app);
+        buffer.putInt(offset + 4, uri);
+        buffer.putLong(offset + 8, ipHigh);
+        buffer.putLong(offset + 16, ipLow);
+        buffer.putLong(offset + 24, timestamp);
+        buffer.putInt(offset + DATA_BYTES, (int) crc.getValue());
+        count++;
+        minTimestamp = Math.min(minTimestamp, timestamp);
+        maxTimestamp = Math.max(maxTimestamp, timestamp);
+    }
+
+    int app(int index) {
+        return buffer.getInt(offset(index));
+    }
+
+    int uri(int index) {
+        return buffer.getInt(offset(index) + 4);
+    }
+
+    long ipHigh(int index) {
+        return buffer.getLong(offset(index) + 8);
+    }
+
+    long ipLow(int index) {
+        return buffer.getLong(offset(index) + 16);
+    }
+
+    long timestamp(int index) {
+        return buffer.getLong(offset(index) + 24);
+    }
+
+    void force() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, id);
+        buffer.putInt(HEADER_CAPACITY, capacity);
+        buffer.putInt(HEADER_COUNT, count);
+        buffer.putLong(HEADER_MIN_TIMESTAMP, minTimestamp);
+        buffer.putLong(HEADER_MAX_TIMESTAMP, maxTimestamp);
+        buffer.put(HEADER_SEALED, (byte) (sealed ? 1 : 0));
+        buffer.putInt(HEADER_CRC, headerCrc());
+        buffer.force();
+    }
+
+    void seal() {
+        sealed = true;
+        force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    private void recover(RecordValidator validator) {
+        ByteBuffer view = buffer.duplicate();
+        int valid = 0;
+        while (valid < capacity) {
+            int offset = offset(valid);
+            view.limit(offset + DATA_BYTES).position(offset);
+            crc.reset();
+            crc.update(view);
+            if ((int) crc.getValue() != buffer.getInt(offset + DATA_BYTES)
+                    || !validator.isValid(app(valid), uri(valid), ipHigh(valid), ipLow(valid))) {
+                break;
+            }
+            count = valid + 1;
+            minTimestamp = Math.min(minTimestamp, timestamp(valid));
+            maxTimestamp = Math.max(maxTimestamp, timestamp(valid));
+            valid++;
+        }
+
+        int zeroed = 0;
+        for (int index = count; index < capacity; index++) {
+            int offset = offset(index);
+            for (int i = offset; i < offset + RECORD_BYTES; i += 4) {
+                if (buffer.getInt(i) != 0) {
+                    buffer.putInt(i, 0);
+                    zeroed++;
+                }
+            }
+        }
+        if (zeroed > 0) {
+            log.warn("В сегменте журнала {} отброшены оборванные записи после {}", file, count);
+        }
+        force();
+    }
+
+    private boolean isHeaderValid() {
+        return buffer.getInt(HEADER_CRC) == headerCrc();
+    }
+
+    private int headerCrc() {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(HEADER_CRC).position(0);
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private static int offset(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    @FunctionalInterface
+    interface RecordValidator {
+        boolean isValid(int app, int uri, long ipHigh, long ipLow);
+    }
+}
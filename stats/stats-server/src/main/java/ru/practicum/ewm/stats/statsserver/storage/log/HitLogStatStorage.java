@@ -0,0 +1,570 @@
+package ru.practicum.ewm.stats.statsserver.storage.log;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.mapper.StatMapper;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.JdbcStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.JpaStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+import ru.practicum.ewm.stats.statsserver.repository.StatRollupRepository;
+import ru.practicum.ewm.stats.statsserver.repository.StatSketchRepository;
+import ru.practicum.ewm.stats.statsserver.storage.IpAddresses;
+import ru.practicum.ewm.stats.statsserver.storage.LongIntHashMap;
+import ru.practicum.ewm.stats.statsserver.storage.LongTripleHashSet;
+import ru.practicum.ewm.stats.statsserver.storage.RelationalStatStorage;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+import ru.practicum.ewm.stats.statsserver.storage.StringDictionary;
+import ru.practicum.ewm.stats.statsserver.storage.TimeSeriesCounter;
+import ru.practicum.ewm.stats.statsserver.storage.TopHits;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Журнал посещений в файлах, отображённых в память: посещение дописывается записью фиксированной длины
+ * без транзакции в базе. fsync выполняется после каждых fsync-batch-records посещений и по таймеру.
+ * Заполненные сегменты запечатываются и переносятся в statistics (вместе с агрегатами и скетчами),
+ * перенесённые сегменты помечаются в stat_log_segment в той же транзакции и удаляются.
+ * Запрос статистики складывает перенесённую часть из базы с ещё не перенесёнными сегментами.
+ */
+@Component
+@ConditionalOnProperty(name = "stats-server.storage", havingValue = "log")
+@Slf4j
+public class HitLogStatStorage implements StatStorage, MeterBinder {
+    private static final String DICTIONARY_FILE = "dictionary.log";
+    private static final String COMPACTED_SQL = "SELECT id FROM stat_log_segment";
+    private static final String MARK_COMPACTED_SQL = "INSERT INTO stat_log_segment (id) VALUES (?)";
+    private static final String UNMARK_COMPACTED_SQL = "DELETE FROM stat_log_segment WHERE id = ?";
+
+    private final RelationalStatStorage relationalStatStorage;
+    private final JdbcStatRepository jdbcStatRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    private final int segmentRecords;
+    private final int fsyncBatchRecords;
+
+    // lock защищает сегменты и словарь, compactionLock не даёт запросу увидеть сегмент и в базе, и в журнале
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final List<HitLogSegment> segments = new ArrayList<>();
+    private HitLogDictionary dictionary;
+    private long nextSegmentId;
+    private int unsynced;
+
+    public HitLogStatStorage(JpaStatRepository jpaStatRepository,
+                             JdbcStatRepository jdbcStatRepository,
+                             StatRollupRepository statRollupRepository,
+                             StatSketchRepository statSketchRepository,
+                             JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${stats-server.log.dir:stats-log}") String directory,
+                             @Value("${stats-server.log.segment-records:262144}") int segmentRecords,
+                             @Value("${stats-server.log.fsync-batch-records:1000}") int fsyncBatchRecords) {
+        this.relationalStatStorage = new RelationalStatStorage(jpaStatRepository, jdbcStatRepository,
+                statRollupRepository, statSketchRepository);
+        this.jdbcStatRepository = jdbcStatRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.directory = Paths.get(directory);
+        this.segmentRecords = Math.max(1, segmentRecords);
+        this.fsyncBatchRecords = Math.max(1, fsyncBatchRecords);
+    }
+
+    @PostConstruct
+    public void start() {
+        lock.writeLock().lock();
+        try {
+            Files.createDirectories(directory);
+            dictionary = HitLogDictionary.open(directory.resolve(DICTIONARY_FILE));
+
+            // сегмент, перенос которого закоммичен, но файл не успел удалиться, повторно не переносится
+            Set<Long> compacted = new HashSet<>(jdbcTemplate.queryForList(COMPACTED_SQL, Long.class));
+            List<Path> files;
+            try (Stream<Path> list = Files.list(directory)) {
+                files = list.filter(HitLogSegment::isSegmentFile)
+                        .sorted(Comparator.comparingLong(HitLogSegment::parseId))
+                        .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                long id = HitLogSegment.parseId(file);
+                nextSegmentId = Math.max(nextSegmentId, id + 1);
+                if (compacted.contains(id)) {
+                    Files.delete(file);
+                    continue;
+                }
+                segments.add(HitLogSegment.open(file, this::isKnown));
+            }
+            for (Long id : compacted) {
+                nextSegmentId = Math.max(nextSegmentId, id + 1);
+                jdbcTemplate.update(UNMARK_COMPACTED_SQL, id);
+            }
+
+            for (int i = 0; i < segments.size() - 1; i++) {
+                if (!segments.get(i).sealed) {
+                    segments.get(i).seal();
+                }
+            }
+            if (segments.isEmpty() || active().isFull()) {
+                rollSegment();
+            }
+            log.info("Журнал посещений {} открыт, сегментов {}, посещений {}", directory, segments.size(),
+                    segments.stream().mapToLong(segment -> segment.count).sum());
+        } catch (IOException e) {
+            throw new IllegalStateException("не удалось открыть журнал посещений " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(List<Stat> stats) {
+        long[] ip = new long[2];
+        lock.writeLock().lock();
+        try {
+            for (Stat stat : stats) {
+                if (!IpAddresses.pack(stat.getIp(), ip)) {
+                    ip[0] = IpAddresses.NON_IP_HIGH;
+                    ip[1] = dictionary.intern(HitLogDictionary.NON_IP, stat.getIp());
+                }
+                active().append(dictionary.intern(HitLogDictionary.APP, stat.getApp()),
+                        dictionary.intern(HitLogDictionary.URI, stat.getUri()), ip[0], ip[1],
+                        toEpochSecond(stat.getTimestamp()));
+                if (active().isFull()) {
+                    rollSegment();
+                }
+            }
+
+            unsynced += stats.size();
+            if (unsynced >= fsyncBatchRecords) {
+                syncLocked();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("не удалось записать посещения в журнал", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                    boolean approximate, int offset, int limit) {
+        compactionLock.readLock().lock();
+        try {
+            List<ViewStats> result = unique ? countUnique(start, end, uris) : countHits(start, end, uris);
+            return TopHits.page(result, offset, limit);
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Перенесённая часть читается из statistics страницами, записи журнала за период собираются и сортируются
+     * по времени, затем обе последовательности сливаются. Память ограничена ещё не перенесёнными сегментами;
+     * перенос ждёт окончания выгрузки, иначе сегмент попал бы в ответ дважды или ни разу.
+     */
+    @Override
+    public void exportHits(LocalDateTime start, LocalDateTime end, Consumer<Stat> consumer) {
+        compactionLock.readLock().lock();
+        try {
+            List<Stat> logged = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                scan(start, end, List.of(), (app, uri, ipHigh, ipLow, timestamp) -> logged.add(new Stat(null,
+                        dictionary.get(HitLogDictionary.APP, app), dictionary.get(HitLogDictionary.URI, uri),
+                        ip(ipHigh, ipLow), LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC))));
+            } finally {
+                lock.readLock().unlock();
+            }
+            logged.sort(Comparator.comparing(Stat::getTimestamp));
+
+            int[] next = new int[1];
+            relationalStatStorage.exportHits(start, end, stat -> {
+                while (next[0] < logged.size() && !logged.get(next[0]).getTimestamp().isAfter(stat.getTimestamp())) {
+                    consumer.accept(logged.get(next[0]++));
+                }
+                consumer.accept(stat);
+            });
+            for (int i = next[0]; i < logged.size(); i++) {
+                consumer.accept(logged.get(i));
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Все интервалы ряда считаются за один запрос к базе и один проход по журналу. Неуникальные просмотры
+     * перенесённой части берутся из агрегатов, уникальные - из пар (интервал, ip) базы, объединённых
+     * с ip журнала того же интервала.
+     */
+    @Override
+    public List<ViewStatsBucket> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                               boolean unique, boolean approximate, RollupGranularity granularity) {
+        TimeSeriesCounter counter = new TimeSeriesCounter(start, end, granularity, unique);
+        LocalDateTime from = LocalDateTime.ofEpochSecond(counter.from(), 0, ZoneOffset.UTC);
+        LocalDateTime to = LocalDateTime.ofEpochSecond(counter.to(), 0, ZoneOffset.UTC);
+        StringDictionary apps = new StringDictionary();
+        StringDictionary uriDictionary = new StringDictionary();
+        StringDictionary nonIpAddresses = unique ? new StringDictionary() : null;
+
+        compactionLock.readLock().lock();
+        try {
+            if (unique) {
+                long[] ip = new long[2];
+                jdbcStatRepository.forEachBucketIp(granularity, from, to.plusSeconds(1), uris,
+                        (bucket, app, uri, address) -> {
+                            if (!IpAddresses.pack(address, ip)) {
+                                ip[0] = IpAddresses.NON_IP_HIGH;
+                                ip[1] = nonIpAddresses.intern(address);
+                            }
+                            counter.add(toEpochSecond(bucket), (long) apps.intern(app) << 32
+                                    | uriDictionary.intern(uri), ip[0], ip[1]);
+                        });
+            } else {
+                for (ViewStatsBucket bucket : relationalStatStorage.getTimeSeries(start, end, uris, false, false,
+                        granularity)) {
+                    counter.add(toEpochSecond(StatMapper.parseTimestamp(bucket.getBucket())),
+                            (long) apps.intern(bucket.getApp()) << 32 | uriDictionary.intern(bucket.getUri()),
+                            bucket.getHits());
+                }
+            }
+            scanLocal(from, to, uris, apps, uriDictionary, nonIpAddresses, (app, uri, ipHigh, ipLow, timestamp) ->
+                    counter.add(timestamp, (long) app << 32 | uri, ipHigh, ipLow));
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        return counter.toBuckets(apps::get, uriDictionary::get);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stats.log.segments", this, HitLogStatStorage::segmentCount)
+                .description("Сегменты журнала, ещё не перенесённые в базу")
+                .register(registry);
+        Gauge.builder("stats.log.records", this, HitLogStatStorage::recordCount)
+                .description("Посещения в журнале, ещё не перенесённые в базу")
+                .register(registry);
+        Gauge.builder("stats.log.unsynced", this, HitLogStatStorage::unsyncedCount)
+                .description("Посещения, записанные в журнал после последнего fsync")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${stats-server.log.fsync-interval-ms:100}")
+    public void sync() {
+        lock.writeLock().lock();
+        try {
+            if (unsynced > 0) {
+                syncLocked();
+            }
+        } catch (IOException e) {
+            log.error("Не удалось выполнить fsync журнала посещений {}", directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Переносит запечатанные сегменты в statistics. Пока идёт транзакция, запросы статистики ждут,
+     * запись новых посещений в журнал продолжается.
+     */
+    @Scheduled(fixedDelayString = "${stats-server.log.compaction-interval-ms:60000}")
+    public void compact() {
+        List<HitLogSegment> sealed;
+        lock.readLock().lock();
+        try {
+            sealed = segments.stream().filter(segment -> segment.sealed).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (HitLogSegment segment : sealed) {
+            List<Stat> stats = decode(segment);
+            compactionLock.writeLock().lock();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    relationalStatStorage.saveAll(stats);
+                    jdbcTemplate.update(MARK_COMPACTED_SQL, segment.id);
+                });
+                lock.writeLock().lock();
+                try {
+                    segments.remove(segment);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (RuntimeException e) {
+                log.error("Не удалось перенести сегмент журнала {} в базу", segment.file, e);
+                return;
+            } finally {
+                compactionLock.writeLock().unlock();
+            }
+
+            try {
+                segment.delete();
+                jdbcTemplate.update(UNMARK_COMPACTED_SQL, segment.id);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить перенесённый сегмент журнала {}", segment.file, e);
+            }
+            log.info("Сегмент журнала {} перенесён в базу, посещений {}", segment.file, stats.size());
+        }
+    }
+
+    private int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long recordCount() {
+        lock.readLock().lock();
+        try {
+            return segments.stream().mapToLong(segment -> segment.count).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int unsyncedCount() {
+        lock.readLock().lock();
+        try {
+            return unsynced;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            syncLocked();
+            for (HitLogSegment segment : segments) {
+                segment.close();
+            }
+            dictionary.close();
+        } catch (IOException e) {
+            log.error("Не удалось закрыть журнал посещений {}", directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<ViewStats> countHits(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<List<String>, ViewStats> merged = new LinkedHashMap<>();
+        for (ViewStats viewStats : relationalStatStorage.getStats(start, end, uris, false, false)) {
+            merged.put(List.of(viewStats.getApp(), viewStats.getUri()),
+                    new ViewStats(viewStats.getApp(), viewStats.getUri(), viewStats.getHits()));
+        }
+
+        lock.readLock().lock();
+        try {
+            LongIntHashMap hits = new LongIntHashMap();
+            scan(start, end, uris, (app, uri, ipHigh, ipLow, timestamp) -> hits.increment((long) app << 32 | uri));
+            hits.forEach((group, count) -> {
+                String app = dictionary.get(HitLogDictionary.APP, (int) (group >>> 32));
+                String uri = dictionary.get(HitLogDictionary.URI, (int) group);
+                ViewStats current = merged.computeIfAbsent(List.of(app, uri), key -> new ViewStats(app, uri, 0));
+                current.setHits(current.getHits() + count);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Уникальные ip считаются точно по сырым записям базы и журнала, в том числе при approximate=true:
+     * скетчи базы нельзя объединить с ip из журнала без повторного подсчёта.
+     */
+    private List<ViewStats> countUnique(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        StringDictionary apps = new StringDictionary();
+        StringDictionary uriDictionary = new StringDictionary();
+        StringDictionary nonIpAddresses = new StringDictionary();
+        LongTripleHashSet seen = new LongTripleHashSet();
+        LongIntHashMap hits = new LongIntHashMap();
+        long[] ip = new long[2];
+
+        jdbcStatRepository.forEachIp(start, end, true, uris, (app, uri, address) -> {
+            if (!IpAddresses.pack(address, ip)) {
+                ip[0] = IpAddresses.NON_IP_HIGH;
+                ip[1] = nonIpAddresses.intern(address);
+            }
+            long group = (long) apps.intern(app) << 32 | uriDictionary.intern(uri);
+            if (seen.add(group, ip[0], ip[1])) {
+                hits.increment(group);
+            }
+        });
+
+        scanLocal(start, end, uris, apps, uriDictionary, nonIpAddresses, (app, uri, ipHigh, ipLow, timestamp) -> {
+            long group = (long) app << 32 | uri;
+            if (seen.add(group, ipHigh, ipLow)) {
+                hits.increment(group);
+            }
+        });
+
+        List<ViewStats> result = new ArrayList<>(hits.size());
+        hits.forEach((group, count) -> result.add(new ViewStats(apps.get((int) (group >>> 32)),
+                uriDictionary.get((int) group), count)));
+        return result;
+    }
+
+    /**
+     * Записи журнала с номерами app, uri и не-ip адресов из словарей запроса, чтобы их можно было сложить
+     * с записями базы. Без nonIpAddresses не-ip адреса остаются номерами словаря журнала.
+     */
+    private void scanLocal(LocalDateTime start, LocalDateTime end, List<String> uris, StringDictionary apps,
+                           StringDictionary uriDictionary, StringDictionary nonIpAddresses, RecordConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            // номера строк журнала переводятся в номера локальных словарей запроса
+            int[] appIds = filled(dictionary.size(HitLogDictionary.APP));
+            int[] uriIds = filled(dictionary.size(HitLogDictionary.URI));
+            scan(start, end, uris, (app, uri, ipHigh, ipLow, timestamp) -> {
+                if (appIds[app] < 0) {
+                    appIds[app] = apps.intern(dictionary.get(HitLogDictionary.APP, app));
+                }
+                if (uriIds[uri] < 0) {
+                    uriIds[uri] = uriDictionary.intern(dictionary.get(HitLogDictionary.URI, uri));
+                }
+                long address = ipHigh == IpAddresses.NON_IP_HIGH && nonIpAddresses != null
+                        ? nonIpAddresses.intern(dictionary.get(HitLogDictionary.NON_IP, (int) ipLow))
+                        : ipLow;
+                consumer.accept(appIds[app], uriIds[uri], ipHigh, address, timestamp);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scan(LocalDateTime start, LocalDateTime end, List<String> uris, RecordConsumer consumer) {
+        long from = toEpochSecond(start);
+        long to = toEpochSecond(end);
+        boolean[] uriFilter = null;
+        if (!uris.isEmpty()) {
+            uriFilter = new boolean[dictionary.size(HitLogDictionary.URI)];
+            boolean known = false;
+            for (String uri : uris) {
+                int id = dictionary.find(HitLogDictionary.URI, uri);
+                if (id >= 0) {
+                    uriFilter[id] = true;
+                    known = true;
+                }
+            }
+            if (!known) {
+                return;
+            }
+        }
+
+        for (HitLogSegment segment : segments) {
+            if (segment.count == 0 || segment.maxTimestamp < from || segment.minTimestamp > to) {
+                continue;
+            }
+            for (int i = 0; i < segment.count; i++) {
+                long timestamp = segment.timestamp(i);
+                if (timestamp < from || timestamp > to) {
+                    continue;
+                }
+                int uri = segment.uri(i);
+                if (uriFilter != null && !uriFilter[uri]) {
+                    continue;
+                }
+                consumer.accept(segment.app(i), uri, segment.ipHigh(i), segment.ipLow(i), timestamp);
+            }
+        }
+    }
+
+    private List<Stat> decode(HitLogSegment segment) {
+        lock.readLock().lock();
+        try {
+            List<Stat> stats = new ArrayList<>(segment.count);
+            for (int i = 0; i < segment.count; i++) {
+                stats.add(new Stat(null, dictionary.get(HitLogDictionary.APP, segment.app(i)),
+                        dictionary.get(HitLogDictionary.URI, segment.uri(i)), ip(segment.ipHigh(i), segment.ipLow(i)),
+                        LocalDateTime.ofEpochSecond(segment.timestamp(i), 0, ZoneOffset.UTC)));
+            }
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String ip(long ipHigh, long ipLow) {
+        return ipHigh == IpAddresses.NON_IP_HIGH
+                ? dictionary.get(HitLogDictionary.NON_IP, (int) ipLow)
+                : IpAddresses.format(ipHigh, ipLow);
+    }
+
+    private boolean isKnown(int app, int uri, long ipHigh, long ipLow) {
+        return app >= 0 && app < dictionary.size(HitLogDictionary.APP)
+                && uri >= 0 && uri < dictionary.size(HitLogDictionary.URI)
+                && (ipHigh != IpAddresses.NON_IP_HIGH
+                || (ipLow >= 0 && ipLow < dictionary.size(HitLogDictionary.NON_IP)));
+    }
+
+    private HitLogSegment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private void rollSegment() throws IOException {
+        // строки словаря должны попасть на диск раньше, чем запечатанный сегмент, который на них ссылается
+        dictionary.force();
+        if (!segments.isEmpty() && !active().sealed) {
+            active().seal();
+        }
+        segments.add(HitLogSegment.create(directory, nextSegmentId++, segmentRecords));
+    }
+
+    private void syncLocked() throws IOException {
+        dictionary.force();
+        active().force();
+        unsynced = 0;
+    }
+
+    private static int[] filled(int size) {
+        int[] ids = new int[size];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(int app, int uri, long ipHigh, long ipLow, long timestamp);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.practicum.ewm.stats.statsserver.writer;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.statsserver.cache.StatsCache;
+import ru.practicum.ewm.stats.statsserver.live.LiveStatsHub;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(name = "stats-server.write-behind.enabled", havingValue = "false", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DirectStatWriter implements StatWriter {
+    private final StatStorage statStorage;
+    private final StatsCache statsCache;
+    private final LiveStatsHub liveStatsHub;
+
+    @Override
+    public void write(List<Stat> stats) {
+        statStorage.saveAll(stats);
+        statsCache.invalidate(stats);
+        liveStatsHub.publish(stats);
+    }
+}
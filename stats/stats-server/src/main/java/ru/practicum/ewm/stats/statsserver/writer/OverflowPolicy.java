@@ -0,0 +1,7 @@
+package ru.practicum.ewm.stats.statsserver.writer;
+
+public enum OverflowPolicy {
+    BLOCK,
+    DROP,
+    REJECT
+}
@@ -0,0 +1,13 @@
+package ru.practicum.ewm.stats.statsserver.writer;
+
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.util.List;
+
+/**
+ * Передаёт посещения в хранилище. Реализация сбрасывает затронутые ответы StatsCache и передаёт посещения
+ * подпискам LiveStatsHub, когда посещения уже видны запросам, а не при приёме.
+ */
+public interface StatWriter {
+    void write(List<Stat> stats);
+}
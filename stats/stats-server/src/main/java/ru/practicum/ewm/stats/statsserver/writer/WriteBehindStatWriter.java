@@ -0,0 +1,228 @@
+package ru.practicum.ewm.stats.statsserver.writer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.ewm.stats.statsserver.cache.StatsCache;
+import ru.practicum.ewm.stats.statsserver.exception.HitBufferOverflowException;
+import ru.practicum.ewm.stats.statsserver.live.LiveStatsHub;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@Component
+@ConditionalOnProperty(name = "stats-server.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class WriteBehindStatWriter implements StatWriter {
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+    private static final long MAX_POLL_MILLIS = 100;
+
+    private final StatStorage statStorage;
+    private final StatsCache statsCache;
+    private final LiveStatsHub liveStatsHub;
+    private final BlockingQueue<Stat> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread flusher;
+    private final Timer flushTimer;
+    private final DistributionSummary flushBatchSize;
+    private final Counter droppedCounter;
+    private final Counter lostCounter;
+    private volatile boolean running = true;
+
+    public WriteBehindStatWriter(StatStorage statStorage,
+                                 StatsCache statsCache,
+                                 LiveStatsHub liveStatsHub,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${stats-server.write-behind.capacity:65536}") int capacity,
+                                 @Value("${stats-server.write-behind.batch-size:1000}") int batchSize,
+                                 @Value("${stats-server.write-behind.flush-interval-ms:200}") long flushIntervalMillis,
+                                 @Value("${stats-server.write-behind.overflow-policy:BLOCK}")
+                                 OverflowPolicy overflowPolicy) {
+        this.statStorage = statStorage;
+        this.statsCache = statsCache;
+        this.liveStatsHub = liveStatsHub;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.flusher = new Thread(this::runFlusher, "stat-write-behind-flusher");
+        this.flusher.setDaemon(true);
+
+        Gauge.builder("stats.buffer.size", queue, BlockingQueue::size)
+                .description("Количество посещений, ожидающих записи")
+                .register(meterRegistry);
+        Gauge.builder("stats.buffer.capacity", queue, q -> q.size() + q.remainingCapacity())
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("stats.buffer.flush")
+                .description("Время записи пачки посещений в базу")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.flushBatchSize = DistributionSummary.builder("stats.buffer.flush.batch")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("stats.buffer.dropped")
+                .description("Посещения, отброшенные из-за переполнения буфера")
+                .register(meterRegistry);
+        this.lostCounter = Counter.builder("stats.buffer.lost")
+                .description("Посещения, которые не удалось записать в базу")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(SHUTDOWN_TIMEOUT_MILLIS);
+        log.info("Буфер записи остановлен, записано при остановке {}", flushRemaining());
+    }
+
+    @Override
+    public void write(List<Stat> stats) {
+        if (!running) {
+            throw new HitBufferOverflowException("буфер записи остановлен");
+        }
+
+        for (int i = 0; i < stats.size(); i++) {
+            Stat stat = stats.get(i);
+            switch (overflowPolicy) {
+                case BLOCK:
+                    if (!offerWhileRunning(stat)) {
+                        // остановка началась, пока ждали места: поток записи очередь уже не разберёт,
+                        // остаток пачки и очередь записываются здесь
+                        flushAll(stats.subList(i, stats.size()));
+                        flushRemaining();
+                        return;
+                    }
+                    break;
+                case DROP:
+                    if (!queue.offer(stat)) {
+                        droppedCounter.increment();
+                    }
+                    break;
+                case REJECT:
+                    if (!queue.offer(stat)) {
+                        droppedCounter.increment();
+                        throw new HitBufferOverflowException("буфер записи переполнен");
+                    }
+                    break;
+            }
+        }
+
+        // остановка могла начаться после проверки выше и уже разобрать очередь: посещения, положенные после
+        // этого, никто кроме нас не запишет
+        if (!running) {
+            flushRemaining();
+        }
+    }
+
+    /**
+     * Ждёт места в очереди, пока буфер не начал останавливаться.
+     *
+     * @return false, если остановка началась раньше, чем освободилось место
+     */
+    private boolean offerWhileRunning(Stat stat) {
+        try {
+            while (!queue.offer(stat, MAX_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HitBufferOverflowException("ожидание места в буфере записи прервано");
+        }
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    private void runFlusher() {
+        List<Stat> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
+
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    Stat first = queue.poll(Math.min(flushIntervalMillis, MAX_POLL_MILLIS), TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    deadline = System.currentTimeMillis() + flushIntervalMillis;
+                }
+
+                queue.drainTo(batch, batchSize - batch.size());
+                long remaining = deadline - System.currentTimeMillis();
+                if (batch.size() < batchSize && remaining > 0) {
+                    Stat next = queue.poll(Math.min(remaining, MAX_POLL_MILLIS), TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                    continue;
+                }
+
+                flush(batch);
+                batch = new ArrayList<>(batchSize);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private int flushRemaining() {
+        List<Stat> rest = new ArrayList<>(queue.size());
+        queue.drainTo(rest);
+        flushAll(rest);
+        return rest.size();
+    }
+
+    private void flushAll(List<Stat> stats) {
+        for (int from = 0; from < stats.size(); from += batchSize) {
+            flush(stats.subList(from, Math.min(from + batchSize, stats.size())));
+        }
+    }
+
+    private void flush(List<Stat> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            statStorage.saveAll(batch);
+            flushBatchSize.record(batch.size());
+            // ответы, закэшированные до записи пачки, могли не увидеть эти посещения
+            statsCache.invalidate(batch);
+            liveStatsHub.publish(batch);
+        } catch (RuntimeException e) {
+            lostCounter.increment(batch.size());
+            log.error("Не удалось записать пачку посещений, потеряно {}", batch.size(), e);
+        } finally {
+            flushTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -1,5 +1,3 @@
-DROP TABLE IF EXISTS statistics;
-
 CREATE TABLE IF NOT EXISTS statistics
 (
     id      BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
@@ -9,4 +7,83 @@ CREATE TABLE IF NOT EXISTS statistics
     created TIMESTAMP                               NOT NULL,
     CONSTRAINT pk_statistics PRIMARY KEY (id)
 --     CONSTRAINT uq_statistics UNIQUE (app, uri, ip, created)
-);
\ No newline at end of file
+);
+
+CREATE INDEX IF NOT EXISTS idx_statistics_created_uri_app_ip ON statistics (created, uri, app, ip);
+CREATE INDEX IF NOT EXISTS idx_statistics_uri_created_app_ip ON statistics (uri, created, app, ip);
+
+CREATE TABLE IF NOT EXISTS stat_rollup_minute
+(
+    bucket TIMESTAMP    NOT NULL,
+    app    VARCHAR(255) NOT NULL,
+    uri    VARCHAR(255) NOT NULL,
+    hits   BIGINT       NOT NULL,
+    CONSTRAINT pk_stat_rollup_minute PRIMARY KEY (bucket, app, uri)
+);
+
+CREATE TABLE IF NOT EXISTS stat_rollup_hour
+(
+    bucket TIMESTAMP    NOT NULL,
+    app    VARCHAR(255) NOT NULL,
+    uri    VARCHAR(255) NOT NULL,
+    hits   BIGINT       NOT NULL,
+    CONSTRAINT pk_stat_rollup_hour PRIMARY KEY (bucket, app, uri)
+);
+
+CREATE TABLE IF NOT EXISTS stat_rollup_day
+(
+    bucket TIMESTAMP    NOT NULL,
+    app    VARCHAR(255) NOT NULL,
+    uri    VARCHAR(255) NOT NULL,
+    hits   BIGINT       NOT NULL,
+    CONSTRAINT pk_stat_rollup_day PRIMARY KEY (bucket, app, uri)
+);
+
+CREATE TABLE IF NOT EXISTS stat_sketch_minute
+(
+    bucket    TIMESTAMP    NOT NULL,
+    app       VARCHAR(255) NOT NULL,
+    uri       VARCHAR(255) NOT NULL,
+    registers BYTEA        NOT NULL,
+    CONSTRAINT pk_stat_sketch_minute PRIMARY KEY (bucket, app, uri)
+);
+
+CREATE TABLE IF NOT EXISTS stat_sketch_hour
+(
+    bucket    TIMESTAMP    NOT NULL,
+    app       VARCHAR(255) NOT NULL,
+    uri       VARCHAR(255) NOT NULL,
+    registers BYTEA        NOT NULL,
+    CONSTRAINT pk_stat_sketch_hour PRIMARY KEY (bucket, app, uri)
+);
+
+CREATE TABLE IF NOT EXISTS stat_sketch_day
+(
+    bucket    TIMESTAMP    NOT NULL,
+    app       VARCHAR(255) NOT NULL,
+    uri       VARCHAR(255) NOT NULL,
+    registers BYTEA        NOT NULL,
+    CONSTRAINT pk_stat_sketch_day PRIMARY KEY (bucket, app, uri)
+);
+
+CREATE TABLE IF NOT EXISTS stat_sketch_pending
+(
+    id     BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+    bucket TIMESTAMP    NOT NULL,
+    app    VARCHAR(255) NOT NULL,
+    uri    VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_stat_sketch_pending PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS stat_log_segment
+(
+    id BIGINT NOT NULL,
+    CONSTRAINT pk_stat_log_segment PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS stat_replica_heartbeat
+(
+    id   INTEGER NOT NULL,
+    beat BIGINT  NOT NULL,
+    CONSTRAINT pk_stat_replica_heartbeat PRIMARY KEY (id)
+);
@@ -0,0 +1,60 @@
+package ru.practicum.ewm.stats.statsserver;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Контекст поднимается в каждом режиме, включаемом настройками: бины, создаваемые только при
+ * определённых настройках, иначе не проверяются ни одним тестом.
+ */
+class StatsServerAppTest {
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "stats-server.write-behind.enabled=true",
+            "stats-server.storage=columnar",
+            "stats-server.storage=log",
+            "stats-server.hll.enabled=false",
+            "stats-server.bulkhead.enabled=true",
+            "stats-server.cache.max-entries=0"})
+    void contextLoads(String mode) {
+        try (ConfigurableApplicationContext context = run(mode)) {
+            assertNotNull(context.getBean(StatService.class));
+        }
+    }
+
+    @Test
+    void contextLoads_partitioningOnH2_refusedByManagerItself() {
+        BeanCreationException e = assertThrows(BeanCreationException.class,
+                () -> run("stats-server.partitioning.enabled=true").close());
+
+        assertTrue(e.getMostSpecificCause() instanceof IllegalStateException, e.getMostSpecificCause().toString());
+        assertTrue(e.getMostSpecificCause().getMessage().contains("PostgreSQL"));
+    }
+
+    private ConfigurableApplicationContext run(String mode) {
+        // аргументы, а не properties(): значения по умолчанию перекрываются application.properties
+        return new SpringApplicationBuilder(StatsServerApp.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:smoke-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--stats-server.log.dir=" + dir.resolve("log"),
+                "--stats-server.columnar.snapshot-path=" + dir.resolve("columnar.snapshot"),
+                "--" + (mode.isEmpty() ? "stats-server.storage=jdbc" : mode));
+    }
+}
@@ -0,0 +1,113 @@
+package ru.practicum.ewm.stats.statsserver.bulkhead;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.ewm.stats.statsserver.controller.AdminTokenInterceptor;
+import ru.practicum.ewm.stats.statsserver.controller.HitTransferController;
+import ru.practicum.ewm.stats.statsserver.controller.StatController;
+import ru.practicum.ewm.stats.statsserver.exception.BulkheadFullException;
+import ru.practicum.ewm.stats.statsserver.mapper.EndpointHitParser;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import javax.servlet.DispatcherType;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = {StatController.class, HitTransferController.class}, properties = {
+        "stats-server.bulkhead.enabled=true",
+        "stats-server.bulkhead.analytics.max-concurrent=0",
+        "stats-server.bulkhead.analytics.max-wait-ms=0",
+        "stats-server.bulkhead.transfer.max-concurrent=0",
+        "stats-server.admin.token=secret"})
+@Import({EndpointHitParser.class, SimpleMeterRegistry.class})
+class BulkheadTest {
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    StatService statService;
+
+    @Test
+    void acquire_noPermits_rejectedAndCounted() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0, meterRegistry);
+
+        bulkhead.acquire();
+        assertThrows(BulkheadFullException.class, bulkhead::acquire);
+        bulkhead.release();
+        bulkhead.acquire();
+
+        assertEquals(1, meterRegistry.get("stats.bulkhead.rejected").counter().count());
+        assertEquals(1, meterRegistry.get("stats.bulkhead.active").gauge().value());
+    }
+
+    @SneakyThrows
+    @Test
+    void analyticsFull_statsRejectedAndHitAccepted() {
+        mockMvc.perform(get("/stats")
+                        .param("start", "2023-10-10 15:15:15")
+                        .param("end", "2023-10-20 15:15:15"))
+                .andExpect(status().isServiceUnavailable());
+
+        mockMvc.perform(post("/hit")
+                        .content("{\"app\":\"some-app\",\"uri\":\"/events/1\",\"ip\":\"127.0.0.1\","
+                                + "\"timestamp\":\"2023-10-10 15:15:15\"}")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        verify(statService, never()).getStats(any(), any(), any(), anyBoolean(), anyBoolean(), anyInt(), anyInt());
+        verify(statService).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void transferFull_adminExportRejected() {
+        mockMvc.perform(get("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .param("start", "2023-10-10 15:15:15")
+                        .param("end", "2023-10-20 15:15:15")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isServiceUnavailable());
+
+        verify(statService, never()).exportHits(any(), any(), any());
+    }
+
+    @Test
+    void interceptor_asyncResponse_permitReleasedWhenHandlerReturns() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Bulkhead bulkhead = new Bulkhead("test", 1, 0, meterRegistry);
+        BulkheadInterceptor interceptor = new BulkheadInterceptor(bulkhead);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/stats/stream");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, null);
+        interceptor.afterConcurrentHandlingStarted(request, response, null);
+        assertEquals(0, meterRegistry.get("stats.bulkhead.active").gauge().value());
+
+        request.setDispatcherType(DispatcherType.ASYNC);
+        interceptor.preHandle(request, response, null);
+        interceptor.afterCompletion(request, response, null, null);
+        assertEquals(0, meterRegistry.get("stats.bulkhead.active").gauge().value());
+    }
+}
@@ -0,0 +1,163 @@
+package ru.practicum.ewm.stats.statsserver.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatsCacheTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2023, 10, 10, 12, 0);
+
+    private final MutableClock clock = new MutableClock(NOW.toInstant(ZoneOffset.UTC));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void get_sameRequestWithUrisInOtherOrder_loadedOnce() {
+        StatsCache cache = cache(100, 1000);
+
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1", "/events/2"));
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/2", "/events/1"));
+
+        assertEquals(1, loads.get());
+        assertEquals(1.0, meterRegistry.get("stats.cache.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void get_openWindowAfterTtl_reloaded() {
+        StatsCache cache = cache(100, 1000);
+
+        get(cache, NOW.minusDays(1), NOW.plusDays(1), List.of("/events/1"));
+        clock.advanceMillis(999);
+        get(cache, NOW.minusDays(1), NOW.plusDays(1), List.of("/events/1"));
+        clock.advanceMillis(1);
+        get(cache, NOW.minusDays(1), NOW.plusDays(1), List.of("/events/1"));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidate_hitInsideClosedWindow_reloaded() {
+        StatsCache cache = cache(100, 1000);
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"));
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of());
+
+        cache.invalidate(List.of(stat("/events/2", NOW.minusDays(3)), stat("/events/2", NOW.minusHours(36))));
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"));
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of());
+
+        assertEquals(3, loads.get());
+        assertEquals(1.0, meterRegistry.get("stats.cache.evictions").tag("cause", "invalidated").counter().count());
+    }
+
+    @Test
+    void invalidate_betweenLoadAndStore_staleResultNotCached() {
+        StatsCache cache = cache(100, 1000);
+        cache.get(NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"), false, false, () -> {
+            loads.incrementAndGet();
+            clock.onNextRead(() -> cache.invalidate(List.of(stat("/events/1", NOW.minusHours(36)))));
+            return List.of(new ViewStats("ewm-main-service", "/events/1", 1));
+        });
+
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"));
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void get_moreEntriesThanMax_leastRecentlyUsedEvicted() {
+        StatsCache cache = cache(2, 1000);
+
+        get(cache, NOW.minusDays(3), NOW.minusDays(2), List.of());
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of());
+        get(cache, NOW.minusDays(3), NOW.minusDays(2), List.of());
+        get(cache, NOW.minusDays(4), NOW.minusDays(3), List.of());
+        get(cache, NOW.minusDays(3), NOW.minusDays(2), List.of());
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of());
+
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.size());
+        assertEquals(2.0, meterRegistry.get("stats.cache.evictions").tag("cause", "size").counter().count());
+    }
+
+    @Test
+    void get_closedWindowTouchedWithinReplicaStaleness_keptOnlyUntilReplicaCaughtUp() {
+        StatsCache cache = new StatsCache(meterRegistry, clock, 100, 1024 * 1024, 1000, 3_600_000, 5000);
+        cache.invalidate(List.of(stat("/events/1", NOW.minusHours(36))));
+        clock.advanceMillis(1000);
+
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"));
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/2"));
+        clock.advanceMillis(3999);
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"));
+        clock.advanceMillis(1);
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"));
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/1"));
+        get(cache, NOW.minusDays(2), NOW.minusDays(1), List.of("/events/2"));
+
+        assertEquals(3, loads.get());
+    }
+
+    private StatsCache cache(int maxEntries, long openWindowTtlMillis) {
+        return new StatsCache(meterRegistry, clock, maxEntries, 1024 * 1024, openWindowTtlMillis, 3_600_000, 0);
+    }
+
+    private List<ViewStats> get(StatsCache cache, LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return cache.get(start, end, uris, false, false, () -> {
+            loads.incrementAndGet();
+            return List.of(new ViewStats("ewm-main-service", "/events/1", 1));
+        });
+    }
+
+    private Stat stat(String uri, LocalDateTime timestamp) {
+        return new Stat(null, "ewm-main-service", uri, "192.168.0.1", timestamp);
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+        private Runnable onNextRead;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void onNextRead(Runnable action) {
+            onNextRead = action;
+        }
+
+        private void advanceMillis(long millis) {
+            instant = instant.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            Runnable action = onNextRead;
+            if (action != null) {
+                onNextRead = null;
+                action.run();
+            }
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package ru.practicum.ewm.stats.statsserver.controller;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.practicum.ewm.stats.statsserver.exception.InvalidTimePeriodException;
+import ru.practicum.ewm.stats.statsserver.exception.UnsupportedStorageOperationException;
+import ru.practicum.ewm.stats.statsserver.mapper.EndpointHitParser;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = HitTransferController.class,
+        properties = {"stats-server.import.chunk-size=2", "stats-server.admin.token=secret"})
+@Import(EndpointHitParser.class)
+class HitTransferControllerTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 10, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2023, 10, 11, 0, 0);
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    StatService statService;
+
+    @SneakyThrows
+    @Test
+    void export_csvAndNdjson_streamedRows() {
+        doAnswer(invocation -> {
+            Consumer<Stat> consumer = invocation.getArgument(2);
+            consumer.accept(new Stat(1L, "app", "/events/1", "192.168.0.1",
+                    LocalDateTime.of(2023, 10, 10, 15, 15, 15)));
+            consumer.accept(new Stat(2L, "app", "/events/\"2\",x", "192.168.0.2",
+                    LocalDateTime.of(2023, 10, 10, 15, 15, 16)));
+            return null;
+        }).when(statService).exportHits(eq(START), eq(END), any());
+
+        mockMvc.perform(get("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("end", "2023-10-11 00:00:00")
+                        .accept(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(content().string("app,uri,ip,timestamp\r\n"
+                        + "app,/events/1,192.168.0.1,2023-10-10 15:15:15\r\n"
+                        + "app,\"/events/\"\"2\"\",x\",192.168.0.2,2023-10-10 15:15:16\r\n"));
+
+        mockMvc.perform(get("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("end", "2023-10-11 00:00:00")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"app\":\"app\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\","
+                        + "\"timestamp\":\"2023-10-10 15:15:15\"}\n"
+                        + "{\"app\":\"app\",\"uri\":\"/events/\\\"2\\\",x\",\"ip\":\"192.168.0.2\","
+                        + "\"timestamp\":\"2023-10-10 15:15:16\"}\n"));
+    }
+
+    @SneakyThrows
+    @Test
+    void export_incorrectPeriod_badRequest() {
+        doThrow(new InvalidTimePeriodException("некорректный временной период")).when(statService)
+                .exportHits(any(), any(), any());
+
+        mockMvc.perform(get("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .param("start", "2023-10-11 00:00:00")
+                        .param("end", "2023-10-10 00:00:00")
+                        .accept(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(status().isBadRequest());
+    }
+
+    @SneakyThrows
+    @Test
+    void export_storageWithoutExport_notImplemented() {
+        doThrow(new UnsupportedStorageOperationException("хранилище не поддерживает выгрузку посещений"))
+                .when(statService).exportHits(any(), any(), any());
+
+        mockMvc.perform(get("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("end", "2023-10-11 00:00:00")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isNotImplemented());
+    }
+
+    @SneakyThrows
+    @Test
+    void export_withoutOrWithWrongToken_forbidden() {
+        mockMvc.perform(get("/admin/hits")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("end", "2023-10-11 00:00:00")
+                        .accept(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret2")
+                        .content("app,uri,ip,timestamp\n")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(status().isForbidden());
+
+        verify(statService, never()).exportHits(any(), any(), any());
+        verify(statService, never()).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void import_csv_savedInChunks() {
+        mockMvc.perform(post("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .content("app,uri,ip,timestamp\n"
+                                + "app,/events/1,192.168.0.1,2023-10-10 15:15:15\n"
+                                + "app,/events/2,192.168.0.1,2023-10-10 15:15:16\n"
+                                + "app,/events/3,192.168.0.1,2023-10-10 15:15:17\n")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(status().isCreated());
+
+        verify(statService, times(1)).createStats(argThat(stats -> stats.size() == 2));
+        verify(statService, times(1)).createStats(argThat(stats -> stats.size() == 1));
+    }
+
+    @SneakyThrows
+    @Test
+    void import_csvWithoutHeader_badRequest() {
+        mockMvc.perform(post("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .content("app,/events/1,192.168.0.1,2023-10-10 15:15:15\n")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(status().isBadRequest());
+
+        verify(statService, never()).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void import_csvInvalidRecordAfterChunk_badRequestWithSavedCount() {
+        mockMvc.perform(post("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .content("app,uri,ip,timestamp\n"
+                                + "app,/events/1,192.168.0.1,2023-10-10 15:15:15\n"
+                                + "app,/events/2,192.168.0.1,2023-10-10 15:15:16\n"
+                                + "app,/events/3,192.168.0.1,не время\n")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(HitTransferController.TEXT_CSV_VALUE))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$['некорректные данные']", containsString("сохранено до ошибки: 2")));
+
+        verify(statService, times(1)).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void import_ndjsonMalformedAfterChunk_badRequestWithSavedCount() {
+        mockMvc.perform(post("/admin/hits")
+                        .header(AdminTokenInterceptor.HEADER, "secret")
+                        .content("{\"app\":\"app\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\","
+                                + "\"timestamp\":\"2023-10-10 15:15:15\"}\n"
+                                + "{\"app\":\"app\",\"uri\":\"/events/2\",\"ip\":\"192.168.0.1\","
+                                + "\"timestamp\":\"2023-10-10 15:15:16\"}\n"
+                                + "{\"app\":\"app\",\n")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$['некорректные данные']", containsString("сохранено до ошибки: 2")));
+
+        verify(statService, times(1)).createStats(anyList());
+    }
+}
@@ -6,22 +6,50 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsReader;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsWriter;
+import ru.practicum.ewm.stats.statsdto.binary.StatsBinaryFormat;
+import ru.practicum.ewm.stats.statsserver.exception.InvalidTimePeriodException;
+import ru.practicum.ewm.stats.statsserver.mapper.EndpointHitParser;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
 import ru.practicum.ewm.stats.statsserver.service.StatService;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
 
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(controllers = StatController.class)
+@Import(EndpointHitParser.class)
 class StatControllerTest {
     @Autowired
     MockMvc mockMvc;
@@ -49,6 +77,132 @@ class StatControllerTest {
                 .andExpect(status().isBadRequest());
 
         verify(statService, never()).create(any(EndpointHit.class));
+        verify(statService, never()).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void create_correctBody_saved() {
+        mockMvc.perform(post("/hit")
+                        .content("{\"app\":\"some-app\",\"uri\":\"/events/1\",\"ip\":\"127.0.0.1\","
+                                + "\"timestamp\":\"2023-10-10 15:15:15\"}")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        verify(statService, times(1)).createStats(argThat(stats -> stats.size() == 1
+                && stats.get(0).getTimestamp().equals(LocalDateTime.of(2023, 10, 10, 15, 15, 15))));
+    }
+
+    @SneakyThrows
+    @Test
+    void createAll_incorrectHitInBatch_exception() {
+        final List<EndpointHit> endpointHits = List.of(
+                new EndpointHit("some-app", "/events/1", "127.0.0.1", "2023-10-10 15:15:15"),
+                EndpointHit.builder().app("some-app").uri("/events/2").ip("127.0.0.1").build());
+
+        mockMvc.perform(post("/hits")
+                        .content(objectMapper.writeValueAsString(endpointHits))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(statService, never()).createAll(anyList());
+        verify(statService, never()).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void createAll_invalidTimestampInBatch_badRequest() {
+        final List<EndpointHit> endpointHits = List.of(
+                new EndpointHit("some-app", "/events/1", "127.0.0.1", "2023-10-10 15:15:15"),
+                new EndpointHit("some-app", "/events/2", "127.0.0.1", "2023-13-45 10:00:00"));
+
+        mockMvc.perform(post("/hits")
+                        .content(objectMapper.writeValueAsString(endpointHits))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(statService, never()).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void createAll_jsonArray_savedInOneCall() {
+        final List<EndpointHit> endpointHits = List.of(
+                new EndpointHit("some-app", "/events/1", "127.0.0.1", "2023-10-10 15:15:15"),
+                new EndpointHit("some-app", "/events/2", "127.0.0.1", "2023-10-10 15:15:16"));
+
+        mockMvc.perform(post("/hits")
+                        .content(objectMapper.writeValueAsString(endpointHits))
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        verify(statService, times(1)).createStats(argThat(stats -> stats.size() == 2
+                && stats.get(1).getUri().equals("/events/2")));
+    }
+
+    @SneakyThrows
+    @Test
+    void createAll_ndjson_savedInOneChunk() {
+        final String body = objectMapper.writeValueAsString(
+                new EndpointHit("some-app", "/events/1", "127.0.0.1", "2023-10-10 15:15:15")) + "\n" +
+                objectMapper.writeValueAsString(
+                        new EndpointHit("some-app", "/events/2", "127.0.0.2", "2023-10-10 15:15:16")) + "\n";
+
+        mockMvc.perform(post("/hits")
+                        .content(body)
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isCreated());
+
+        verify(statService, times(1)).createStats(argThat(stats -> stats.size() == 2));
+    }
+
+    @SneakyThrows
+    @Test
+    void createAll_binary_saved() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (BinaryStatsWriter writer = new BinaryStatsWriter(body)) {
+            writer.writeHit("some-app", "/events/1", "127.0.0.1", LocalDateTime.of(2023, 10, 10, 15, 15, 15));
+            writer.writeHit("some-app", "/events/2", "127.0.0.1", LocalDateTime.of(2023, 10, 10, 15, 15, 16));
+        }
+
+        mockMvc.perform(post("/hits")
+                        .content(body.toByteArray())
+                        .contentType(StatsBinaryFormat.MEDIA_TYPE))
+                .andExpect(status().isCreated());
+
+        verify(statService, times(1)).createStats(argThat(stats -> stats.size() == 2
+                && stats.get(1).getTimestamp().equals(LocalDateTime.of(2023, 10, 10, 15, 15, 16))));
+    }
+
+    @SneakyThrows
+    @Test
+    void createAll_binaryOtherVersion_unsupportedMediaType() {
+        mockMvc.perform(post("/hits")
+                        .content(new byte[]{(byte) 0xE5, 1, 0})
+                        .contentType(StatsBinaryFormat.MEDIA_TYPE))
+                .andExpect(status().isUnsupportedMediaType());
+
+        verify(statService, never()).createStats(anyList());
+    }
+
+    @SneakyThrows
+    @Test
+    void createAll_ndjsonWithIncorrectLine_exception() {
+        mockMvc.perform(post("/hits")
+                        .content("{\"app\":\"some-app\",\"uri\":\"/events/1\"}\n")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.['некорректные данные']",
+                        startsWith("запись 1: ip: не должно быть пустым; сохранено до ошибки: 0")));
+
+        verify(statService, never()).createAll(anyList());
+        verify(statService, never()).createStats(anyList());
     }
 
     @SneakyThrows
@@ -58,7 +212,7 @@ class StatControllerTest {
                 .andExpect(status().isBadRequest());
 
         verify(statService, never()).getStats(any(LocalDateTime.class), any(LocalDateTime.class),
-                any(), any(Boolean.class));
+                any(), any(Boolean.class), any(Boolean.class), anyInt(), anyInt());
     }
 
     @SneakyThrows
@@ -70,6 +224,108 @@ class StatControllerTest {
                 .andExpect(status().isBadRequest());
 
         verify(statService, never()).getStats(any(LocalDateTime.class), any(LocalDateTime.class),
-                any(), any(Boolean.class));
+                any(), any(Boolean.class), any(Boolean.class), anyInt(), anyInt());
+    }
+
+    @SneakyThrows
+    @Test
+    void getStats_zeroLimit_exception() {
+        mockMvc.perform(get("/stats")
+                        .param("start", "2023-10-10 15:15:15")
+                        .param("end", "2023-10-20 15:15:15")
+                        .param("limit", "0"))
+                .andExpect(status().isBadRequest());
+
+        verify(statService, never()).getStats(any(LocalDateTime.class), any(LocalDateTime.class),
+                any(), any(Boolean.class), any(Boolean.class), anyInt(), anyInt());
+    }
+
+    @SneakyThrows
+    @Test
+    void getStats_topN_jsonArrayByDefault() {
+        when(statService.getStats(any(), any(), any(), anyBoolean(), anyBoolean(), eq(0), eq(10)))
+                .thenReturn(List.of(new ViewStats("some-app", "/events/1", 5)));
+
+        mockMvc.perform(get("/stats")
+                        .param("start", "2023-10-10 15:15:15")
+                        .param("end", "2023-10-20 15:15:15")
+                        .param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"app\":\"some-app\",\"uri\":\"/events/1\",\"hits\":5}]"));
+    }
+
+    @SneakyThrows
+    @Test
+    void getStats_ndjson_streamedLines() {
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(7);
+            consumer.accept(new ViewStats("some-app", "/events/1", 5));
+            consumer.accept(new ViewStats("some-app", "/events/2", 3));
+            return null;
+        }).when(statService).streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), eq(20), eq(0), any());
+
+        mockMvc.perform(get("/stats")
+                        .param("start", "2023-10-10 15:15:15")
+                        .param("end", "2023-10-20 15:15:15")
+                        .param("offset", "20")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"app\":\"some-app\",\"uri\":\"/events/1\",\"hits\":5}\n"
+                        + "{\"app\":\"some-app\",\"uri\":\"/events/2\",\"hits\":3}\n"));
+    }
+
+    @SneakyThrows
+    @Test
+    void getStats_binary_decoded() {
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(7);
+            consumer.accept(new ViewStats("some-app", "/events/1", 5));
+            consumer.accept(new ViewStats("some-app", "/events/2", 3));
+            return null;
+        }).when(statService).streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), anyInt(), anyInt(), any());
+
+        byte[] body = mockMvc.perform(get("/stats")
+                        .param("start", "2023-10-10 15:15:15")
+                        .param("end", "2023-10-20 15:15:15")
+                        .accept(StatsBinaryFormat.MEDIA_TYPE, MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(StatsBinaryFormat.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        BinaryStatsReader reader = new BinaryStatsReader(new ByteArrayInputStream(body));
+        assertEquals(new ViewStats("some-app", "/events/1", 5), reader.readViewStats());
+        assertEquals(new ViewStats("some-app", "/events/2", 3), reader.readViewStats());
+        assertNull(reader.readViewStats());
+    }
+
+    @SneakyThrows
+    @Test
+    void getStats_ndjsonIncorrectPeriod_badRequest() {
+        doThrow(new InvalidTimePeriodException("некорректный временной период")).when(statService)
+                .streamStats(any(), any(), any(), anyBoolean(), anyBoolean(), anyInt(), anyInt(), any());
+
+        mockMvc.perform(get("/stats")
+                        .param("start", "2023-10-20 15:15:15")
+                        .param("end", "2023-10-10 15:15:15")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @SneakyThrows
+    @Test
+    void getTimeSeries_bucketParameter_passedToService() {
+        when(statService.getTimeSeries(any(), any(), anyList(), anyBoolean(), anyBoolean(),
+                eq(RollupGranularity.MINUTE)))
+                .thenReturn(List.of(new ViewStatsBucket("app", "/events/1", "2023-10-10 15:15:00", 3)));
+
+        mockMvc.perform(get("/stats/timeseries")
+                        .param("start", "2023-10-10 15:15:15")
+                        .param("end", "2023-10-10 15:20:15")
+                        .param("uris", "/events/1")
+                        .param("bucket", "MINUTE"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"app\":\"app\",\"uri\":\"/events/1\","
+                        + "\"bucket\":\"2023-10-10 15:15:00\",\"hits\":3}]"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,179 @@
+package ru.practicum.ewm.stats.statsserver.live;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.controller.LiveStatsController;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = LiveStatsController.class, properties = {
+        "stats-server.live.tick-ms=3600000",
+        "stats-server.live.max-subscribers=1"})
+@Import({LiveStatsHub.class, SimpleMeterRegistry.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class LiveStatsHubTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 10, 0, 0);
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    LiveStatsHub liveStatsHub;
+
+    @MockBean
+    StatStorage statStorage;
+
+    @SneakyThrows
+    @Test
+    void subscribe_hitsCoalescedIntoDelta() {
+        when(statStorage.getStats(eq(START), any(), eq(List.of("/events/1")), eq(false), eq(false)))
+                .thenReturn(List.of(new ViewStats("app", "/events/1", 5)));
+
+        MvcResult result = mockMvc.perform(get("/stats/stream")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("uris", "/events/1")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // посещения первого тика после init могли копиться во время начального запроса и пересчитываются
+        liveStatsHub.tick();
+
+        liveStatsHub.publish(List.of(
+                new Stat(null, "app", "/events/1", "192.168.0.1", START.plusHours(1)),
+                new Stat(null, "app", "/events/1", "192.168.0.2", START.plusHours(2)),
+                new Stat(null, "app", "/events/2", "192.168.0.1", START.plusHours(2))));
+        liveStatsHub.tick();
+
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.contains("event:init\ndata:[{\"app\":\"app\",\"uri\":\"/events/1\",\"hits\":5}]"), events);
+        assertTrue(events.contains("event:delta\ndata:[{\"app\":\"app\",\"uri\":\"/events/1\",\"hits\":2}]"), events);
+        assertTrue(!events.contains("/events/2"), events);
+        verify(statStorage, times(1)).getStats(any(), any(), any(), eq(false), eq(false));
+    }
+
+    @SneakyThrows
+    @Test
+    void subscribeUnique_touchedUrisRecounted() {
+        when(statStorage.getStats(eq(START), any(), eq(List.of()), eq(true), eq(false)))
+                .thenReturn(List.of(new ViewStats("app", "/events/1", 5)));
+        when(statStorage.getStats(eq(START), any(), eq(List.of("/events/1")), eq(true), eq(false)))
+                .thenReturn(List.of(new ViewStats("app", "/events/1", 6)));
+
+        MvcResult result = mockMvc.perform(get("/stats/stream")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("unique", "true")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        liveStatsHub.publish(List.of(
+                new Stat(null, "app", "/events/1", "192.168.0.1", START.plusHours(1)),
+                new Stat(null, "app", "/events/1", "192.168.0.9", START.plusHours(1))));
+        liveStatsHub.tick();
+
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.contains("event:delta\ndata:[{\"app\":\"app\",\"uri\":\"/events/1\",\"hits\":1}]"), events);
+    }
+
+    @SneakyThrows
+    @Test
+    void subscribe_hitPendingAndAlreadyInInit_notCountedTwice() {
+        when(statStorage.getStats(eq(START), any(), eq(List.of("/events/1")), eq(false), eq(false)))
+                .thenAnswer(invocation -> {
+                    // посещение уже видно начальному запросу, но ещё ждёт тика
+                    liveStatsHub.publish(List.of(new Stat(null, "app", "/events/1", "192.168.0.1",
+                            START.plusHours(1))));
+                    return List.of(new ViewStats("app", "/events/1", 6));
+                })
+                .thenReturn(List.of(new ViewStats("app", "/events/1", 6)));
+
+        MvcResult result = mockMvc.perform(get("/stats/stream")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("uris", "/events/1")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        liveStatsHub.tick();
+        liveStatsHub.tick();
+
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.contains("event:init\ndata:[{\"app\":\"app\",\"uri\":\"/events/1\",\"hits\":6}]"), events);
+        assertFalse(events.contains("event:delta"), events);
+    }
+
+    @SneakyThrows
+    @Test
+    void subscribe_hitDrainedDuringInit_recountedAfterInit() {
+        Stat hit = new Stat(null, "app", "/events/1", "192.168.0.1", START.plusHours(1));
+        when(statStorage.getStats(eq(START), any(), eq(List.of("/events/1")), eq(false), eq(false)))
+                .thenAnswer(invocation -> {
+                    // посещение записано после снимка начального запроса и выбрано тиком до окончания init
+                    liveStatsHub.publish(List.of(hit));
+                    liveStatsHub.tick();
+                    return List.of(new ViewStats("app", "/events/1", 5));
+                })
+                .thenReturn(List.of(new ViewStats("app", "/events/1", 6)));
+
+        MvcResult result = mockMvc.perform(get("/stats/stream")
+                        .param("start", "2023-10-10 00:00:00")
+                        .param("uris", "/events/1")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        liveStatsHub.tick();
+
+        String events = result.getResponse().getContentAsString();
+        assertTrue(events.contains("event:delta\ndata:[{\"app\":\"app\",\"uri\":\"/events/1\",\"hits\":1}]"), events);
+        verify(statStorage, times(2)).getStats(any(), any(), any(), eq(false), eq(false));
+    }
+
+    @SneakyThrows
+    @Test
+    void subscribe_overLimit_serviceUnavailable() {
+        mockMvc.perform(get("/stats/stream")
+                        .param("start", "2023-10-10 00:00:00")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+
+        mockMvc.perform(get("/stats/stream")
+                        .param("start", "2023-10-10 00:00:00")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isServiceUnavailable());
+        assertEquals(1, liveStatsHub.subscriberCount());
+    }
+
+    @SneakyThrows
+    @Test
+    void subscribe_startInFuture_badRequest() {
+        mockMvc.perform(get("/stats/stream")
+                        .param("start", LocalDateTime.now().plusDays(1).withNano(0).toString().replace('T', ' '))
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isBadRequest());
+        assertEquals(0, liveStatsHub.subscriberCount());
+    }
+}
@@ -0,0 +1,215 @@
+package ru.practicum.ewm.stats.statsserver.mapper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.binary.BinaryStatsWriter;
+import ru.practicum.ewm.stats.statsserver.exception.InvalidHitException;
+import ru.practicum.ewm.stats.statsserver.exception.UnsupportedHitFormatException;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EndpointHitParserTest {
+    final EndpointHitParser parser = new EndpointHitParser(new ObjectMapper());
+
+    @Test
+    void parse_correctBody_statWithTimestamp() throws IOException {
+        Stat stat = parser.parse(body("{\"id\":7,\"app\":\"app\",\"uri\":\"/events/1\",\"extra\":{\"a\":[1]},"
+                + "\"ip\":\"192.168.0.1\",\"timestamp\":\"2023-10-10 15:15:15\"}"));
+
+        assertEquals(new Stat(null, "app", "/events/1", "192.168.0.1", LocalDateTime.of(2023, 10, 10, 15, 15, 15)),
+                stat);
+    }
+
+    @Test
+    void parse_missingOrTooLongField_exception() {
+        assertThrows(InvalidHitException.class,
+                () -> parser.parse(body("{\"app\":\"app\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\"}")));
+        assertThrows(InvalidHitException.class, () -> parser.parse(body("{\"app\":\" \",\"uri\":\"/events/1\","
+                + "\"ip\":\"192.168.0.1\",\"timestamp\":\"2023-10-10 15:15:15\"}")));
+        assertThrows(InvalidHitException.class, () -> parser.parse(body("{\"app\":\"app\",\"uri\":\"/events/1\","
+                + "\"ip\":\"" + "1".repeat(40) + "\",\"timestamp\":\"2023-10-10 15:15:15\"}")));
+        assertThrows(InvalidHitException.class, () -> parser.parse(body("{\"app\":\"app\",\"uri\":\"/events/1\","
+                + "\"ip\":\"192.168.0.1\",\"timestamp\":\"2023-02-30 15:15:15\"}")));
+        assertThrows(InvalidHitException.class, () -> parser.parse(body("[]")));
+    }
+
+    @Test
+    void parseAll_ndjson_chunks() throws IOException {
+        String line = "{\"app\":\"app\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\","
+                + "\"timestamp\":\"2023-10-10 15:15:15\"}\n";
+        List<Integer> chunks = new ArrayList<>();
+
+        int count = parser.parseAll(body(line.repeat(5)), 2, chunk -> chunks.add(chunk.size()));
+
+        assertEquals(5, count);
+        assertEquals(List.of(2, 2, 1), chunks);
+    }
+
+    @Test
+    void parseAllBinary_roundTrip_chunks() throws IOException {
+        LocalDateTime timestamp = LocalDateTime.of(2023, 10, 10, 15, 15, 15);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (BinaryStatsWriter writer = new BinaryStatsWriter(body)) {
+            for (int i = 0; i < 5; i++) {
+                writer.writeHit("app", "/events/" + (i % 2), "192.168.0.1", timestamp.minusSeconds(i * 10));
+            }
+        }
+        List<Stat> stats = new ArrayList<>();
+        List<Integer> chunks = new ArrayList<>();
+
+        int count = parser.parseAllBinary(new ByteArrayInputStream(body.toByteArray()), 2, chunk -> {
+            stats.addAll(chunk);
+            chunks.add(chunk.size());
+        });
+
+        assertEquals(5, count);
+        assertEquals(List.of(2, 2, 1), chunks);
+        assertEquals(new Stat(null, "app", "/events/1", "192.168.0.1", timestamp.minusSeconds(30)), stats.get(3));
+    }
+
+    @Test
+    void parseAllBinary_incorrectBody_exception() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (BinaryStatsWriter writer = new BinaryStatsWriter(body)) {
+            writer.writeHit("app", "/events/1", "1".repeat(40), LocalDateTime.of(2023, 10, 10, 15, 15, 15));
+        }
+        byte[] bytes = body.toByteArray();
+
+        assertThrows(InvalidHitException.class,
+                () -> parser.parseAllBinary(new ByteArrayInputStream(bytes), 2, chunk -> { }));
+        assertThrows(InvalidHitException.class,
+                () -> parser.parseAllBinary(new ByteArrayInputStream(bytes, 0, bytes.length - 1), 2, chunk -> { }));
+        assertThrows(InvalidHitException.class, () -> parser.parseAllBinary(body("{}"), 2, chunk -> { }));
+    }
+
+    @Test
+    void parseAllBinary_moreDistinctUrisThanDictionary_allDecoded() throws IOException {
+        LocalDateTime timestamp = LocalDateTime.of(2023, 10, 10, 15, 15, 15);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (BinaryStatsWriter writer = new BinaryStatsWriter(body)) {
+            for (int i = 0; i < 20_000; i++) {
+                writer.writeHit("app", "/events/" + i, "192.168.0." + i % 256, timestamp);
+            }
+        }
+        List<Stat> stats = new ArrayList<>();
+
+        int count = parser.parseAllBinary(new ByteArrayInputStream(body.toByteArray()), 1000, stats::addAll);
+
+        assertEquals(20_000, count);
+        assertEquals(new Stat(null, "app", "/events/19999", "192.168.0.31", timestamp), stats.get(19_999));
+    }
+
+    @Test
+    void parseAllBinary_dictionaryOverflow_exception() {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(0xE5);
+        body.write(2);
+        for (int i = 0; i <= 16384; i++) {
+            // каждое посещение добавляет в словарь новый app, честный писатель так не делает
+            writeNewEntry(body, "app-" + i);
+            body.write(1);
+            writeInline(body, "/events/1");
+            writeInline(body, "192.168.0.1");
+            body.write(0);
+        }
+
+        InvalidHitException e = assertThrows(InvalidHitException.class,
+                () -> parser.parseAllBinary(new ByteArrayInputStream(body.toByteArray()), 100, chunk -> { }));
+        assertTrue(e.getMessage().contains("словарь"), e.getMessage());
+    }
+
+    @Test
+    void parseAllBinary_otherVersion_unsupportedFormat() {
+        byte[] body = {(byte) 0xE5, 1, 0};
+
+        assertThrows(UnsupportedHitFormatException.class,
+                () -> parser.parseAllBinary(new ByteArrayInputStream(body), 2, chunk -> { }));
+    }
+
+    @Test
+    void parseAllCsv_quotedFields_chunks() throws IOException {
+        List<Stat> stats = new ArrayList<>();
+        List<Integer> chunks = new ArrayList<>();
+
+        int count = parser.parseAllCsv(body("app,uri,ip,timestamp\r\n"
+                + "app,/events/1,192.168.0.1,2023-10-10 15:15:15\r\n"
+                + "\"a,\"\"b\"\"\",\"/events/2\n?x\",192.168.0.2,2023-10-10 15:15:16\n"
+                + "app,/events/3,192.168.0.3,2023-10-10 15:15:17"), 2, chunk -> {
+                    stats.addAll(chunk);
+                    chunks.add(chunk.size());
+                });
+
+        assertEquals(3, count);
+        assertEquals(List.of(2, 1), chunks);
+        assertEquals(new Stat(null, "a,\"b\"", "/events/2\n?x", "192.168.0.2",
+                LocalDateTime.of(2023, 10, 10, 15, 15, 16)), stats.get(1));
+    }
+
+    @Test
+    void parseAllCsv_incorrectBody_exception() {
+        assertThrows(InvalidHitException.class, () -> parser.parseAllCsv(
+                body("app,/events/1,192.168.0.1,2023-10-10 15:15:15\n"), 2, chunk -> { }));
+        assertThrows(InvalidHitException.class, () -> parser.parseAllCsv(
+                body("app,uri,ip,timestamp\napp,/events/1,192.168.0.1\n"), 2, chunk -> { }));
+        assertThrows(InvalidHitException.class, () -> parser.parseAllCsv(
+                body("app,uri,ip,timestamp\napp,\"/events/1,192.168.0.1,2023-10-10 15:15:15\n"), 2, chunk -> { }));
+        InvalidHitException e = assertThrows(InvalidHitException.class, () -> parser.parseAllCsv(
+                body("app,uri,ip,timestamp\napp,/events/1,192.168.0.1,2023-10-10 15:15:15\n"
+                        + "app,/events/1,192.168.0.1,2023-02-30 15:15:15\n"), 2, chunk -> { }));
+        assertTrue(e.getMessage().startsWith("csv, запись 2: timestamp"));
+    }
+
+    @Test
+    void parseTimestamp_encodedAndIncorrect() {
+        assertEquals(LocalDateTime.of(2023, 10, 10, 15, 15, 16),
+                StatMapper.encodedStingToLocalDateTime("2023-10-10%2015:15:16"));
+        assertThrows(DateTimeParseException.class, () -> StatMapper.parseTimestamp("2023-10-10T15:15:15"));
+        assertThrows(DateTimeParseException.class, () -> StatMapper.parseTimestamp("2023-1a-10 15:15:15"));
+        assertThrows(DateTimeParseException.class, () -> StatMapper.parseTimestamp("2023-10-10 24:15:15"));
+        assertThrows(InvalidHitException.class, () -> StatMapper.endpointHitToStatMapper(
+                new EndpointHit("app", "/events/1", "192.168.0.1", "2023-13-45 10:00:00")));
+    }
+
+    @Test
+    void parseArray_wholeArrayCheckedWithRecordNumber() throws IOException {
+        String hit = "{\"app\":\"app\",\"uri\":\"/events/1\",\"ip\":\"192.168.0.1\","
+                + "\"timestamp\":\"2023-10-10 15:15:15\"}";
+
+        assertEquals(2, parser.parseArray(body("[" + hit + "," + hit + "]")).size());
+        InvalidHitException e = assertThrows(InvalidHitException.class, () -> parser.parseArray(
+                body("[" + hit + "," + hit.replace("2023-10-10", "2023-13-45") + "]")));
+        assertTrue(e.getMessage().startsWith("запись 2: timestamp"));
+        assertThrows(JsonProcessingException.class, () -> parser.parseArray(body("[" + hit)));
+        assertThrows(InvalidHitException.class, () -> parser.parseArray(body(hit)));
+    }
+
+    private static void writeNewEntry(ByteArrayOutputStream out, String value) {
+        out.write(0);
+        writeInline(out, value);
+    }
+
+    private static void writeInline(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,133 @@
+package ru.practicum.ewm.stats.statsserver.partition;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.JdbcStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.StatRollupRepository;
+import ru.practicum.ewm.stats.statsserver.repository.StatSketchRepository;
+import ru.practicum.ewm.stats.statsserver.storage.RelationalStatStorage;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatPartitionManagerTest {
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void maintain_missingAndExpiredPartitions_createdAndDropped() {
+        Clock clock = Clock.fixed(Instant.parse("2023-10-15T12:00:00Z"), ZoneOffset.UTC);
+        StatPartitionManager manager = new StatPartitionManager(jdbcTemplate,
+                new TransactionTemplate(transactionManager), clock, 2, 6);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "statistics_p202301", "statistics_p202309", "statistics_p202310", "statistics_default"));
+
+        manager.maintain();
+
+        verify(jdbcTemplate).execute("DROP TABLE IF EXISTS statistics_p202301");
+        verify(jdbcTemplate, never()).execute("DROP TABLE IF EXISTS statistics_p202309");
+        verify(jdbcTemplate).update(startsWith("DELETE FROM statistics_default"), any(Timestamp.class));
+        verify(jdbcTemplate).update("DELETE FROM stat_rollup_day WHERE bucket < ?",
+                Timestamp.valueOf(LocalDateTime.of(2023, 4, 1, 0, 0)));
+        verify(jdbcTemplate).update("DELETE FROM stat_sketch_minute WHERE bucket < ?",
+                Timestamp.valueOf(LocalDateTime.of(2023, 4, 1, 0, 0)));
+        verify(jdbcTemplate).update("DELETE FROM stat_sketch_pending WHERE bucket < ?",
+                Timestamp.valueOf(LocalDateTime.of(2023, 4, 1, 0, 0)));
+        verify(jdbcTemplate, never()).execute(startsWith("CREATE TABLE statistics_p202310 "));
+        verify(jdbcTemplate).execute(startsWith("CREATE TABLE statistics_p202311 "));
+        verify(jdbcTemplate).execute(startsWith("CREATE TABLE statistics_p202312 "));
+        verify(jdbcTemplate).execute("ALTER TABLE statistics ATTACH PARTITION statistics_p202312 " +
+                "FOR VALUES FROM ('2023-12-01 00:00:00.0') TO ('2024-01-01 00:00:00.0')");
+    }
+
+    @Test
+    void maintain_newPartition_insertsLockedFromMoveToAttach() {
+        Clock clock = Clock.fixed(Instant.parse("2023-10-15T12:00:00Z"), ZoneOffset.UTC);
+        StatPartitionManager manager = new StatPartitionManager(jdbcTemplate,
+                new TransactionTemplate(transactionManager), clock, 0, 0);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of("statistics_p202310"));
+
+        manager.maintain();
+
+        InOrder inOrder = inOrder(jdbcTemplate, transactionManager);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(jdbcTemplate).execute("LOCK TABLE statistics IN SHARE ROW EXCLUSIVE MODE");
+        inOrder.verify(jdbcTemplate).execute(startsWith("CREATE TABLE statistics_p202309 "));
+        inOrder.verify(jdbcTemplate).update(startsWith("WITH moved AS (DELETE FROM statistics_default"),
+                any(Timestamp.class), any(Timestamp.class));
+        inOrder.verify(jdbcTemplate).execute(startsWith("ALTER TABLE statistics ATTACH PARTITION statistics_p202309 "));
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void purgeAggregates_oldMonthsPurged_notUniqueAndApproximateMatchExact() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:retention-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "test", "test");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        JdbcTemplate h2 = new JdbcTemplate(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        StatSketchRepository sketchRepository = new StatSketchRepository(h2, 12, true);
+        StatStorage storage = new RelationalStatStorage(null, new JdbcStatRepository(h2, 500, 100),
+                new StatRollupRepository(h2), sketchRepository);
+        LocalDateTime oldestKept = LocalDateTime.of(2023, 10, 1, 0, 0);
+        storage.saveAll(List.of(
+                stat("192.168.0.1", LocalDateTime.of(2023, 8, 10, 10, 0)),
+                stat("192.168.0.2", LocalDateTime.of(2023, 9, 30, 23, 59, 59)),
+                stat("192.168.0.3", LocalDateTime.of(2023, 10, 1, 0, 0)),
+                stat("192.168.0.4", LocalDateTime.of(2023, 10, 2, 12, 30))));
+        transactionTemplate.execute(status -> sketchRepository.rebuildPending(100, (bucket, app, uri, sketch) -> {
+        }));
+
+        h2.update("DELETE FROM statistics WHERE created < ?", Timestamp.valueOf(oldestKept));
+        new StatPartitionManager(h2, transactionTemplate, Clock.systemUTC(), 0, 1).purgeAggregates(oldestKept);
+
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 12, 31, 0, 0);
+        List<ViewStats> expected = List.of(new ViewStats("app", "/events/1", 2));
+        assertEquals(expected, storage.getStats(start, end, List.of(), false, false));
+        assertEquals(expected, storage.getStats(start, end, List.of(), true, true));
+        assertEquals(0, h2.queryForObject("SELECT COUNT(*) FROM stat_sketch_pending", Integer.class));
+    }
+
+    @Test
+    void partitionName_month_suffixedWithYearAndMonth() {
+        assertEquals("statistics_p202403", StatPartitionManager.partitionName(YearMonth.of(2024, 3)));
+    }
+
+    private static Stat stat(String ip, LocalDateTime timestamp) {
+        return new Stat(null, "app", "/events/1", ip, timestamp);
+    }
+}
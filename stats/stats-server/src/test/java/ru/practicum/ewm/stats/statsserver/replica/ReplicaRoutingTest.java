@@ -0,0 +1,88 @@
+package ru.practicum.ewm.stats.statsserver.replica;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.StatsServerApp;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Основная база и реплика - две независимые базы H2 в памяти; репликацию изображают записи прямо в реплику.
+ */
+@SpringBootTest(classes = StatsServerApp.class, properties = {
+        "spring.datasource.url=" + ReplicaRoutingTest.PRIMARY_URL,
+        "stats-server.replica.enabled=true",
+        "stats-server.replica.datasource.url=" + ReplicaRoutingTest.REPLICA_URL,
+        "stats-server.replica.datasource.username=test",
+        "stats-server.replica.datasource.password=test",
+        "stats-server.replica.heartbeat-interval-ms=3600000",
+        "stats-server.replica.max-staleness-ms=60000",
+        "stats-server.cache.max-entries=0"})
+class ReplicaRoutingTest {
+    static final String PRIMARY_URL = "jdbc:h2:mem:stats-primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:stats-replica;DB_CLOSE_DELAY=-1";
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 10, 0, 0);
+    private static final String INSERT_HIT = "INSERT INTO statistics (app, uri, ip, created) VALUES (?, ?, ?, ?)";
+    private static final String COUNT_HITS = "SELECT COUNT(*) FROM statistics";
+    private static final String SET_BEAT = "MERGE INTO stat_replica_heartbeat (id, beat) KEY (id) VALUES (1, ?)";
+
+    @Autowired
+    StatService statService;
+
+    @Autowired
+    ReplicaLagMonitor replicaLagMonitor;
+
+    final JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource(PRIMARY_URL, "test", "test"));
+    final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "test", "test"));
+
+    @BeforeEach
+    void setUp() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(replica.getDataSource());
+    }
+
+    @Test
+    void getStats_routedToFreshReplica_createStaysOnPrimary() {
+        Timestamp created = Timestamp.valueOf(START.plusHours(12));
+        statService.createStats(List.of(new Stat(null, "app", "/events/1", "10.0.0.1", START.plusHours(12))));
+        replica.update(INSERT_HIT, "app", "/events/1", "10.0.0.1", created);
+        replica.update(INSERT_HIT, "app", "/events/1", "10.0.0.2", created);
+
+        replicaLagMonitor.check();
+        assertFalse(replicaLagMonitor.isReplicaUsable());
+        assertEquals(List.of(new ViewStats("app", "/events/1", 1)), uniqueStats());
+
+        replica.update(SET_BEAT, System.currentTimeMillis());
+        replicaLagMonitor.check();
+        assertTrue(replicaLagMonitor.isReplicaUsable());
+        assertEquals(List.of(new ViewStats("app", "/events/1", 2)), uniqueStats());
+
+        statService.createStats(List.of(new Stat(null, "app", "/events/1", "10.0.0.3", START.plusHours(13))));
+        assertEquals(2, primary.queryForObject(COUNT_HITS, Integer.class));
+        assertEquals(2, replica.queryForObject(COUNT_HITS, Integer.class));
+
+        replica.update(SET_BEAT, System.currentTimeMillis() - 120_000);
+        replicaLagMonitor.check();
+        assertFalse(replicaLagMonitor.isReplicaUsable());
+        assertEquals(List.of(new ViewStats("app", "/events/1", 2)), uniqueStats());
+        assertTrue(primary.queryForObject("SELECT beat FROM stat_replica_heartbeat WHERE id = 1", Long.class) > 0);
+    }
+
+    private List<ViewStats> uniqueStats() {
+        return statService.getStats(START, START.plusDays(1), List.of(), true, false);
+    }
+}
@@ -0,0 +1,109 @@
+package ru.practicum.ewm.stats.statsserver.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.sketch.HyperLogLog;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatSketchRepositoryTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 1, 10, 0, 0);
+    private static final String COUNT_PENDING = "SELECT COUNT(*) FROM stat_sketch_pending";
+
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:sketch-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "test", "test");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Test
+    void addAll_onlyPendingMarks_rebuildMergesMinutesIntoHourSketch() {
+        StatSketchRepository repository = new StatSketchRepository(jdbcTemplate, 12, true);
+        save(repository, List.of(
+                stat("192.168.0.1", START.plusSeconds(5)),
+                stat("192.168.0.2", START.plusSeconds(50)),
+                stat("192.168.0.1", START.plusMinutes(1))));
+
+        assertEquals(2, jdbcTemplate.queryForObject(COUNT_PENDING, Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stat_sketch_hour", Integer.class));
+
+        List<LocalDateTime> rebuilt = new ArrayList<>();
+        Integer processed = transactionTemplate.execute(status -> repository.rebuildPending(100,
+                (bucket, app, uri, sketch) -> rebuilt.add(bucket)));
+
+        assertEquals(2, processed);
+        assertEquals(List.of(START, START.plusMinutes(1)), rebuilt);
+        assertEquals(0, jdbcTemplate.queryForObject(COUNT_PENDING, Integer.class));
+        assertEquals(2, hourEstimate(repository));
+        assertTrue(jdbcTemplate.queryForObject("SELECT MAX(LENGTH(registers)) FROM stat_sketch_minute",
+                Integer.class) < 16, "скетч из двух ip хранится разреженным");
+
+        save(repository, List.of(stat("192.168.0.3", START.plusMinutes(1).plusSeconds(1))));
+        transactionTemplate.execute(status -> repository.rebuildPending(100, (bucket, app, uri, sketch) -> { }));
+
+        assertEquals(3, hourEstimate(repository));
+    }
+
+    @Test
+    void rebuildPending_precisionChanged_storedSketchesMergedAtLowerPrecision() {
+        StatSketchRepository before = new StatSketchRepository(jdbcTemplate, 10, true);
+        save(before, List.of(stat("192.168.0.1", START), stat("192.168.0.2", START.plusMinutes(1))));
+        transactionTemplate.execute(status -> before.rebuildPending(100, (bucket, app, uri, sketch) -> { }));
+
+        StatSketchRepository after = new StatSketchRepository(jdbcTemplate, 12, true);
+        save(after, List.of(stat("192.168.0.3", START.plusMinutes(2))));
+        transactionTemplate.execute(status -> after.rebuildPending(100, (bucket, app, uri, sketch) -> { }));
+
+        assertEquals(3, hourEstimate(after));
+    }
+
+    @Test
+    void addAll_disabled_nothingPending() {
+        StatSketchRepository repository = new StatSketchRepository(jdbcTemplate, 12, false);
+
+        save(repository, List.of(stat("192.168.0.1", START)));
+
+        assertEquals(0, jdbcTemplate.queryForObject(COUNT_PENDING, Integer.class));
+    }
+
+    private void save(StatSketchRepository repository, List<Stat> stats) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Stat stat : stats) {
+                jdbcTemplate.update("INSERT INTO statistics (app, uri, ip, created) VALUES (?, ?, ?, ?)",
+                        stat.getApp(), stat.getUri(), stat.getIp(), Timestamp.valueOf(stat.getTimestamp()));
+            }
+            repository.addAll(stats);
+        });
+    }
+
+    private long hourEstimate(StatSketchRepository repository) {
+        HyperLogLog merged = repository.emptySketch();
+        repository.forEachSketch(RollupGranularity.HOUR, START, START.plusHours(1), List.of(),
+                (app, uri, sketch) -> merged.merge(sketch));
+        return merged.estimate();
+    }
+
+    private static Stat stat(String ip, LocalDateTime timestamp) {
+        return new Stat(null, "app", "/events/1", ip, timestamp);
+    }
+}
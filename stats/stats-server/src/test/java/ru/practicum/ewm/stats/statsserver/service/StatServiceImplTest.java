@@ -1,35 +1,87 @@
 package ru.practicum.ewm.stats.statsserver.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.ewm.stats.statsdto.EndpointHit;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.cache.StatsCache;
 import ru.practicum.ewm.stats.statsserver.exception.InvalidTimePeriodException;
-import ru.practicum.ewm.stats.statsserver.repository.JpaStatRepository;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+import ru.practicum.ewm.stats.statsserver.writer.StatWriter;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class StatServiceImplTest {
     StatService statService;
 
     @Mock
-    JpaStatRepository jpaRepository;
+    StatStorage statStorage;
+
+    @Mock
+    StatWriter statWriter;
+
+    SimpleMeterRegistry meterRegistry;
 
     @BeforeEach
     public void setUp() {
-        statService = new StatServiceImpl(jpaRepository);
+        meterRegistry = new SimpleMeterRegistry();
+        statService = new StatServiceImpl(statStorage, statWriter, new StatsCache(meterRegistry, 0, 0, 0, 0, false, 0),
+                meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void createAll_mapsHitsAndWritesBatch() {
+        EndpointHit first = new EndpointHit("app", "/events/1", "192.168.0.1", "2023-10-10 15:15:15");
+        EndpointHit second = new EndpointHit("app", "/events/2", "192.168.0.2", "2023-10-10%2015:15:16");
+
+        statService.createAll(List.of(first, second));
+
+        ArgumentCaptor<List<Stat>> captor = ArgumentCaptor.forClass(List.class);
+        verify(statWriter).write(captor.capture());
+        List<Stat> saved = captor.getValue();
+        assertEquals(2, saved.size());
+        assertEquals("/events/1", saved.get(0).getUri());
+        assertEquals(LocalDateTime.of(2023, 10, 10, 15, 15, 16), saved.get(1).getTimestamp());
+    }
+
+    @Test
+    void getStats_recordsQueryMetrics() {
+        LocalDateTime start = LocalDateTime.of(2023, 10, 10, 0, 0);
+        LocalDateTime end = start.plusHours(2);
+        when(statStorage.getStats(start, end, List.of("/events/1"), true, false, 0, 0))
+                .thenReturn(List.of(new ViewStats("app", "/events/1", 3)));
+
+        statService.getStats(start, end, List.of("/events/1"), true, false);
+        statService.createAll(List.of(new EndpointHit("app", "/events/1", "192.168.0.1", "2023-10-10 15:15:15")));
+
+        assertEquals(1, meterRegistry.get("stats.query").tag("uris", "filtered").tag("unique", "exact")
+                .timer().count());
+        assertEquals(0, meterRegistry.get("stats.query").tag("uris", "all").tag("unique", "false")
+                .timer().count());
+        assertEquals(1, meterRegistry.get("stats.query.rows").summary().totalAmount());
+        assertEquals(7200, meterRegistry.get("stats.query.window").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("stats.hits.ingested").counter().count());
     }
 
     @Test
     void getStats_startAfterEnd_exception() {
         assertThrows(InvalidTimePeriodException.class,
                 () -> statService.getStats(LocalDateTime.now().plusDays(5), LocalDateTime.now().minusDays(5),
-                        List.of(), false));
+                        List.of(), false, false));
     }
 
     @Test
@@ -38,13 +90,13 @@ class StatServiceImplTest {
 
         assertThrows(InvalidTimePeriodException.class,
                 () -> statService.getStats(localDateTime, localDateTime,
-                        List.of(), false));
+                        List.of(), false, false));
     }
 
     @Test
     void getStats_startAfterNow_exception() {
         assertThrows(InvalidTimePeriodException.class,
                 () -> statService.getStats(LocalDateTime.now().plusDays(5), LocalDateTime.now().plusDays(6),
-                        List.of(), false));
+                        List.of(), false, false));
     }
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package ru.practicum.ewm.stats.statsserver.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+    @Test
+    void estimate_manyDistinctIps_withinErrorBound() {
+        HyperLogLog sketch = HyperLogLog.empty(12);
+        int distinct = 100_000;
+
+        for (int i = 0; i < distinct; i++) {
+            String ip = "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+            sketch.add(ip);
+            sketch.add(ip);
+        }
+
+        double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+        assertTrue(error < 3 * HyperLogLog.relativeError(12), "ошибка оценки " + error);
+    }
+
+    @Test
+    void estimate_fewDistinctIps_exact() {
+        HyperLogLog sketch = HyperLogLog.empty(12);
+
+        sketch.add("192.168.0.1");
+        sketch.add("192.168.0.2");
+        sketch.add("192.168.0.1");
+
+        assertEquals(2, sketch.estimate());
+    }
+
+    @Test
+    void merge_overlappingSketches_unionEstimated() {
+        HyperLogLog first = HyperLogLog.empty(12);
+        HyperLogLog second = HyperLogLog.empty(12);
+        for (int i = 0; i < 20_000; i++) {
+            first.add("ip-" + i);
+            second.add("ip-" + (i + 10_000));
+        }
+
+        first.merge(HyperLogLog.fromBytes(second.toBytes()));
+
+        double error = Math.abs(first.estimate() - 30_000) / 30_000.0;
+        assertTrue(error < 3 * HyperLogLog.relativeError(12), "ошибка оценки " + error);
+    }
+
+    @Test
+    void toBytes_fewRegistersSparse_manyRegistersDense() {
+        HyperLogLog sketch = HyperLogLog.empty(12);
+        assertEquals(1, sketch.toBytes().length);
+
+        sketch.add("192.168.0.1");
+        sketch.add("192.168.0.2");
+        byte[] sparse = sketch.toBytes();
+        assertEquals(7, sparse.length);
+        assertEquals(sketch, HyperLogLog.fromBytes(sparse));
+        assertEquals(12, HyperLogLog.fromBytes(sparse).getPrecision());
+
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add("ip-" + i);
+        }
+        byte[] dense = sketch.toBytes();
+        assertEquals(4096, dense.length);
+        assertEquals(sketch, HyperLogLog.fromBytes(dense));
+    }
+
+    @Test
+    void fromBytes_corruptSparse_exception() {
+        assertThrows(IllegalArgumentException.class,
+                () -> HyperLogLog.fromBytes(new byte[]{(byte) (0x80 | 4), 0, 1}));
+        assertThrows(IllegalArgumentException.class,
+                () -> HyperLogLog.fromBytes(new byte[]{(byte) (0x80 | 4), 0, 16, 1}));
+    }
+
+    @Test
+    void merge_differentPrecision_foldedToLower() {
+        HyperLogLog lower = HyperLogLog.empty(10);
+        HyperLogLog higher = HyperLogLog.empty(14);
+        HyperLogLog expected = HyperLogLog.empty(10);
+        for (int i = 0; i < 5_000; i++) {
+            (i % 2 == 0 ? lower : higher).add("ip-" + i);
+            expected.add("ip-" + i);
+        }
+        HyperLogLog higherCopy = HyperLogLog.fromBytes(higher.toBytes());
+
+        higher.merge(lower);
+        lower.merge(higherCopy);
+
+        assertEquals(10, higher.getPrecision());
+        assertEquals(expected, higher);
+        assertEquals(expected, lower);
+        assertEquals(expected, HyperLogLog.fromBytes(lower.toBytes()));
+    }
+}
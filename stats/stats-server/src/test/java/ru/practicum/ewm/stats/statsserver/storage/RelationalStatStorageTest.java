@@ -0,0 +1,132 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.repository.HitRange;
+import ru.practicum.ewm.stats.statsserver.repository.JdbcStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.JpaStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.OffsetLimitRequest;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+import ru.practicum.ewm.stats.statsserver.repository.StatRollupRepository;
+import ru.practicum.ewm.stats.statsserver.repository.StatSketchRepository;
+import ru.practicum.ewm.stats.statsserver.sketch.HyperLogLog;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RelationalStatStorageTest {
+    StatStorage storage;
+
+    @Mock
+    JpaStatRepository jpaRepository;
+
+    @Mock
+    JdbcStatRepository jdbcRepository;
+
+    @Mock
+    StatRollupRepository rollupRepository;
+
+    @Mock
+    StatSketchRepository sketchRepository;
+
+    @BeforeEach
+    public void setUp() {
+        storage = new RelationalStatStorage(jpaRepository, jdbcRepository, rollupRepository, sketchRepository);
+    }
+
+    @Test
+    void getStats_notUnique_coarsestBucketsAndRawEdges() {
+        LocalDateTime start = LocalDateTime.of(2023, 9, 1, 10, 30, 15);
+        LocalDateTime end = LocalDateTime.of(2023, 10, 1, 12, 0, 30);
+        List<String> uris = List.of("/events/1", "/events/2");
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(4);
+            consumer.accept(new ViewStats("app", "/events/1", 8));
+            consumer.accept(new ViewStats("app", "/events/2", 2));
+            return null;
+        }).when(rollupRepository).sumHits(anyList(), anyList(), anyInt(), anyInt(), any());
+
+        List<ViewStats> result = storage.getStats(start, end, uris, false, false, 5, 10);
+
+        verify(rollupRepository).sumHits(eq(List.of(
+                new HitRange(RollupGranularity.DAY,
+                        LocalDateTime.of(2023, 9, 2, 0, 0), LocalDateTime.of(2023, 10, 1, 0, 0), false),
+                new HitRange(RollupGranularity.HOUR,
+                        LocalDateTime.of(2023, 9, 1, 11, 0), LocalDateTime.of(2023, 9, 2, 0, 0), false),
+                new HitRange(RollupGranularity.MINUTE,
+                        LocalDateTime.of(2023, 9, 1, 10, 31), LocalDateTime.of(2023, 9, 1, 11, 0), false),
+                new HitRange(null, start, LocalDateTime.of(2023, 9, 1, 10, 31), false),
+                new HitRange(RollupGranularity.HOUR,
+                        LocalDateTime.of(2023, 10, 1, 0, 0), LocalDateTime.of(2023, 10, 1, 12, 0), false),
+                new HitRange(null, LocalDateTime.of(2023, 10, 1, 12, 0), end, true))),
+                eq(uris), eq(5), eq(10), any());
+        assertEquals(List.of(new ViewStats("app", "/events/1", 8), new ViewStats("app", "/events/2", 2)), result);
+    }
+
+    @Test
+    void getStats_unique_pagePushedDownToQuery() {
+        LocalDateTime start = LocalDateTime.of(2023, 10, 1, 10, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 10, 1, 11, 0, 30);
+        when(jpaRepository.getStatsByWithoutUriAndUniqueIp(start, end, OffsetLimitRequest.of(20, 10)))
+                .thenReturn(Stream.of(new ViewStats("app", "/events/1", 3)));
+
+        List<ViewStats> result = storage.getStats(start, end, List.of(), true, false, 20, 10);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3)), result);
+    }
+
+    @Test
+    void getStats_uniqueApproximate_mergesSketchesAndRawEdges() {
+        LocalDateTime start = LocalDateTime.of(2023, 10, 1, 10, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 10, 1, 11, 0, 30);
+        HyperLogLog stored = HyperLogLog.empty(12);
+        stored.add("192.168.0.1");
+        stored.add("192.168.0.2");
+        when(sketchRepository.isEnabled()).thenReturn(true);
+        when(sketchRepository.emptySketch()).thenAnswer(invocation -> HyperLogLog.empty(12));
+        doAnswer(invocation -> {
+            invocation.getArgument(4, StatSketchRepository.SketchConsumer.class).accept("app", "/events/1", stored);
+            return null;
+        }).when(sketchRepository).forEachSketch(eq(RollupGranularity.HOUR), any(), any(), anyList(), any());
+        doAnswer(invocation -> {
+            JdbcStatRepository.IpConsumer consumer = invocation.getArgument(4);
+            consumer.accept("app", "/events/1", "192.168.0.2");
+            consumer.accept("app", "/events/1", "192.168.0.3");
+            return null;
+        }).when(jdbcRepository).forEachIp(any(), any(), anyBoolean(), anyList(), any());
+
+        List<ViewStats> result = storage.getStats(start, end, List.of(), true, true);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3)), result);
+        verify(jdbcRepository).forEachIp(eq(LocalDateTime.of(2023, 10, 1, 11, 0)), eq(end), eq(true),
+                eq(List.of()), any());
+    }
+
+    @Test
+    void getTimeSeries_notUnique_wholeBucketsFromRollup() {
+        LocalDateTime start = LocalDateTime.of(2023, 10, 1, 10, 30, 15);
+        LocalDateTime end = LocalDateTime.of(2023, 10, 1, 12, 0, 30);
+
+        storage.getTimeSeries(start, end, List.of("/events/1"), false, false, RollupGranularity.HOUR);
+
+        verify(rollupRepository).forEachBucket(eq(RollupGranularity.HOUR), eq(LocalDateTime.of(2023, 10, 1, 10, 0)),
+                eq(LocalDateTime.of(2023, 10, 1, 13, 0)), eq(List.of("/events/1")), any());
+    }
+}
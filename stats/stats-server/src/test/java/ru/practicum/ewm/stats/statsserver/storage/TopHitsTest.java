@@ -0,0 +1,33 @@
+package ru.practicum.ewm.stats.statsserver.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopHitsTest {
+    final List<ViewStats> viewStats = List.of(
+            new ViewStats("app", "/events/3", 1),
+            new ViewStats("app", "/events/2", 5),
+            new ViewStats("app", "/events/1", 5),
+            new ViewStats("app", "/events/4", 7));
+
+    @Test
+    void page_all_sortedByHitsThenUri() {
+        assertEquals(List.of(
+                new ViewStats("app", "/events/4", 7),
+                new ViewStats("app", "/events/1", 5),
+                new ViewStats("app", "/events/2", 5),
+                new ViewStats("app", "/events/3", 1)), TopHits.page(viewStats, 0, 0));
+    }
+
+    @Test
+    void page_offsetAndLimit_onlyRequestedPage() {
+        assertEquals(List.of(new ViewStats("app", "/events/1", 5), new ViewStats("app", "/events/2", 5)),
+                TopHits.page(viewStats, 1, 2));
+        assertEquals(List.of(new ViewStats("app", "/events/3", 1)), TopHits.page(viewStats, 3, 2));
+        assertEquals(List.of(), TopHits.page(viewStats, 10, 2));
+    }
+}
@@ -0,0 +1,131 @@
+package ru.practicum.ewm.stats.statsserver.storage.columnar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnarStatStorageTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 1, 10, 0, 0);
+
+    @Test
+    void getStats_notUnique_countsHitsInPeriodAcrossSegments() {
+        ColumnarStatStorage storage = new ColumnarStatStorage("", 2);
+        storage.saveAll(hits());
+
+        List<ViewStats> result = storage.getStats(START, START.plusMinutes(10), List.of(), false, false);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 5), new ViewStats("app", "/events/2", 1)), result);
+    }
+
+    @Test
+    void getStats_uniqueWithUris_countsDistinctIps() {
+        ColumnarStatStorage storage = new ColumnarStatStorage("", 2);
+        storage.saveAll(hits());
+
+        List<ViewStats> result = storage.getStats(START, START.plusMinutes(10), List.of("/events/1", "/unknown"),
+                true, false);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3)), result);
+    }
+
+    @Test
+    void getStats_unknownUris_empty() {
+        ColumnarStatStorage storage = new ColumnarStatStorage("", 2);
+        storage.saveAll(hits());
+
+        assertEquals(List.of(), storage.getStats(START, START.plusMinutes(10), List.of("/unknown"), false, false));
+    }
+
+    @Test
+    void getTimeSeries_perMinuteBuckets() {
+        ColumnarStatStorage storage = new ColumnarStatStorage("", 2);
+        storage.saveAll(hits());
+
+        List<ViewStatsBucket> result = storage.getTimeSeries(START.plusSeconds(30), START.plusMinutes(2),
+                List.of(), false, false, RollupGranularity.MINUTE);
+
+        assertEquals(List.of(new ViewStatsBucket("app", "/events/1", "2023-10-01 10:00:00", 1),
+                new ViewStatsBucket("app", "/events/2", "2023-10-01 10:01:00", 1),
+                new ViewStatsBucket("app", "/events/1", "2023-10-01 10:02:00", 1)), result);
+    }
+
+    @Test
+    void getTimeSeries_uniquePerHour_distinctIpsCountedPerBucket() {
+        ColumnarStatStorage storage = new ColumnarStatStorage("", 2);
+        storage.saveAll(hits());
+
+        List<ViewStatsBucket> result = storage.getTimeSeries(START.minusMinutes(5), START.plusMinutes(11),
+                List.of(), true, false, RollupGranularity.HOUR);
+
+        assertEquals(List.of(new ViewStatsBucket("app", "/events/1", "2023-10-01 09:00:00", 1),
+                new ViewStatsBucket("app", "/events/1", "2023-10-01 10:00:00", 3),
+                new ViewStatsBucket("app", "/events/2", "2023-10-01 10:00:00", 2)), result);
+    }
+
+    @Test
+    void getTimeSeries_unknownUris_empty() {
+        ColumnarStatStorage storage = new ColumnarStatStorage("", 2);
+        storage.saveAll(hits());
+
+        assertEquals(List.of(), storage.getTimeSeries(START, START.plusMinutes(10), List.of("/unknown"), false,
+                false, RollupGranularity.MINUTE));
+    }
+
+    @Test
+    void exportHits_sealedAndOpenSegments_mergedInTimeOrder() {
+        ColumnarStatStorage storage = new ColumnarStatStorage("", 3);
+        storage.saveAll(hits());
+        List<Stat> exported = new ArrayList<>();
+
+        storage.exportHits(START, START.plusMinutes(10), exported::add);
+
+        assertEquals(List.of(
+                stat("/events/1", "192.168.0.1", START),
+                stat("/events/2", "2001:db8:0:0:0:0:0:1", START.plusMinutes(1)),
+                stat("/events/1", "192.168.0.2", START.plusMinutes(2)),
+                stat("/events/1", "192.168.0.1", START.plusMinutes(3)),
+                stat("/events/1", "unknown", START.plusMinutes(4)),
+                stat("/events/1", "192.168.0.2", START.plusMinutes(10))), exported);
+    }
+
+    @Test
+    void load_afterSnapshot_restoresHits(@TempDir Path dir) {
+        String path = dir.resolve("stats.snapshot").toString();
+        ColumnarStatStorage storage = new ColumnarStatStorage(path, 2);
+        storage.saveAll(hits());
+        storage.close();
+
+        ColumnarStatStorage restored = new ColumnarStatStorage(path, 2);
+        restored.load();
+        restored.saveAll(List.of(stat("/events/2", "10.0.0.1", START.plusMinutes(5))));
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 5), new ViewStats("app", "/events/2", 2)),
+                restored.getStats(START, START.plusMinutes(10), List.of(), false, false));
+    }
+
+    private List<Stat> hits() {
+        return List.of(
+                stat("/events/1", "192.168.0.1", START.plusMinutes(3)),
+                stat("/events/1", "192.168.0.1", START),
+                stat("/events/1", "::ffff:192.168.0.2", START.plusMinutes(10)),
+                stat("/events/2", "2001:db8:0:0:0:0:0:1", START.plusMinutes(1)),
+                stat("/events/1", "192.168.0.2", START.plusMinutes(2)),
+                stat("/events/1", "unknown", START.plusMinutes(4)),
+                stat("/events/1", "192.168.0.3", START.minusSeconds(1)),
+                stat("/events/2", "192.168.0.3", START.plusMinutes(11)));
+    }
+
+    private Stat stat(String uri, String ip, LocalDateTime timestamp) {
+        return new Stat(null, "app", uri, ip, timestamp);
+    }
+}
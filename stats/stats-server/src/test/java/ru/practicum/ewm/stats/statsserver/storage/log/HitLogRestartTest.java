@@ -0,0 +1,66 @@
+package ru.practicum.ewm.stats.statsserver.storage.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsserver.StatsServerApp;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.service.StatService;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Перезапуск сервера с той же базой и тем же каталогом журнала: schema.sql выполняется заново при каждом
+ * старте и не должен терять посещения, уже перенесённые из журнала в statistics.
+ */
+class HitLogRestartTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 1, 10, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restart_compactedHitsKeptInTable() {
+        String url = "jdbc:h2:mem:log-restart-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        try (ConfigurableApplicationContext context = run(url)) {
+            context.getBean(StatService.class).createStats(List.of(
+                    stat("192.168.0.1", START),
+                    stat("192.168.0.2", START.plusMinutes(1)),
+                    stat("192.168.0.3", START.plusMinutes(2))));
+            context.getBean(HitLogStatStorage.class).compact();
+            assertEquals(2, countTable(context));
+        }
+
+        try (ConfigurableApplicationContext context = run(url)) {
+            assertEquals(2, countTable(context));
+            assertEquals(List.of(new ViewStats("app", "/events/1", 3)), context.getBean(StatService.class)
+                    .getStats(START, START.plusHours(1), List.of(), false, false));
+        }
+    }
+
+    private ConfigurableApplicationContext run(String url) {
+        return new SpringApplicationBuilder(StatsServerApp.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=" + url,
+                "--stats-server.storage=log",
+                "--stats-server.log.dir=" + directory,
+                "--stats-server.log.segment-records=2",
+                "--stats-server.log.compaction-interval-ms=3600000");
+    }
+
+    private static int countTable(ConfigurableApplicationContext context) {
+        return context.getBean(JdbcTemplate.class).queryForObject("SELECT COUNT(*) FROM statistics", Integer.class);
+    }
+
+    private static Stat stat(String ip, LocalDateTime timestamp) {
+        return new Stat(null, "app", "/events/1", ip, timestamp);
+    }
+}
@@ -0,0 +1,215 @@
+package ru.practicum.ewm.stats.statsserver.storage.log;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.ewm.stats.statsdto.ViewStats;
+import ru.practicum.ewm.stats.statsdto.ViewStatsBucket;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.repository.JdbcStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.JpaStatRepository;
+import ru.practicum.ewm.stats.statsserver.repository.RollupGranularity;
+import ru.practicum.ewm.stats.statsserver.repository.StatRollupRepository;
+import ru.practicum.ewm.stats.statsserver.repository.StatSketchRepository;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class HitLogStatStorageTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 10, 1, 10, 0, 0);
+
+    @Mock
+    JpaStatRepository jpaRepository;
+
+    @Mock
+    JdbcStatRepository jdbcRepository;
+
+    @Mock
+    StatRollupRepository rollupRepository;
+
+    @Mock
+    StatSketchRepository sketchRepository;
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void getStats_notUnique_countsLogRecordsInPeriod() {
+        HitLogStatStorage storage = storage(4);
+        storage.saveAll(hits());
+
+        List<ViewStats> result = storage.getStats(START, START.plusMinutes(10), List.of(), false, false);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3), new ViewStats("app", "/events/2", 1)), result);
+        storage.close();
+    }
+
+    @Test
+    void getStats_unique_mergesTableAndLogIps() {
+        doAnswer(invocation -> {
+            JdbcStatRepository.IpConsumer consumer = invocation.getArgument(4);
+            consumer.accept("app", "/events/1", "192.168.0.1");
+            consumer.accept("app", "/events/1", "192.168.0.9");
+            return null;
+        }).when(jdbcRepository).forEachIp(any(), any(), anyBoolean(), anyList(), any());
+        HitLogStatStorage storage = storage(4);
+        storage.saveAll(hits());
+
+        List<ViewStats> result = storage.getStats(START, START.plusMinutes(10), List.of("/events/1"), true, false);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 4)), result);
+        storage.close();
+    }
+
+    @Test
+    void getTimeSeries_notUnique_addsLogRecordsToRollupBuckets() {
+        doAnswer(invocation -> {
+            Consumer<ViewStatsBucket> consumer = invocation.getArgument(4);
+            consumer.accept(new ViewStatsBucket("app", "/events/2", "2023-10-01 10:00:00", 5));
+            return null;
+        }).when(rollupRepository).forEachBucket(eq(RollupGranularity.HOUR), eq(START.minusHours(1)),
+                eq(START.plusHours(1)), anyList(), any());
+        HitLogStatStorage storage = storage(4);
+        storage.saveAll(hits());
+
+        List<ViewStatsBucket> result = storage.getTimeSeries(START.minusMinutes(1), START.plusMinutes(10), List.of(),
+                false, false, RollupGranularity.HOUR);
+
+        assertEquals(List.of(new ViewStatsBucket("app", "/events/1", "2023-10-01 09:00:00", 1),
+                new ViewStatsBucket("app", "/events/1", "2023-10-01 10:00:00", 3),
+                new ViewStatsBucket("app", "/events/2", "2023-10-01 10:00:00", 6)), result);
+        storage.close();
+    }
+
+    @Test
+    void getTimeSeries_unique_mergesTableAndLogIpsPerBucket() {
+        doAnswer(invocation -> {
+            JdbcStatRepository.BucketIpConsumer consumer = invocation.getArgument(4);
+            consumer.accept(START, "app", "/events/1", "192.168.0.1");
+            consumer.accept(START, "app", "/events/1", "192.168.0.9");
+            consumer.accept(START.minusHours(1), "app", "/events/1", "192.168.0.1");
+            return null;
+        }).when(jdbcRepository).forEachBucketIp(eq(RollupGranularity.HOUR), eq(START.minusHours(1)),
+                eq(START.plusHours(1)), eq(List.of("/events/1")), any());
+        HitLogStatStorage storage = storage(4);
+        storage.saveAll(hits());
+
+        List<ViewStatsBucket> result = storage.getTimeSeries(START.minusMinutes(1), START.plusMinutes(10),
+                List.of("/events/1"), true, false, RollupGranularity.HOUR);
+
+        assertEquals(List.of(new ViewStatsBucket("app", "/events/1", "2023-10-01 09:00:00", 2),
+                new ViewStatsBucket("app", "/events/1", "2023-10-01 10:00:00", 4)), result);
+        storage.close();
+    }
+
+    @Test
+    void exportHits_tableAndLog_mergedInTimeOrder() {
+        doAnswer(invocation -> {
+            Consumer<Stat> consumer = invocation.getArgument(2);
+            consumer.accept(new Stat(1L, "app", "/events/3", "10.0.0.1", START.plusMinutes(1)));
+            consumer.accept(new Stat(2L, "app", "/events/3", "10.0.0.2", START.plusMinutes(5)));
+            return null;
+        }).when(jdbcRepository).forEachHit(eq(START), eq(START.plusMinutes(10)), any());
+        HitLogStatStorage storage = storage(4);
+        storage.saveAll(hits());
+        List<String> exported = new ArrayList<>();
+
+        storage.exportHits(START, START.plusMinutes(10), stat -> exported.add(stat.getUri() + " " + stat.getIp()));
+
+        assertEquals(List.of("/events/1 2001:db8:0:0:0:0:0:1", "/events/2 192.168.0.2", "/events/3 10.0.0.1",
+                "/events/1 192.168.0.1", "/events/3 10.0.0.2", "/events/1 unknown"), exported);
+        storage.close();
+    }
+
+    @SneakyThrows
+    @Test
+    void start_tornRecord_truncatedAndAppendContinues() {
+        HitLogStatStorage storage = storage(100);
+        storage.saveAll(hits());
+        storage.close();
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            file.seek(HitLogSegment.HEADER_BYTES + 3L * HitLogSegment.RECORD_BYTES);
+            file.write(new byte[]{1, 2, 3, 4, 5, 6, 7});
+        }
+
+        HitLogStatStorage restored = storage(100);
+        restored.saveAll(List.of(stat("/events/2", "10.0.0.1", START.plusMinutes(5))));
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3), new ViewStats("app", "/events/2", 1)),
+                restored.getStats(START, START.plusMinutes(10), List.of(), false, false));
+        restored.close();
+    }
+
+    @SneakyThrows
+    @Test
+    void compact_sealedSegment_movedToTableAndDeleted() {
+        HitLogStatStorage storage = storage(2);
+        storage.saveAll(hits().subList(0, 3));
+
+        storage.compact();
+
+        verify(jdbcRepository).saveAll(argThat(stats -> stats.size() == 2
+                && "192.168.0.1".equals(stats.get(0).getIp())
+                && START.plusMinutes(3).equals(stats.get(0).getTimestamp())));
+        verify(jdbcTemplate).update(eq("INSERT INTO stat_log_segment (id) VALUES (?)"), eq(0L));
+        assertEquals(1, segmentFiles().size());
+        storage.close();
+    }
+
+    private HitLogStatStorage storage(int segmentRecords) {
+        HitLogStatStorage storage = new HitLogStatStorage(jpaRepository, jdbcRepository, rollupRepository,
+                sketchRepository, jdbcTemplate, new TransactionTemplate(transactionManager), directory.toString(),
+                segmentRecords, 1);
+        storage.start();
+        return storage;
+    }
+
+    @SneakyThrows
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(HitLogSegment::isSegmentFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<Stat> hits() {
+        return List.of(
+                stat("/events/1", "192.168.0.1", START.plusMinutes(3)),
+                stat("/events/1", "2001:db8::1", START),
+                stat("/events/1", "unknown", START.plusMinutes(10)),
+                stat("/events/2", "192.168.0.2", START.plusMinutes(1)),
+                stat("/events/1", "192.168.0.3", START.minusSeconds(1)));
+    }
+
+    private Stat stat(String uri, String ip, LocalDateTime timestamp) {
+        return new Stat(null, "app", uri, ip, timestamp);
+    }
+}
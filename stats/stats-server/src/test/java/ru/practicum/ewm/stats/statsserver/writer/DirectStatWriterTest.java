@@ -0,0 +1,41 @@
+package ru.practicum.ewm.stats.statsserver.writer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.ewm.stats.statsserver.cache.StatsCache;
+import ru.practicum.ewm.stats.statsserver.live.LiveStatsHub;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.Mockito.inOrder;
+
+@ExtendWith(MockitoExtension.class)
+class DirectStatWriterTest {
+    @Mock
+    StatStorage statStorage;
+
+    @Mock
+    StatsCache statsCache;
+
+    @Mock
+    LiveStatsHub liveStatsHub;
+
+    @Test
+    void write_cacheAndSubscriptionsNotifiedAfterSave() {
+        List<Stat> stats = List.of(new Stat(null, "ewm-main-service", "/events/1", "192.168.0.1",
+                LocalDateTime.now()));
+
+        new DirectStatWriter(statStorage, statsCache, liveStatsHub).write(stats);
+
+        InOrder inOrder = inOrder(statStorage, statsCache, liveStatsHub);
+        inOrder.verify(statStorage).saveAll(stats);
+        inOrder.verify(statsCache).invalidate(stats);
+        inOrder.verify(liveStatsHub).publish(stats);
+    }
+}
@@ -0,0 +1,163 @@
+package ru.practicum.ewm.stats.statsserver.writer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.practicum.ewm.stats.statsserver.cache.StatsCache;
+import ru.practicum.ewm.stats.statsserver.exception.HitBufferOverflowException;
+import ru.practicum.ewm.stats.statsserver.live.LiveStatsHub;
+import ru.practicum.ewm.stats.statsserver.model.Stat;
+import ru.practicum.ewm.stats.statsserver.storage.StatStorage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindStatWriterTest {
+    @Mock
+    StatStorage statStorage;
+
+    @Mock
+    StatsCache statsCache;
+
+    @Mock
+    LiveStatsHub liveStatsHub;
+
+    @SneakyThrows
+    @Test
+    void write_batchFull_flushedBySize() {
+        WriteBehindStatWriter writer = writer(100, 2, 60_000, OverflowPolicy.BLOCK);
+        writer.start();
+
+        writer.write(List.of(stat("/events/1"), stat("/events/2")));
+
+        verify(statStorage, timeout(1000)).saveAll(argThat(stats -> stats.size() == 2));
+        writer.stop();
+    }
+
+    @SneakyThrows
+    @Test
+    void write_batchNotFull_flushedByTime() {
+        WriteBehindStatWriter writer = writer(100, 10, 50, OverflowPolicy.BLOCK);
+        writer.start();
+
+        writer.write(List.of(stat("/events/1")));
+
+        verify(statStorage, timeout(1000)).saveAll(argThat(stats -> stats.size() == 1));
+        writer.stop();
+    }
+
+    @Test
+    void write_bufferFullWithRejectPolicy_exception() {
+        WriteBehindStatWriter writer = writer(1, 10, 60_000, OverflowPolicy.REJECT);
+
+        writer.write(List.of(stat("/events/1")));
+
+        assertThrows(HitBufferOverflowException.class, () -> writer.write(List.of(stat("/events/2"))));
+    }
+
+    @Test
+    void write_bufferFullWithDropPolicy_hitDropped() {
+        WriteBehindStatWriter writer = writer(1, 10, 60_000, OverflowPolicy.DROP);
+
+        writer.write(List.of(stat("/events/1"), stat("/events/2")));
+
+        assertEquals(1, writer.size());
+    }
+
+    @SneakyThrows
+    @Test
+    void stop_notFlushedHits_flushedOnShutdown() {
+        WriteBehindStatWriter writer = writer(100, 10, 60_000, OverflowPolicy.BLOCK);
+        writer.write(List.of(stat("/events/1"), stat("/events/2"), stat("/events/3")));
+        verify(statStorage, never()).saveAll(anyList());
+        verify(statsCache, never()).invalidate(anyList());
+        verify(liveStatsHub, never()).publish(anyList());
+
+        writer.stop();
+
+        verify(statStorage).saveAll(argThat(stats -> stats.size() == 3));
+        verify(statsCache).invalidate(argThat(stats -> stats.size() == 3));
+        verify(liveStatsHub).publish(argThat(stats -> stats.size() == 3));
+    }
+
+    @SneakyThrows
+    @Test
+    void stop_writeBlockedOnFullBuffer_hitWrittenAfterDrain() {
+        WriteBehindStatWriter writer = writer(1, 10, 60_000, OverflowPolicy.BLOCK);
+        writer.write(List.of(stat("/events/1")));
+        Thread blocked = new Thread(() -> writer.write(List.of(stat("/events/2"))));
+        blocked.start();
+        while (blocked.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        writer.stop();
+        blocked.join(1000);
+
+        verify(statStorage).saveAll(argThat(stats -> stats.size() == 1 && stats.get(0).getUri().equals("/events/1")));
+        verify(statStorage).saveAll(argThat(stats -> stats.size() == 1 && stats.get(0).getUri().equals("/events/2")));
+        assertEquals(0, writer.size());
+    }
+
+    @SneakyThrows
+    @Test
+    void stop_flusherStuckAndBufferFull_blockedWriterFlushesItself() {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).doNothing().when(statStorage).saveAll(anyList());
+        WriteBehindStatWriter writer = writer(1, 1, 60_000, OverflowPolicy.BLOCK);
+        writer.start();
+        writer.write(List.of(stat("/events/1")));
+        verify(statStorage, timeout(1000)).saveAll(anyList());
+        Thread blocked = new Thread(() -> writer.write(List.of(stat("/events/2"), stat("/events/3"))));
+        blocked.start();
+        while (writer.size() == 0 || blocked.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        Thread stopping = new Thread(() -> {
+            try {
+                writer.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopping.start();
+        blocked.join(2000);
+        boolean blockedAfterStop = blocked.isAlive();
+        release.countDown();
+        stopping.join(2000);
+
+        assertFalse(blockedAfterStop);
+        verify(statStorage).saveAll(argThat(stats -> stats.size() == 1 && stats.get(0).getUri().equals("/events/2")));
+        verify(statStorage).saveAll(argThat(stats -> stats.size() == 1 && stats.get(0).getUri().equals("/events/3")));
+        assertEquals(0, writer.size());
+    }
+
+    private WriteBehindStatWriter writer(int capacity, int batchSize, long flushIntervalMillis,
+                                         OverflowPolicy policy) {
+        return new WriteBehindStatWriter(statStorage, statsCache, liveStatsHub, new SimpleMeterRegistry(), capacity,
+                batchSize, flushIntervalMillis, policy);
+    }
+
+    private Stat stat(String uri) {
+        return new Stat(null, "ewm-main-service", uri, "192.168.0.1", LocalDateTime.now());
+    }
+}